@@ -0,0 +1,143 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.saml2.core.Saml2X509Credential;
+import org.springframework.security.saml2.provider.service.authentication.AbstractSaml2AuthenticationRequest;
+import org.springframework.security.saml2.provider.service.authentication.OpenSaml4AuthenticationProvider;
+import org.springframework.security.saml2.provider.service.authentication.Saml2AuthenticationToken;
+import org.springframework.security.saml2.provider.service.registration.InMemoryRelyingPartyRegistrationRepository;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+import org.springframework.security.saml2.provider.service.web.DefaultRelyingPartyRegistrationResolver;
+import org.springframework.security.saml2.provider.service.web.authentication.OpenSaml4AuthenticationRequestResolver;
+import org.opensaml.xmlsec.signature.support.SignatureConstants;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.authentication.OpenSamlParserPool;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.authentication.SamlResponseFixture;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.bootstrap.SelfSignedX509Certificate;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.bootstrap.SelfSignedX509Certificate.KeyAlgorithm;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.bootstrap.SelfSignedX509Certificate.KeyPairProvider;
+
+/**
+ * Measures the SAML work {@code DefaultKeycloakPluginSecurityConfig} performs on every login.
+ *
+ * <p>Two steps are covered, one benchmark each:
+ * <ul>
+ *   <li>{@link #authnRequest()} - resolving the registration for
+ *   {@code /saml2/authenticate/webmvc}, building the AuthnRequest and signing it for the redirect
+ *   binding</li>
+ *   <li>{@link #samlResponse()} - parsing a Keycloak style SAMLResponse, verifying its signature,
+ *   validating the assertion and converting it into a {@code Saml2Authentication}</li>
+ * </ul>
+ *
+ * <p>The key pairs come from {@link SelfSignedX509Certificate}, exactly as
+ * {@code KeycloakRealmBootstrap} generates them, and the registration mirrors the one built by
+ * {@code relyingPartyRegistrations()}. OpenSAML gets the plugin's {@link OpenSamlParserPool}.
+ * Nothing talks to a running Keycloak, so the numbers isolate Spring Security and OpenSAML - which
+ * is what changes when either of them is upgraded.
+ *
+ * <p>{@link #keyAlgorithm} switches the application key, and with it the AuthnRequest signature,
+ * between RSA-SHA256 and ECDSA-SHA256. The SAMLResponse is always RSA signed, as Keycloak signs it.
+ *
+ * @author Wei-Ming Wu
+ * @since 26.7.3.1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SamlLoginBenchmark {
+
+  static final String BASE_URL = "http://localhost:8080";
+  static final String REALM_NAME = "webmvc";
+  static final String CLIENT_ID = "webmvc-app";
+  static final String IDP_ENTITY_ID = BASE_URL + "/auth/realms/" + REALM_NAME;
+  static final String ACS_LOCATION = BASE_URL + "/login/saml2/sso/" + REALM_NAME;
+
+  @Param({"RSA", "EC"})
+  KeyAlgorithm keyAlgorithm;
+
+  RelyingPartyRegistration registration;
+  OpenSaml4AuthenticationRequestResolver authnRequestResolver;
+  OpenSaml4AuthenticationProvider authenticationProvider;
+  String samlResponse;
+
+  @Setup
+  public void setup() throws Exception {
+    OpenSamlParserPool.install(OpenSamlParserPool.DEFAULT_SIZE);
+
+    SelfSignedX509Certificate app =
+        new SelfSignedX509Certificate(CLIENT_ID, 3650, KeyPairProvider.BC, keyAlgorithm);
+    SelfSignedX509Certificate keycloak = new SelfSignedX509Certificate(REALM_NAME, 3650);
+
+    registration = RelyingPartyRegistration //
+        .withRegistrationId(REALM_NAME) //
+        .entityId(CLIENT_ID) //
+        .assertionConsumerServiceLocation(ACS_LOCATION)
+        .signingX509Credentials((c) -> c.add(Saml2X509Credential
+            .signing(app.getKeyPair().getPrivate(), app.getCertificate())))
+        .decryptionX509Credentials((c) -> c.add(Saml2X509Credential
+            .decryption(app.getKeyPair().getPrivate(), app.getCertificate())))
+        .assertingPartyMetadata((metadata) -> {
+          metadata.entityId(IDP_ENTITY_ID);
+          metadata.singleSignOnServiceLocation(IDP_ENTITY_ID + "/protocol/saml");
+          metadata.singleLogoutServiceLocation(IDP_ENTITY_ID + "/protocol/saml");
+          metadata.encryptionX509Credentials(
+              (c) -> c.add(Saml2X509Credential.encryption(keycloak.getCertificate())));
+          metadata.verificationX509Credentials(
+              (c) -> c.add(Saml2X509Credential.verification(keycloak.getCertificate())));
+          metadata.wantAuthnRequestsSigned(true);
+          if (keyAlgorithm == KeyAlgorithm.EC) {
+            metadata.signingAlgorithms((algorithms) -> {
+              algorithms.clear();
+              algorithms.add(SignatureConstants.ALGO_ID_SIGNATURE_ECDSA_SHA256);
+            });
+          }
+        }).build();
+
+    authnRequestResolver = new OpenSaml4AuthenticationRequestResolver(
+        new DefaultRelyingPartyRegistrationResolver(
+            new InMemoryRelyingPartyRegistrationRepository(registration)));
+    authenticationProvider = new OpenSaml4AuthenticationProvider();
+    samlResponse = SamlResponseFixture.signedResponse(keycloak, IDP_ENTITY_ID, CLIENT_ID,
+        ACS_LOCATION, "tester");
+  }
+
+  /**
+   * Builds and signs the AuthnRequest for one SP-initiated login.
+   *
+   * @return the redirect-binding authentication request
+   */
+  @Benchmark
+  public AbstractSaml2AuthenticationRequest authnRequest() {
+    MockHttpServletRequest request =
+        new MockHttpServletRequest("GET", "/saml2/authenticate/" + REALM_NAME);
+    request.setServletPath("/saml2/authenticate/" + REALM_NAME);
+    return authnRequestResolver.resolve(request);
+  }
+
+  /**
+   * Parses, verifies and converts one SAMLResponse posted to the assertion consumer service.
+   *
+   * @return the resulting {@code Saml2Authentication}
+   */
+  @Benchmark
+  public Authentication samlResponse() {
+    return authenticationProvider
+        .authenticate(new Saml2AuthenticationToken(registration, samlResponse));
+  }
+
+}
@@ -0,0 +1,126 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.serializer.DefaultDeserializer;
+import org.springframework.core.serializer.DefaultSerializer;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.saml2.provider.service.authentication.Saml2AuthenticatedPrincipal;
+import org.springframework.security.saml2.provider.service.authentication.Saml2Authentication;
+import org.springframework.security.web.authentication.WebAuthenticationDetails;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.authentication.SlimSaml2AuthenticationConverter;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.bootstrap.SelfSignedX509Certificate.KeyAlgorithm;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.session.Saml2AuthenticationSerializer;
+
+/**
+ * Compares {@link Saml2AuthenticationSerializer} with default Java serialization on the security
+ * context a session store writes and reads for every request of a logged-in user.
+ *
+ * <p>The context holds the {@code Saml2Authentication} produced from a signed Keycloak style
+ * SAMLResponse by the same provider {@link SamlLoginBenchmark} measures, plus the
+ * {@code WebAuthenticationDetails} Spring Security attaches. {@link #principal} switches between
+ * the default authentication, which keeps the whole SAMLResponse, and the one left by
+ * {@link SlimSaml2AuthenticationConverter}. The serialized sizes, which JMH does not measure, are
+ * logged once at setup.
+ *
+ * @author Wei-Ming Wu
+ * @since 26.7.3.1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SessionSerializationBenchmark {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SessionSerializationBenchmark.class);
+
+  @Param({"full", "slim"})
+  String principal;
+
+  SecurityContextImpl context;
+  DefaultSerializer javaSerializer;
+  DefaultDeserializer javaDeserializer;
+  Saml2AuthenticationSerializer compactSerializer;
+  byte[] javaBytes;
+  byte[] compactBytes;
+
+  @Setup
+  public void setup() throws Exception {
+    SamlLoginBenchmark login = new SamlLoginBenchmark();
+    login.keyAlgorithm = KeyAlgorithm.RSA;
+    login.setup();
+    Saml2Authentication authentication = (Saml2Authentication) login.samlResponse();
+    if (principal.equals("slim")) {
+      authentication = new Saml2Authentication(
+          (Saml2AuthenticatedPrincipal) authentication.getPrincipal(),
+          SlimSaml2AuthenticationConverter.OMITTED_RESPONSE, authentication.getAuthorities());
+    }
+    authentication.setDetails(new WebAuthenticationDetails("192.0.2.10",
+        "5F6C2E8A0B1D4C7E9F3A6B2D8E1C4F70"));
+    context = new SecurityContextImpl(authentication);
+
+    javaSerializer = new DefaultSerializer();
+    javaDeserializer = new DefaultDeserializer();
+    compactSerializer = new Saml2AuthenticationSerializer();
+    javaBytes = javaSerializer.serializeToByteArray(context);
+    compactBytes = compactSerializer.serializeToByteArray(context);
+    LOG.info("Serialized security context ({} principal): Java {} bytes, compact {} bytes",
+        principal, javaBytes.length, compactBytes.length);
+  }
+
+  /**
+   * Writes the security context with Java serialization.
+   *
+   * @return the serialized context
+   */
+  @Benchmark
+  public byte[] javaSerialize() throws IOException {
+    return javaSerializer.serializeToByteArray(context);
+  }
+
+  /**
+   * Reads the security context back with Java serialization.
+   *
+   * @return the deserialized context
+   */
+  @Benchmark
+  public Object javaDeserialize() throws IOException {
+    return javaDeserializer.deserializeFromByteArray(javaBytes);
+  }
+
+  /**
+   * Writes the security context with {@link Saml2AuthenticationSerializer}.
+   *
+   * @return the serialized context
+   */
+  @Benchmark
+  public byte[] compactSerialize() throws IOException {
+    return compactSerializer.serializeToByteArray(context);
+  }
+
+  /**
+   * Reads the security context back with {@link Saml2AuthenticationSerializer}.
+   *
+   * @return the deserialized context
+   */
+  @Benchmark
+  public Object compactDeserialize() throws IOException {
+    return compactSerializer.deserializeFromByteArray(compactBytes);
+  }
+
+}
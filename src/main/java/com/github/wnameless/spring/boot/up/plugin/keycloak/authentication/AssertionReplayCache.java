@@ -0,0 +1,31 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.authentication;
+
+import java.time.Instant;
+
+/**
+ * Remembers the IDs of the SAML assertions that have been accepted, until they expire, so that a
+ * captured SAMLResponse cannot be posted to the assertion consumer service a second time.
+ *
+ * <p>{@link InMemoryAssertionReplayCache} serves a single node. A cluster whose logins may land on
+ * any node needs every node to see the same IDs; declare a bean of this type backed by a shared
+ * store - a database table with a unique key, or a cache with a put-if-absent operation and a
+ * time to live - and the plugin uses it instead.
+ *
+ * @author Wei-Ming Wu
+ * @since 26.7.3.1
+ * @see AssertionReplayValidator
+ */
+public interface AssertionReplayCache {
+
+  /**
+   * Records an assertion ID unless it is already recorded and not yet expired. The check and the
+   * record must be one atomic step, so that two concurrent posts of the same assertion cannot both
+   * succeed.
+   *
+   * @param assertionId the assertion ID
+   * @param expiresAt when the assertion can no longer be accepted, and its ID can be forgotten
+   * @return true if the ID was recorded, false if it is a replay
+   */
+  boolean putIfAbsent(String assertionId, Instant expiresAt);
+
+}
@@ -0,0 +1,126 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.authentication;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.SubjectConfirmation;
+import org.opensaml.saml.saml2.core.SubjectConfirmationData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.saml2.core.Saml2Error;
+import org.springframework.security.saml2.core.Saml2ErrorCodes;
+import org.springframework.security.saml2.provider.service.authentication.OpenSaml4AuthenticationProvider.ResponseToken;
+import org.springframework.security.saml2.provider.service.authentication.Saml2AuthenticationException;
+
+/**
+ * Rejects a SAMLResponse carrying an assertion whose ID has been accepted before.
+ *
+ * <p>It wraps the response authentication converter, which {@code OpenSaml4AuthenticationProvider}
+ * only calls once the whole response has passed validation: the response and assertion signatures,
+ * the rule that one of them must be signed, conditions, audience and subject confirmation. So only
+ * assertions the realm really issued are recorded in the {@link AssertionReplayCache}. The
+ * assertion validator is no place for this check, because it also runs on unsigned assertions and
+ * on ones whose signature failed, before the provider rejects them; recording there would let
+ * anyone fill the cache with forged IDs.
+ *
+ * <p>The delegate converts first and the IDs of all assertions of the response are recorded after.
+ * A second post of the same assertion then fails with {@code invalid_assertion}, like any other
+ * invalid one.
+ *
+ * <p>An ID is kept until the latest {@code NotOnOrAfter} of the assertion's conditions and subject
+ * confirmations, plus the clock skew the default validator tolerates: once that has passed, the
+ * default validator rejects the assertion on its own. The time kept is capped at the maximum
+ * lifetime, {@link #MAX_LIFETIME} unless given, so that no assertion holds a cache entry for longer
+ * than that. An assertion without any {@code NotOnOrAfter} is kept for {@link #DEFAULT_LIFETIME}
+ * plus the skew.
+ *
+ * @author Wei-Ming Wu
+ * @since 26.7.3.1
+ */
+public class AssertionReplayValidator
+    implements Converter<ResponseToken, AbstractAuthenticationToken> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AssertionReplayValidator.class);
+
+  /**
+   * The clock skew {@code OpenSaml4AuthenticationProvider} allows by default.
+   */
+  public static final Duration CLOCK_SKEW = Duration.ofMinutes(5);
+  public static final Duration DEFAULT_LIFETIME = Duration.ofMinutes(5);
+  public static final Duration MAX_LIFETIME = Duration.ofHours(1);
+
+  private final Converter<ResponseToken, ? extends AbstractAuthenticationToken> delegate;
+  private final AssertionReplayCache cache;
+  private final Duration maxLifetime;
+  private final Clock clock;
+
+  /**
+   * Creates the validator, keeping IDs for at most {@link #MAX_LIFETIME}.
+   *
+   * @param delegate the converter building the authentication, usually
+   *        {@code OpenSaml4AuthenticationProvider.createDefaultResponseAuthenticationConverter()}
+   * @param cache the cache the accepted assertion IDs are recorded in
+   */
+  public AssertionReplayValidator(
+      Converter<ResponseToken, ? extends AbstractAuthenticationToken> delegate,
+      AssertionReplayCache cache) {
+    this(delegate, cache, MAX_LIFETIME, Clock.systemUTC());
+  }
+
+  AssertionReplayValidator(Converter<ResponseToken, ? extends AbstractAuthenticationToken> delegate,
+      AssertionReplayCache cache, Duration maxLifetime, Clock clock) {
+    this.delegate = delegate;
+    this.cache = cache;
+    this.maxLifetime = maxLifetime;
+    this.clock = clock;
+  }
+
+  @Override
+  public AbstractAuthenticationToken convert(ResponseToken responseToken) {
+    AbstractAuthenticationToken authentication = delegate.convert(responseToken);
+
+    Instant now = clock.instant();
+    for (Assertion assertion : responseToken.getResponse().getAssertions()) {
+      String assertionId = assertion.getID();
+      if (assertionId == null || assertionId.isBlank()) {
+        throw failure("Assertion has no ID, so it cannot be checked for replay");
+      }
+      if (!cache.putIfAbsent(assertionId, expiresAt(assertion, now))) {
+        LOG.warn("Rejected assertion " + assertionId + " for registration "
+            + responseToken.getToken().getRelyingPartyRegistration().getRegistrationId()
+            + ": it has been used before");
+        throw failure("Assertion " + assertionId + " has already been used");
+      }
+    }
+    return authentication;
+  }
+
+  private Instant expiresAt(Assertion assertion, Instant now) {
+    Instant latest = null;
+    if (assertion.getConditions() != null) {
+      latest = assertion.getConditions().getNotOnOrAfter();
+    }
+    if (assertion.getSubject() != null) {
+      for (SubjectConfirmation confirmation : assertion.getSubject().getSubjectConfirmations()) {
+        SubjectConfirmationData data = confirmation.getSubjectConfirmationData();
+        Instant notOnOrAfter = data == null ? null : data.getNotOnOrAfter();
+        if (notOnOrAfter != null && (latest == null || notOnOrAfter.isAfter(latest))) {
+          latest = notOnOrAfter;
+        }
+      }
+    }
+    if (latest == null) latest = now.plus(DEFAULT_LIFETIME);
+    Instant cap = now.plus(maxLifetime);
+    if (latest.isAfter(cap)) latest = cap;
+    return latest.plus(CLOCK_SKEW);
+  }
+
+  private static Saml2AuthenticationException failure(String description) {
+    return new Saml2AuthenticationException(
+        new Saml2Error(Saml2ErrorCodes.INVALID_ASSERTION, description));
+  }
+
+}
@@ -0,0 +1,106 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.authentication;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link AssertionReplayCache} for a single node, bounded by entry count.
+ *
+ * <p>IDs are kept in a {@link ConcurrentHashMap} with their expiry. Recording one is a lock-free
+ * {@code putIfAbsent}, or a {@code replace} of an expired entry, so concurrent logins only contend
+ * when they land in the same bin of the map. When the cache reaches its size, one thread at a time
+ * sweeps out the expired entries while the others carry on. If the cache is still full of live
+ * assertions after a sweep, the tenth of them closest to expiry is evicted, with a warning saying
+ * to raise the size: a login is never refused because the cache is full, and the assertions
+ * forgotten are the ones with the least time left to be replayed.
+ *
+ * @author Wei-Ming Wu
+ * @since 26.7.3.1
+ */
+public class InMemoryAssertionReplayCache implements AssertionReplayCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(InMemoryAssertionReplayCache.class);
+
+  public static final int DEFAULT_MAX_ENTRIES = 100_000;
+  static final int EVICTION_DIVISOR = 10;
+
+  private final ConcurrentHashMap<String, Instant> entries = new ConcurrentHashMap<>();
+  private final AtomicBoolean sweeping = new AtomicBoolean();
+  private final int maxEntries;
+  private final Clock clock;
+
+  /**
+   * Creates a cache holding up to {@value #DEFAULT_MAX_ENTRIES} assertion IDs.
+   */
+  public InMemoryAssertionReplayCache() {
+    this(DEFAULT_MAX_ENTRIES);
+  }
+
+  /**
+   * Creates a cache holding up to the given number of assertion IDs.
+   *
+   * @param maxEntries the most IDs kept at once; size it for the logins of one assertion lifetime
+   */
+  public InMemoryAssertionReplayCache(int maxEntries) {
+    this(maxEntries, Clock.systemUTC());
+  }
+
+  InMemoryAssertionReplayCache(int maxEntries, Clock clock) {
+    if (maxEntries <= 0) {
+      throw new IllegalStateException(
+          "The assertion replay cache needs a positive size, but got " + maxEntries);
+    }
+    this.maxEntries = maxEntries;
+    this.clock = clock;
+  }
+
+  @Override
+  public boolean putIfAbsent(String assertionId, Instant expiresAt) {
+    Instant now = clock.instant();
+    Instant previous = entries.get(assertionId);
+    if (previous != null) {
+      // A live entry is a replay; an expired one is replaced, unless another thread got there first
+      return !previous.isAfter(now) && entries.replace(assertionId, previous, expiresAt);
+    }
+
+    if (entries.size() >= maxEntries) sweep(now);
+    previous = entries.putIfAbsent(assertionId, expiresAt);
+    return previous == null
+        || (!previous.isAfter(now) && entries.replace(assertionId, previous, expiresAt));
+  }
+
+  /**
+   * Gets the number of IDs currently kept, expired ones not yet swept included.
+   *
+   * @return the number of entries
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  private void sweep(Instant now) {
+    // One sweeper at a time; the others record their assertion and move on
+    if (!sweeping.compareAndSet(false, true)) return;
+    try {
+      entries.values().removeIf((expiresAt) -> !expiresAt.isAfter(now));
+      if (entries.size() < maxEntries) return;
+
+      Instant[] expiries = entries.values().toArray(new Instant[0]);
+      Arrays.sort(expiries);
+      Instant threshold = expiries[Math.max(expiries.length / EVICTION_DIVISOR, 1) - 1];
+      entries.values().removeIf((expiresAt) -> !expiresAt.isAfter(threshold));
+      LOG.warn("Assertion replay cache is full with " + expiries.length
+          + " live assertions; evicted the ones expiring by " + threshold
+          + ". Raise keycloak.plugin.replayCacheSize above the number of logins within one"
+          + " assertion lifetime.");
+    } finally {
+      sweeping.set(false);
+    }
+  }
+
+}
@@ -0,0 +1,113 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.authentication;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.xml.XMLConstants;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.Ordered;
+import org.springframework.core.PriorityOrdered;
+import org.springframework.core.env.Environment;
+import org.springframework.security.saml2.core.OpenSamlInitializationService;
+import net.shibboleth.utilities.java.support.component.ComponentInitializationException;
+import net.shibboleth.utilities.java.support.xml.BasicParserPool;
+
+/**
+ * Initializes OpenSAML with a parser pool sized for concurrent logins and locked down against XML
+ * entity attacks.
+ *
+ * <p>Every SAMLResponse, LogoutRequest and LogoutResponse is parsed with a {@code DocumentBuilder}
+ * borrowed from OpenSAML's global parser pool. The pool OpenSAML installs keeps five builders; the
+ * others a busy node needs are created for one document and thrown away, which is the same
+ * factory and configuration work repeated on every request. This pool keeps up to
+ * {@code keycloak.plugin.parserPoolSize} builders, so under load the builders are reused instead.
+ *
+ * <p>The builders are namespace aware, ignore comments, never expand entity references or follow
+ * XIncludes, and have secure processing on and DOCTYPE declarations, external entities and
+ * external DTDs off. These features are set explicitly rather than left to the pool's defaults.
+ *
+ * <p>Installation happens in a {@link BeanFactoryPostProcessor}, before any bean touches OpenSAML.
+ *
+ * @author Wei-Ming Wu
+ * @since 26.7.3.1
+ */
+public class OpenSamlParserPool
+    implements BeanFactoryPostProcessor, EnvironmentAware, PriorityOrdered {
+
+  private static final Logger LOG = LoggerFactory.getLogger(OpenSamlParserPool.class);
+
+  public static final String SIZE_PROPERTY = "keycloak.plugin.parserPoolSize";
+  public static final int DEFAULT_SIZE = 64;
+
+  private Environment environment;
+
+  @Override
+  public void setEnvironment(Environment environment) {
+    this.environment = environment;
+  }
+
+  @Override
+  public int getOrder() {
+    return Ordered.HIGHEST_PRECEDENCE;
+  }
+
+  @Override
+  public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory)
+      throws BeansException {
+    install(environment.getProperty(SIZE_PROPERTY, Integer.class, DEFAULT_SIZE));
+  }
+
+  /**
+   * Initializes OpenSAML, if it is not yet, and makes a new pool its global parser pool.
+   *
+   * @param maxPoolSize the most idle builders kept
+   * @return the installed pool
+   * @throws IllegalStateException if the size is not positive or the pool cannot be initialized
+   */
+  public static BasicParserPool install(int maxPoolSize) {
+    BasicParserPool parserPool = create(maxPoolSize);
+    OpenSamlInitializationService.initialize();
+    XMLObjectProviderRegistrySupport.setParserPool(parserPool);
+    LOG.debug("OpenSAML parser pool installed, keeping up to " + maxPoolSize + " builders");
+    return parserPool;
+  }
+
+  /**
+   * Creates and initializes a parser pool.
+   *
+   * @param maxPoolSize the most idle builders kept
+   * @return the pool
+   * @throws IllegalStateException if the size is not positive or the pool cannot be initialized
+   */
+  public static BasicParserPool create(int maxPoolSize) {
+    if (maxPoolSize <= 0) {
+      throw new IllegalStateException(
+          SIZE_PROPERTY + " must be positive, but is " + maxPoolSize + ".");
+    }
+    BasicParserPool parserPool = new BasicParserPool();
+    parserPool.setMaxPoolSize(maxPoolSize);
+    parserPool.setNamespaceAware(true);
+    parserPool.setIgnoreComments(true);
+    parserPool.setExpandEntityReferences(false);
+    parserPool.setXincludeAware(false);
+    Map<String, Boolean> features = new LinkedHashMap<>();
+    features.put(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+    features.put("http://apache.org/xml/features/disallow-doctype-decl", true);
+    features.put("http://xml.org/sax/features/external-general-entities", false);
+    features.put("http://xml.org/sax/features/external-parameter-entities", false);
+    features.put("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+    parserPool.setBuilderFeatures(features);
+    try {
+      parserPool.initialize();
+    } catch (ComponentInitializationException e) {
+      throw new IllegalStateException("Cannot initialize the OpenSAML parser pool", e);
+    }
+    return parserPool;
+  }
+
+}
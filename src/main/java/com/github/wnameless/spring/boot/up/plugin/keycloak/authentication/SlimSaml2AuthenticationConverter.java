@@ -0,0 +1,94 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.authentication;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.AuthenticatedPrincipal;
+import org.springframework.security.saml2.provider.service.authentication.OpenSaml4AuthenticationProvider.ResponseToken;
+import org.springframework.security.saml2.provider.service.authentication.Saml2Authentication;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Drops the raw SAMLResponse from the {@link Saml2Authentication} a response converter produces.
+ *
+ * <p>The default {@code Saml2Authentication} keeps the whole Base64 encoded SAMLResponse - several
+ * kilobytes of signed XML - next to its principal, and with it in every HTTP session for the
+ * session's lifetime. Nothing in the plugin reads it again: logout is built from the principal's
+ * NameID, session indexes and registration ID. This converter keeps the principal and authorities
+ * the delegate produced and replaces the response with {@value #OMITTED_RESPONSE}, so
+ * {@link Saml2Authentication#getSaml2Response()} no longer returns the original response.
+ *
+ * <p>Each dropped response is recorded by the {@value #BYTES_SAVED} distribution summary, tagged
+ * with {@code registration}. Its total is the session memory saved: a Base64 string takes one
+ * byte per character on the heap, and as much again in a serialized session.
+ *
+ * @author Wei-Ming Wu
+ * @since 26.7.3.1
+ */
+public class SlimSaml2AuthenticationConverter
+    implements Converter<ResponseToken, AbstractAuthenticationToken> {
+
+  private static final Logger LOG =
+      LoggerFactory.getLogger(SlimSaml2AuthenticationConverter.class);
+
+  public static final String BYTES_SAVED = "keycloak.plugin.saml.session.bytes.saved";
+
+  /**
+   * Stands in for the dropped SAMLResponse, which {@code Saml2Authentication} requires to be
+   * non-blank.
+   */
+  public static final String OMITTED_RESPONSE = "omitted";
+
+  private final Converter<ResponseToken, ? extends AbstractAuthenticationToken> delegate;
+  private final MeterRegistry registry;
+  private final Map<String, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+  /**
+   * Creates the converter.
+   *
+   * @param delegate the converter building the authentication, usually
+   *        {@code OpenSaml4AuthenticationProvider.createDefaultResponseAuthenticationConverter()}
+   * @param registry the registry the saved bytes are recorded into
+   */
+  public SlimSaml2AuthenticationConverter(
+      Converter<ResponseToken, ? extends AbstractAuthenticationToken> delegate,
+      MeterRegistry registry) {
+    this.delegate = delegate;
+    this.registry = registry;
+  }
+
+  @Override
+  public AbstractAuthenticationToken convert(ResponseToken responseToken) {
+    AbstractAuthenticationToken authentication = delegate.convert(responseToken);
+    if (!(authentication instanceof Saml2Authentication saml2)
+        || !(saml2.getPrincipal() instanceof AuthenticatedPrincipal principal)
+        || OMITTED_RESPONSE.equals(saml2.getSaml2Response())) {
+      return authentication;
+    }
+
+    Saml2Authentication slim =
+        new Saml2Authentication(principal, OMITTED_RESPONSE, saml2.getAuthorities());
+    slim.setDetails(saml2.getDetails());
+
+    int saved = saml2.getSaml2Response().length() - OMITTED_RESPONSE.length();
+    String registrationId =
+        responseToken.getToken().getRelyingPartyRegistration().getRegistrationId();
+    DistributionSummary summary = summaries.get(registrationId);
+    if (summary == null) summary = summaries.computeIfAbsent(registrationId, this::register);
+    summary.record(saved);
+    LOG.debug("Dropped a SAMLResponse of " + saved + " bytes from the session of "
+        + slim.getName() + " (" + registrationId + ")");
+    return slim;
+  }
+
+  private DistributionSummary register(String registrationId) {
+    return DistributionSummary.builder(BYTES_SAVED).baseUnit("bytes")
+        .description("SAMLResponse bytes kept out of the HTTP session")
+        .tag("registration", registrationId).register(registry);
+  }
+
+}
@@ -0,0 +1,109 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.bootstrap;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.DefaultResourceLoader;
+import com.github.wnameless.spring.boot.up.embedded.keycloak.config.EnableEmbeddedKeycloak;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.realm.H2Files;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.realm.KeycloakDatabaseSnapshot;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.realm.RealmFingerprint;
+
+/**
+ * Builds a Keycloak database snapshot: an H2 file in which the embedded server has run its
+ * Liquibase migrations and imported a generated realm.
+ *
+ * <p>The embedded Keycloak server is started once, on a random port, against the snapshot file,
+ * with the realm directory put in front of the classpath so that it imports the realm generated
+ * there. Once it has started, the application is closed and the realm's
+ * {@link RealmFingerprint} is stored next to the snapshot. At runtime,
+ * {@link KeycloakDatabaseSnapshot} checks the fingerprint against the application's realm files
+ * and copies the snapshot into place.
+ *
+ * @author Wei-Ming Wu
+ * @since 26.7.3.1
+ */
+final class DatabaseSnapshotBuilder {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DatabaseSnapshotBuilder.class);
+
+  /**
+   * The smallest application that starts the embedded Keycloak server.
+   */
+  @SpringBootConfiguration
+  @EnableAutoConfiguration
+  @EnableEmbeddedKeycloak
+  static class SnapshotApplication {}
+
+  private DatabaseSnapshotBuilder() {}
+
+  /**
+   * Builds a snapshot unless one exists already.
+   *
+   * @param snapshot the snapshot file, with or without its {@value H2Files#DATABASE_SUFFIX} suffix
+   * @param realmDir the directory holding the generated realm JSON and PEM files
+   * @throws IOException if a file cannot be read or written
+   * @throws IllegalStateException if the embedded Keycloak server fails to start
+   */
+  static void build(Path snapshot, File realmDir) throws IOException {
+    String name = snapshot.toAbsolutePath().normalize().toString();
+    if (name.endsWith(H2Files.DATABASE_SUFFIX)) {
+      name = name.substring(0, name.length() - H2Files.DATABASE_SUFFIX.length());
+    }
+    Path database = Path.of(name + H2Files.DATABASE_SUFFIX);
+    Path fingerprint = Path.of(name + RealmFingerprint.FILE_SUFFIX);
+    if (Files.exists(database)) {
+      LOG.warn("Skipping: snapshot " + database + " already exists. Delete it to rebuild it.");
+      return;
+    }
+    Files.createDirectories(database.getParent());
+
+    List<String> realmFiles = List.of(realmFile(realmDir, "keycloak-realm.json"),
+        realmFile(realmDir, "keycloak_certificate.pem"),
+        realmFile(realmDir, "app_certificate.pem"), realmFile(realmDir, "app_private_key.pem"));
+    LOG.info("Building Keycloak database snapshot: " + database);
+
+    Thread thread = Thread.currentThread();
+    ClassLoader original = thread.getContextClassLoader();
+    // The embedded server imports keycloak-realm.json from the classpath
+    try (URLClassLoader realmClassLoader =
+        new URLClassLoader(new URL[] {realmDir.toURI().toURL()}, original)) {
+      thread.setContextClassLoader(realmClassLoader);
+      try (ConfigurableApplicationContext context =
+          new SpringApplicationBuilder(SnapshotApplication.class)
+              .resourceLoader(new DefaultResourceLoader(realmClassLoader))
+              .web(WebApplicationType.SERVLET)
+              .properties("server.port=0", "spring.main.banner-mode=off",
+                  KeycloakDatabaseSnapshot.DATABASE_URL_PROPERTY + "=jdbc:h2:file:" + name)
+              .run()) {
+        LOG.info("Embedded Keycloak started; closing the snapshot database");
+      }
+    } catch (RuntimeException e) {
+      // A half-migrated database is worse than none: the runtime would copy it as if it were done
+      Files.deleteIfExists(database);
+      throw new IllegalStateException("Cannot build Keycloak database snapshot " + database
+          + ". The embedded Keycloak server failed to start; see the cause.", e);
+    } finally {
+      thread.setContextClassLoader(original);
+    }
+
+    RealmFingerprint.write(fingerprint, RealmFingerprint.fingerprint(realmFiles));
+    LOG.info("Generating: " + fingerprint);
+  }
+
+  private static String realmFile(File realmDir, String name) {
+    return new File(realmDir, name).toURI().toString();
+  }
+
+}
@@ -3,14 +3,30 @@ package com.github.wnameless.spring.boot.up.plugin.keycloak.bootstrap;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.stream.Collectors;
+import org.bouncycastle.operator.OperatorCreationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.io.ClassPathResource;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.bootstrap.SelfSignedX509Certificate.KeyAlgorithm;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.bootstrap.SelfSignedX509Certificate.KeyPairProvider;
 import com.github.wnameless.spring.boot.up.plugin.keycloak.utils.PathUtils;
 import com.google.common.base.Strings;
 
@@ -26,11 +42,11 @@ import com.google.common.base.Strings;
  *   <li>Optional Spring Security configuration class</li>
  * </ul>
  *
- * <p>The realm JSON and the three PEM files are generated all-or-nothing. They share two RSA key
- * pairs - the realm JSON embeds both, while each PEM holds one half - so regenerating a subset
- * would pair a fresh certificate with a stale private key. That mismatch is invisible at build
- * time and only surfaces as a SAML signature failure at login, so a partially present set is
- * rejected instead of being completed.
+ * <p>The realm JSON and the three PEM files are generated all-or-nothing. They share two key pairs,
+ * of whichever algorithm and provider generated them - the realm JSON embeds both, while each PEM
+ * holds one half - so regenerating a subset would pair a fresh certificate with a stale private
+ * key. That mismatch is invisible at build time and only surfaces as a SAML signature failure at
+ * login, so a partially present set is rejected instead of being completed.
  *
  * <p>System properties can be used to customize the bootstrap process:
  * <ul>
@@ -38,8 +54,27 @@ import com.google.common.base.Strings;
  *   <li>configPackage - Java package for generated security config class</li>
  *   <li>realmName - Name of the Keycloak realm (default: webmvc)</li>
  *   <li>clientId - SAML client ID (default: webmvc-app)</li>
+ *   <li>keyPairProvider - {@code bc} or {@code jdk}, the provider generating the key pairs
+ *   (default: bc)</li>
+ *   <li>realmProfile - {@code full} (default) or {@code lean}; the lean realm carries only what the
+ *   SAML client needs, which Keycloak imports faster and caches in less heap (see
+ *   {@link RealmTemplate.Profile})</li>
+ *   <li>manifest - a file listing many realms, one {@code realmName[,clientId]} per line; each
+ *   realm is generated into {@code targetDir/realmName}, in parallel (see
+ *   {@link #generateFromManifest})</li>
+ *   <li>snapshot - an H2 database file to build from the generated realm, fully migrated and with
+ *   the realm imported, for {@code keycloak.plugin.databaseSnapshot} to copy on start (see
+ *   {@link DatabaseSnapshotBuilder})</li>
+ *   <li>parallelism - how many realms of a manifest are generated at once (default: the number of
+ *   processors)</li>
+ *   <li>keyAlgorithm - the key type, {@code rsa} (default) or {@code ec}. The realm's SAML client
+ *   signature algorithm is rendered to match; since Keycloak's SAML signature algorithms are RSA
+ *   and DSA only, {@code ec} is rejected with an explanation rather than producing a realm that
+ *   fails at login</li>
  * </ul>
  *
+ * <p>The two key pairs are generated concurrently, since key generation dominates the run.
+ *
  * @author Wei-Ming Wu
  * @since 1.0.0
  */
@@ -51,6 +86,7 @@ public class KeycloakRealmBootstrap {
   private static final String APP_PK = "app_private_key.pem";
   private static final String APP_CERT = "app_certificate.pem";
   private static final String SERVER_CERT = "keycloak_certificate.pem";
+  private static final String DEFAULT_CLIENT_ID = "webmvc-app";
 
   /**
    * Main method that bootstraps Keycloak realm configuration.
@@ -95,56 +131,290 @@ public class KeycloakRealmBootstrap {
       }
     }
 
+    KeyPairProvider keyPairProvider = keyPairProvider(System.getProperty("keyPairProvider"));
+    LOG.info("Key Pair Provider: " + keyPairProvider);
+    KeyAlgorithm keyAlgorithm = keyAlgorithm(System.getProperty("keyAlgorithm"));
+    LOG.info("Key Algorithm: " + keyAlgorithm);
+
+    RealmTemplate.Profile realmProfile = realmProfile(System.getProperty("realmProfile"));
+    LOG.info("Realm Profile: " + realmProfile);
+    RealmTemplate realmTemplate = RealmTemplate.load(realmProfile);
+
+    String manifest = System.getProperty("manifest");
+    String snapshot = System.getProperty("snapshot");
+    if (!Strings.isNullOrEmpty(manifest)) {
+      if (!Strings.isNullOrEmpty(snapshot)) {
+        throw new IllegalStateException("-Dsnapshot cannot be combined with -Dmanifest: a snapshot"
+            + " holds the single realm the embedded server imports. Build one snapshot per"
+            + " realm by running the bootstrap with -DrealmName and -Dsnapshot instead.");
+      }
+      LOG.info("Manifest: " + manifest);
+      generateFromManifest(Paths.get(manifest), baseDir, realmTemplate, keyPairProvider,
+          keyAlgorithm);
+      return;
+    }
+
     String realmName = System.getProperty("realmName");
     if (Strings.isNullOrEmpty(realmName)) realmName = "webmvc";
     LOG.info("Realm Name: " + realmName);
     String clientId = System.getProperty("clientId");
-    if (Strings.isNullOrEmpty(clientId)) clientId = "webmvc-app";
+    if (Strings.isNullOrEmpty(clientId)) clientId = DEFAULT_CLIENT_ID;
     LOG.info("Client ID: " + clientId);
 
-    // The four files below share two RSA key pairs and must therefore be generated as a set
-    File realmJsonFile = new File(baseDir, REALM_JSON);
-    File appPkFile = new File(baseDir, APP_PK);
-    File appCertFile = new File(baseDir, APP_CERT);
-    File serverCertFile = new File(baseDir, SERVER_CERT);
+    // The two key pairs of a single realm are generated side by side
+    generateRealm(new File(baseDir), realmName, clientId, realmTemplate, keyPairProvider,
+        keyAlgorithm, ForkJoinPool.commonPool());
+
+    if (!Strings.isNullOrEmpty(snapshot)) {
+      LOG.info("Snapshot: " + snapshot);
+      DatabaseSnapshotBuilder.build(Paths.get(snapshot), new File(baseDir));
+    }
+  }
+
+  /**
+   * Generates the realm JSON and the three PEM files of every realm listed in a manifest, each
+   * set in a directory of its own named after the realm.
+   *
+   * <p>Each line of the manifest holds a realm name and, optionally, a client ID separated by a
+   * comma; blank lines and lines starting with {@code #} are ignored. The realms are generated in
+   * parallel on a fork-join pool of {@code parallelism} threads (default: the number of
+   * processors). Every realm keeps the all-or-nothing guarantee of a single run, and a realm that
+   * fails does not stop the others; the failures are reported together at the end.
+   *
+   * @param manifest the manifest file
+   * @param baseDir the directory the realm directories are created in
+   * @param realmTemplate the realm JSON template
+   * @param keyPairProvider the provider generating the key pairs
+   * @param keyAlgorithm the type of the key pairs
+   * @throws IOException if the manifest cannot be read
+   * @throws IllegalStateException if the manifest is invalid or any realm could not be generated
+   */
+  static void generateFromManifest(Path manifest, String baseDir, RealmTemplate realmTemplate,
+      KeyPairProvider keyPairProvider, KeyAlgorithm keyAlgorithm) throws IOException {
+    Map<String, String> clientIds = readManifest(manifest);
+    String parallelismProperty = System.getProperty("parallelism");
+    int parallelism = Strings.isNullOrEmpty(parallelismProperty)
+        ? Runtime.getRuntime().availableProcessors()
+        : Integer.parseInt(parallelismProperty.trim());
+    LOG.info("Generating " + clientIds.size() + " realm(s) with parallelism " + parallelism);
+
+    Map<String, Throwable> failures = new ConcurrentSkipListMap<>();
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      List<ForkJoinTask<?>> tasks = new ArrayList<>(clientIds.size());
+      clientIds.forEach((realmName, clientId) -> tasks.add(pool.submit(() -> {
+        try {
+          // Realms run side by side already, so each one generates its key pairs in turn
+          generateRealm(new File(baseDir, realmName), realmName, clientId, realmTemplate,
+              keyPairProvider, keyAlgorithm, Runnable::run);
+        } catch (Exception e) {
+          LOG.error("Realm " + realmName + " failed: " + e.getMessage());
+          failures.put(realmName, e);
+        }
+      })));
+      tasks.forEach(ForkJoinTask::join);
+    } finally {
+      pool.shutdown();
+    }
+
+    if (!failures.isEmpty()) {
+      IllegalStateException e = new IllegalStateException(failures.size() + " of "
+          + clientIds.size() + " realm(s) could not be generated: " + failures.keySet()
+          + ". The other realms were generated; fix the causes and run the manifest again -"
+          + " complete realms are skipped.");
+      failures.values().forEach(e::addSuppressed);
+      throw e;
+    }
+  }
+
+  /**
+   * Reads the realm names and client IDs of a manifest.
+   *
+   * @param manifest the manifest file
+   * @return client IDs by realm name, in manifest order
+   * @throws IOException if the manifest cannot be read
+   * @throws IllegalStateException if a realm name is invalid or listed twice
+   */
+  static Map<String, String> readManifest(Path manifest) throws IOException {
+    Map<String, String> clientIds = new LinkedHashMap<>();
+    List<String> lines = Files.readAllLines(manifest, StandardCharsets.UTF_8);
+    for (int i = 0; i < lines.size(); i++) {
+      String line = lines.get(i).trim();
+      if (line.isEmpty() || line.startsWith("#")) continue;
+
+      String[] fields = line.split(",", -1);
+      String realmName = fields[0].trim();
+      String clientId = fields.length > 1 ? fields[1].trim() : "";
+      if (clientId.isEmpty()) clientId = DEFAULT_CLIENT_ID;
+      // The realm name becomes a directory name
+      if (!realmName.matches("[A-Za-z0-9][A-Za-z0-9._-]*") || fields.length > 2) {
+        throw new IllegalStateException("Invalid manifest line " + (i + 1) + " in " + manifest
+            + ": '" + lines.get(i) + "'. Expected 'realmName[,clientId]' where the realm name"
+            + " consists of letters, digits, '.', '_' and '-'.");
+      }
+      if (clientIds.putIfAbsent(realmName, clientId) != null) {
+        throw new IllegalStateException(
+            "Realm '" + realmName + "' is listed twice in " + manifest + " (line " + (i + 1) + ")");
+      }
+    }
+    return clientIds;
+  }
+
+  /**
+   * Generates the realm JSON and the three PEM files of one realm as an all-or-nothing set.
+   *
+   * <p>The set is skipped when all of its files already exist, generated when none of them exist,
+   * and rejected when only some exist.
+   *
+   * @param dir the directory the files are written to
+   * @param realmName the realm name
+   * @param clientId the SAML client ID
+   * @param realmTemplate the realm JSON template
+   * @param keyPairProvider the provider generating the key pairs
+   * @param keyAlgorithm the type of the key pairs
+   * @param appKeyExecutor runs the generation of the application key pair, while the calling
+   *        thread generates the realm key pair
+   * @throws IOException if a file cannot be written
+   * @throws IllegalStateException if the files are only partially present, or the key pairs cannot
+   *         be generated
+   */
+  static void generateRealm(File dir, String realmName, String clientId,
+      RealmTemplate realmTemplate, KeyPairProvider keyPairProvider, KeyAlgorithm keyAlgorithm,
+      Executor appKeyExecutor) throws IOException {
+    // The four files below share two key pairs and must therefore be generated as a set
+    File realmJsonFile = new File(dir, REALM_JSON);
+    File appPkFile = new File(dir, APP_PK);
+    File appCertFile = new File(dir, APP_CERT);
+    File serverCertFile = new File(dir, SERVER_CERT);
     List<File> bundle = List.of(realmJsonFile, appPkFile, appCertFile, serverCertFile);
 
     List<File> present = bundle.stream().filter(File::exists).toList();
     if (present.size() == bundle.size()) {
-      LOG.warn("Skipping: " + baseDir + " already holds " + names(bundle)
+      LOG.warn("Skipping: " + dir.getPath() + " already holds " + names(bundle)
           + ". Delete all of them to regenerate a matching set.");
       return;
     }
     if (!present.isEmpty()) {
       List<File> missing = bundle.stream().filter(f -> !f.exists()).toList();
       throw new IllegalStateException("Refusing to regenerate a partial realm/certificate set in "
-          + baseDir + ". Already present: " + names(present) + ". Missing: " + names(missing)
-          + ". These files share two RSA key pairs, so generating only the missing ones would pair"
+          + dir.getPath() + ". Already present: " + names(present) + ". Missing: "
+          + names(missing)
+          + ". These files share two key pairs, so generating only the missing ones would pair"
           + " a fresh certificate with a stale private key and every SAML signature would fail."
           + " Delete the files that are still present, then run the bootstrap again.");
     }
 
-    SelfSignedX509Certificate app = new SelfSignedX509Certificate(clientId, 3650);
-    SelfSignedX509Certificate keycloak = new SelfSignedX509Certificate(realmName, 3650);
+    CompletableFuture<SelfSignedX509Certificate> appFuture = CompletableFuture
+        .supplyAsync(() -> generate(clientId, keyPairProvider, keyAlgorithm), appKeyExecutor);
+    SelfSignedX509Certificate keycloak = generate(realmName, keyPairProvider, keyAlgorithm);
+    SelfSignedX509Certificate app;
+    try {
+      app = appFuture.join();
+    } catch (CompletionException e) {
+      throw e.getCause() instanceof RuntimeException re ? re : e;
+    }
 
-    ClassPathResource jsonTemplate =
-        new ClassPathResource("spring-boot-up-keycloak-plugin-realm-template.json");
-    String realmTemplate =
-        new String(jsonTemplate.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
-    String realmJson =
-        String.format(realmTemplate, app.getTrimPrivateKeyPem(), app.getTrimCertificatePem(),
-            keycloak.getTrimPrivateKeyPem(), keycloak.getTrimCertificatePem());
-    realmJson = realmJson.replace("${realmName}", realmName);
-    realmJson = realmJson.replace("${clientId}", clientId);
+    Map<String, String> values = Map.of(RealmTemplate.REALM_NAME, realmName,
+        RealmTemplate.CLIENT_ID, clientId,
+        RealmTemplate.SIGNATURE_ALGORITHM, keyAlgorithm.getKeycloakAlgorithm(),
+        RealmTemplate.APP_PRIVATE_KEY, app.getTrimPrivateKeyPem(),
+        RealmTemplate.APP_CERTIFICATE, app.getTrimCertificatePem(),
+        RealmTemplate.REALM_PRIVATE_KEY, keycloak.getTrimPrivateKeyPem(),
+        RealmTemplate.REALM_CERTIFICATE, keycloak.getTrimCertificatePem());
 
-    // Everything is rendered before the first write, so a failure above leaves no partial set
-    Files.createDirectories(Paths.get(baseDir));
-    write(realmJsonFile, realmJson);
+    // Both key pairs exist and the values are checked before the first write, so only an I/O
+    // failure can leave a partial set behind
+    Files.createDirectories(dir.toPath());
+    LOG.info("Generating: " + realmJsonFile.getPath());
+    try (Writer writer = Files.newBufferedWriter(realmJsonFile.toPath(), StandardCharsets.UTF_8)) {
+      realmTemplate.render(values, writer);
+    }
     write(appPkFile, app.getPrivateKeyPem());
     write(appCertFile, app.getCertificatePem());
     write(serverCertFile, keycloak.getCertificatePem());
   }
 
+  /**
+   * Parses the {@code realmProfile} system property.
+   *
+   * @param value the property value, may be null
+   * @return the realm template profile, the full one unless {@code lean} is given
+   * @throws IllegalStateException if the value is neither {@code full} nor {@code lean}
+   */
+  static RealmTemplate.Profile realmProfile(String value) {
+    if (Strings.isNullOrEmpty(value)) return RealmTemplate.Profile.FULL;
+    try {
+      return RealmTemplate.Profile.valueOf(value.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalStateException(
+          "Unknown realmProfile '" + value + "'. Use -DrealmProfile=full or lean.", e);
+    }
+  }
+
+  /**
+   * Parses the {@code keyPairProvider} system property.
+   *
+   * @param value the property value, may be null
+   * @return the key pair provider, Bouncy Castle unless {@code jdk} is given
+   * @throws IllegalStateException if the value is neither {@code bc} nor {@code jdk}
+   */
+  static KeyPairProvider keyPairProvider(String value) {
+    if (Strings.isNullOrEmpty(value)) return KeyPairProvider.BC;
+    try {
+      return KeyPairProvider.valueOf(value.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalStateException(
+          "Unknown keyPairProvider '" + value + "'. Use -DkeyPairProvider=bc or jdk.", e);
+    }
+  }
+
+  /**
+   * Parses the {@code keyAlgorithm} system property.
+   *
+   * @param value the property value, may be null
+   * @return the key algorithm, RSA unless {@code ec} is given
+   * @throws IllegalStateException if the value is unknown, or names a key type the realm cannot
+   *         sign SAML messages with
+   */
+  static KeyAlgorithm keyAlgorithm(String value) {
+    if (Strings.isNullOrEmpty(value)) return KeyAlgorithm.RSA;
+    KeyAlgorithm keyAlgorithm;
+    try {
+      keyAlgorithm = KeyAlgorithm.valueOf(value.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalStateException(
+          "Unknown keyAlgorithm '" + value + "'. Use -DkeyAlgorithm=rsa or ec.", e);
+    }
+    if (keyAlgorithm.getKeycloakAlgorithm() == null) {
+      throw new IllegalStateException("Cannot bootstrap a realm with " + keyAlgorithm
+          + " keys: Keycloak's SAML clients only sign and verify with RSA_SHA1, RSA_SHA256,"
+          + " RSA_SHA512 (and their MGF1 variants) or DSA_SHA1, so the realm could neither sign"
+          + " its responses nor verify the application's AuthnRequests. Use -DkeyAlgorithm=rsa."
+          + " EC application keys still work with an identity provider that accepts"
+          + " ECDSA-SHA256: PemUtils loads them and the plugin signs with them.");
+    }
+    return keyAlgorithm;
+  }
+
+  /**
+   * Generates one ten-year self-signed certificate and its key pair.
+   *
+   * @param alias the certificate alias
+   * @param keyPairProvider the provider generating the key pair
+   * @param keyAlgorithm the type of key pair
+   * @return the certificate
+   * @throws IllegalStateException if the key pair or certificate cannot be generated
+   */
+  private static SelfSignedX509Certificate generate(String alias,
+      KeyPairProvider keyPairProvider, KeyAlgorithm keyAlgorithm) {
+    try {
+      return new SelfSignedX509Certificate(alias, 3650, keyPairProvider, keyAlgorithm);
+    } catch (GeneralSecurityException | OperatorCreationException e) {
+      throw new IllegalStateException("Cannot generate the key pair and certificate for '" + alias
+          + "' with the " + keyPairProvider + " provider", e);
+    }
+  }
+
   /**
    * Writes generated content to a file, logging the destination.
    *
@@ -0,0 +1,209 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.bootstrap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * A realm JSON template compiled once into literal text and named placeholders, then rendered
+ * straight to a {@link Writer} in a single pass.
+ *
+ * <p>Only the placeholders in {@link #PLACEHOLDERS} are replaced. Every other {@code ${...}} in
+ * the template - Keycloak's own message keys such as {@code ${client_account}} - is literal text
+ * and passes through untouched, and so does any {@code %}. Placeholder values are written as JSON
+ * string content, with quotes, backslashes and control characters escaped.
+ *
+ * <p>A compiled template is immutable and can be shared between threads, so a realm can be
+ * rendered for a tenant on demand without reading or parsing the template again.
+ *
+ * @author Wei-Ming Wu
+ * @since 26.7.3.1
+ */
+public final class RealmTemplate {
+
+  /**
+   * The realm templates shipped with the plugin.
+   */
+  public enum Profile {
+
+    /**
+     * A complete realm export: Keycloak's built-in OIDC clients, client scopes and protocol
+     * mappers, plus the SAML client.
+     */
+    FULL("spring-boot-up-keycloak-plugin-realm-template.json"),
+
+    /**
+     * Only what the single SAML client needs: the SAML client, the {@code role_list} scope and
+     * the realm keys. Keycloak still creates the built-in clients it cannot run without, with its
+     * own defaults, but none of the OIDC client scopes and protocol mappers.
+     */
+    LEAN("spring-boot-up-keycloak-plugin-realm-template-lean.json");
+
+    private final String location;
+
+    Profile(String location) {
+      this.location = location;
+    }
+
+    /**
+     * Gets the classpath location of the template.
+     *
+     * @return the classpath location
+     */
+    public String getLocation() {
+      return location;
+    }
+
+  }
+
+  public static final String REALM_NAME = "realmName";
+  public static final String CLIENT_ID = "clientId";
+  public static final String SIGNATURE_ALGORITHM = "signatureAlgorithm";
+  public static final String APP_PRIVATE_KEY = "appPrivateKey";
+  public static final String APP_CERTIFICATE = "appCertificate";
+  public static final String REALM_PRIVATE_KEY = "realmPrivateKey";
+  public static final String REALM_CERTIFICATE = "realmCertificate";
+
+  /**
+   * The names this template replaces; all of them must be given a value when rendering.
+   */
+  public static final Set<String> PLACEHOLDERS = Set.of(REALM_NAME, CLIENT_ID, SIGNATURE_ALGORITHM,
+      APP_PRIVATE_KEY, APP_CERTIFICATE, REALM_PRIVATE_KEY, REALM_CERTIFICATE);
+
+  // Literal text at even indexes, placeholder names at odd indexes
+  private final String[] segments;
+  private final int literalLength;
+
+  private RealmTemplate(String[] segments) {
+    this.segments = segments;
+    int length = 0;
+    for (int i = 0; i < segments.length; i += 2) length += segments[i].length();
+    this.literalLength = length;
+  }
+
+  /**
+   * Compiles a template.
+   *
+   * @param template the template text
+   * @return the compiled template
+   */
+  public static RealmTemplate compile(String template) {
+    List<String> segments = new ArrayList<>();
+    int literalStart = 0;
+    int from = 0;
+    int open;
+    while ((open = template.indexOf("${", from)) >= 0) {
+      int close = template.indexOf('}', open + 2);
+      if (close < 0) break;
+      String name = template.substring(open + 2, close);
+      if (PLACEHOLDERS.contains(name)) {
+        segments.add(template.substring(literalStart, open));
+        segments.add(name);
+        literalStart = close + 1;
+      }
+      from = close + 1;
+    }
+    segments.add(template.substring(literalStart));
+    return new RealmTemplate(segments.toArray(String[]::new));
+  }
+
+  /**
+   * Loads and compiles the full realm template shipped with the plugin.
+   *
+   * @return the compiled full template
+   * @throws UncheckedIOException if the template cannot be read
+   */
+  public static RealmTemplate loadDefault() {
+    return load(Profile.FULL);
+  }
+
+  /**
+   * Loads and compiles a realm template shipped with the plugin.
+   *
+   * @param profile the template to load
+   * @return the compiled template
+   * @throws UncheckedIOException if the template cannot be read
+   */
+  public static RealmTemplate load(Profile profile) {
+    try (InputStream in = new ClassPathResource(profile.getLocation()).getInputStream()) {
+      return compile(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot read the realm template " + profile.getLocation(), e);
+    }
+  }
+
+  /**
+   * Renders the template to a writer.
+   *
+   * <p>The values are checked before anything is written, so a missing value never leaves a
+   * partially written document behind.
+   *
+   * @param values the value of every placeholder, keyed by name
+   * @param out the writer to render to; it is neither flushed nor closed
+   * @throws IOException if the writer fails
+   * @throws IllegalArgumentException if a placeholder has no value
+   */
+  public void render(Map<String, String> values, Writer out) throws IOException {
+    for (String name : PLACEHOLDERS) {
+      if (values.get(name) == null) {
+        throw new IllegalArgumentException("No value given for realm template placeholder ${"
+            + name + "}. Expected values for all of " + PLACEHOLDERS);
+      }
+    }
+
+    for (int i = 0; i < segments.length; i++) {
+      if (i % 2 == 0) {
+        out.write(segments[i]);
+      } else {
+        writeJsonString(values.get(segments[i]), out);
+      }
+    }
+  }
+
+  /**
+   * Renders the template to a string.
+   *
+   * @param values the value of every placeholder, keyed by name
+   * @return the rendered document
+   * @throws IllegalArgumentException if a placeholder has no value
+   */
+  public String render(Map<String, String> values) {
+    // Certificates and keys dominate the values, so this usually avoids any regrowth
+    StringWriter out = new StringWriter(literalLength + 8192);
+    try {
+      render(values, out);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return out.toString();
+  }
+
+  private static void writeJsonString(String value, Writer out) throws IOException {
+    int start = 0;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c != '"' && c != '\\' && c >= 0x20) continue;
+
+      out.write(value, start, i - start);
+      switch (c) {
+        case '"' -> out.write("\\\"");
+        case '\\' -> out.write("\\\\");
+        case '\n' -> out.write("\\n");
+        case '\r' -> out.write("\\r");
+        case '\t' -> out.write("\\t");
+        default -> out.write(String.format("\\u%04x", (int) c));
+      }
+      start = i + 1;
+    }
+    out.write(value, start, value.length() - start);
+  }
+
+}
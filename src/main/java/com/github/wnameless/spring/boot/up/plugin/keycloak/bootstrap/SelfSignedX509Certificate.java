@@ -2,16 +2,19 @@ package com.github.wnameless.spring.boot.up.plugin.keycloak.bootstrap;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.security.InvalidAlgorithmParameterException;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
+import java.security.SecureRandom;
 import java.security.Security;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
 import java.util.Base64;
 import java.util.Date;
 import org.bouncycastle.asn1.x500.X500Name;
@@ -26,27 +29,90 @@ import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 /**
  * Utility class for generating self-signed X.509 certificates.
  * 
- * <p>This class creates RSA key pairs and self-signed X.509 certificates
+ * <p>This class creates RSA or EC key pairs and self-signed X.509 certificates
  * for use in SAML authentication. It uses the Bouncy Castle provider
  * for cryptographic operations.
  * 
  * <p>Generated certificates include:
  * <ul>
- *   <li>2048-bit RSA key pair</li>
- *   <li>SHA256withRSA signature algorithm</li>
+ *   <li>2048-bit RSA key pair, or a P-256 EC key pair (see {@link KeyAlgorithm})</li>
+ *   <li>SHA256withRSA or SHA256withECDSA signature algorithm</li>
  *   <li>Configurable validity period</li>
+ *   <li>Random 127-bit serial number</li>
  *   <li>PEM format export capabilities</li>
  * </ul>
+ *
+ * <p>The Bouncy Castle provider is registered once per JVM, on first use. The key pair can
+ * instead be generated with the JDK's own providers, see {@link KeyPairProvider}. Serials are
+ * drawn from a {@link SecureRandom}, so certificates generated concurrently never share one.
+ * Instances can be created from several threads at once.
  * 
  * @author Wei-Ming Wu
  * @since 1.0.0
  */
 public class SelfSignedX509Certificate {
 
+  /**
+   * The provider generating the key pair and signing the certificate.
+   */
+  public enum KeyPairProvider {
+    /** Bouncy Castle, the default. */
+    BC,
+    /** The JDK's own providers, typically SunRsaSign. */
+    JDK
+  }
+
+  /**
+   * The type of key pair to generate.
+   *
+   * @since 26.7.3.1
+   */
+  public enum KeyAlgorithm {
+    /** 2048-bit RSA, signed with SHA256withRSA. The default. */
+    RSA("SHA256withRSA", "RSA_SHA256"),
+    /**
+     * NIST P-256 (secp256r1), signed with SHA256withECDSA. Signing is several times faster than
+     * with RSA, but Keycloak cannot use such keys for SAML, see {@link #getKeycloakAlgorithm()}.
+     */
+    EC("SHA256withECDSA", null);
+
+    private final String signatureAlgorithm;
+    private final String keycloakAlgorithm;
+
+    KeyAlgorithm(String signatureAlgorithm, String keycloakAlgorithm) {
+      this.signatureAlgorithm = signatureAlgorithm;
+      this.keycloakAlgorithm = keycloakAlgorithm;
+    }
+
+    /**
+     * Gets the JCA signature algorithm matching this key type.
+     *
+     * @return the JCA signature algorithm name
+     */
+    public String getSignatureAlgorithm() {
+      return signatureAlgorithm;
+    }
+
+    /**
+     * Gets the value of a Keycloak SAML client's {@code saml.signature.algorithm} attribute for
+     * this key type. Keycloak's SAML signature algorithms are RSA and DSA only, so there is none
+     * for EC keys.
+     *
+     * @return the Keycloak SAML signature algorithm, or null if Keycloak has none
+     */
+    public String getKeycloakAlgorithm() {
+      return keycloakAlgorithm;
+    }
+  }
+
+  private static final String BC_PROVIDER = registerBouncyCastle();
+  private static final SecureRandom SERIAL_RANDOM = new SecureRandom();
+
   private final String alias;
   private final int validDays;
   private final KeyPair keyPair;
   private final X509Certificate certificate;
+  private final KeyAlgorithm keyAlgorithm;
 
   /**
    * Creates a new self-signed X.509 certificate with the specified alias and validity period.
@@ -60,29 +126,93 @@ public class SelfSignedX509Certificate {
    */
   public SelfSignedX509Certificate(String alias, int validDays) throws NoSuchAlgorithmException,
       NoSuchProviderException, OperatorCreationException, CertificateException {
+    this(alias, validDays, KeyPairProvider.BC);
+  }
+
+  /**
+   * Creates a new self-signed X.509 certificate, generating the key pair with the given provider.
+   * 
+   * @param alias the certificate alias, used as the Common Name (CN) in the certificate
+   * @param validDays the number of days the certificate should be valid
+   * @param keyPairProvider the provider generating the key pair and signing the certificate
+   * @throws NoSuchAlgorithmException if RSA algorithm is not available
+   * @throws NoSuchProviderException if Bouncy Castle provider is not available
+   * @throws OperatorCreationException if content signer cannot be created
+   * @throws CertificateException if certificate generation fails
+   * @since 26.7.3.1
+   */
+  public SelfSignedX509Certificate(String alias, int validDays, KeyPairProvider keyPairProvider)
+      throws NoSuchAlgorithmException, NoSuchProviderException, OperatorCreationException,
+      CertificateException {
+    this(alias, validDays, keyPairProvider, KeyAlgorithm.RSA);
+  }
+
+  /**
+   * Creates a new self-signed X.509 certificate of the given key type, generating the key pair
+   * with the given provider.
+   * 
+   * @param alias the certificate alias, used as the Common Name (CN) in the certificate
+   * @param validDays the number of days the certificate should be valid
+   * @param keyPairProvider the provider generating the key pair and signing the certificate
+   * @param keyAlgorithm the type of key pair to generate
+   * @throws NoSuchAlgorithmException if the key algorithm is not available
+   * @throws NoSuchProviderException if Bouncy Castle provider is not available
+   * @throws OperatorCreationException if content signer cannot be created
+   * @throws CertificateException if certificate generation fails
+   * @since 26.7.3.1
+   */
+  public SelfSignedX509Certificate(String alias, int validDays, KeyPairProvider keyPairProvider,
+      KeyAlgorithm keyAlgorithm) throws NoSuchAlgorithmException, NoSuchProviderException,
+      OperatorCreationException, CertificateException {
     this.alias = alias;
     this.validDays = validDays;
-    Security.addProvider(new BouncyCastleProvider());
+    this.keyAlgorithm = keyAlgorithm;
+    boolean bc = keyPairProvider == KeyPairProvider.BC;
 
-    // Generate the RSA KeyPair
-    KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA", "BC");
-    keyPairGenerator.initialize(2048);
+    // Generate the KeyPair
+    KeyPairGenerator keyPairGenerator = bc //
+        ? KeyPairGenerator.getInstance(keyAlgorithm.name(), BC_PROVIDER)
+        : KeyPairGenerator.getInstance(keyAlgorithm.name());
+    if (keyAlgorithm == KeyAlgorithm.EC) {
+      try {
+        keyPairGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+      } catch (InvalidAlgorithmParameterException e) {
+        throw new NoSuchAlgorithmException("P-256 is not supported by " + keyPairProvider, e);
+      }
+    } else {
+      keyPairGenerator.initialize(2048);
+    }
     keyPair = keyPairGenerator.generateKeyPair();
 
     // Generate X.509 certificate
     X500Name issuer = new X500Name("CN=" + alias);
     X500Name subject = new X500Name("CN=" + alias);
-    BigInteger serial = BigInteger.valueOf(System.currentTimeMillis());
+    // Positive and at most 16 octets, well within the 20 allowed by RFC 5280
+    BigInteger serial = new BigInteger(127, SERIAL_RANDOM).add(BigInteger.ONE);
     X509v3CertificateBuilder certificateBuilder = new JcaX509v3CertificateBuilder(issuer, serial,
         // Ten year validity
         new Date(), new Date(System.currentTimeMillis() + (1000L * 60 * 60 * 24 * validDays)),
         subject, keyPair.getPublic());
-    ContentSigner signer =
-        new JcaContentSignerBuilder("SHA256withRSA").setProvider("BC").build(keyPair.getPrivate());
-    certificate = new JcaX509CertificateConverter().setProvider("BC")
+    JcaContentSignerBuilder signerBuilder =
+        new JcaContentSignerBuilder(keyAlgorithm.getSignatureAlgorithm());
+    if (bc) signerBuilder.setProvider(BC_PROVIDER);
+    ContentSigner signer = signerBuilder.build(keyPair.getPrivate());
+    certificate = new JcaX509CertificateConverter().setProvider(BC_PROVIDER)
         .getCertificate(certificateBuilder.build(signer));
   }
 
+  /**
+   * Registers the Bouncy Castle provider unless it already is.
+   * 
+   * @return the provider name
+   */
+  private static String registerBouncyCastle() {
+    if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+      Security.addProvider(new BouncyCastleProvider());
+    }
+    return BouncyCastleProvider.PROVIDER_NAME;
+  }
+
   /**
    * Gets the certificate alias.
    * 
@@ -102,9 +232,19 @@ public class SelfSignedX509Certificate {
   }
 
   /**
-   * Gets the RSA key pair.
+   * Gets the type of the key pair.
+   * 
+   * @return the key algorithm
+   * @since 26.7.3.1
+   */
+  public KeyAlgorithm getKeyAlgorithm() {
+    return this.keyAlgorithm;
+  }
+
+  /**
+   * Gets the key pair.
    * 
-   * @return the RSA key pair
+   * @return the RSA or EC key pair
    */
   public KeyPair getKeyPair() {
     return this.keyPair;
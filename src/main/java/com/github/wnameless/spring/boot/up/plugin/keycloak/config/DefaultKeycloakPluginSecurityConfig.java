@@ -4,32 +4,72 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.HealthIndicator;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Lazy;
-import org.springframework.security.config.Customizer;
+import org.springframework.core.Ordered;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.authentication.AuthenticationEventPublisher;
+import org.springframework.security.authentication.ProviderManager;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityCustomizer;
-import org.springframework.security.saml2.core.OpenSamlInitializationService;
 import org.springframework.security.saml2.core.Saml2X509Credential;
+import org.springframework.security.saml2.provider.service.authentication.AbstractSaml2AuthenticationRequest;
+import org.springframework.security.saml2.provider.service.authentication.OpenSaml4AuthenticationProvider;
+import org.springframework.security.saml2.provider.service.authentication.OpenSaml4AuthenticationProvider.ResponseToken;
+import org.springframework.security.saml2.provider.service.authentication.logout.OpenSaml4LogoutRequestValidator;
+import org.springframework.security.saml2.provider.service.authentication.logout.OpenSaml4LogoutResponseValidator;
 import org.springframework.security.saml2.provider.service.metadata.OpenSaml4MetadataResolver;
+import org.springframework.security.saml2.provider.service.registration.AssertingPartyMetadata;
 import org.springframework.security.saml2.provider.service.registration.InMemoryRelyingPartyRegistrationRepository;
 import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
 import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistrationRepository;
 import org.springframework.security.saml2.provider.service.web.DefaultRelyingPartyRegistrationResolver;
 import org.springframework.security.saml2.provider.service.web.RelyingPartyRegistrationResolver;
-import org.springframework.security.saml2.provider.service.web.Saml2MetadataFilter;
+import org.springframework.security.saml2.provider.service.web.Saml2AuthenticationTokenConverter;
+import org.springframework.security.saml2.provider.service.web.Saml2AuthenticationRequestRepository;
+import org.springframework.security.saml2.provider.service.web.authentication.OpenSaml4AuthenticationRequestResolver;
 import org.springframework.security.saml2.provider.service.web.authentication.Saml2WebSsoAuthenticationFilter;
+import org.springframework.security.saml2.provider.service.web.authentication.logout.OpenSaml4LogoutRequestResolver;
+import org.springframework.security.saml2.provider.service.web.authentication.logout.OpenSaml4LogoutResponseResolver;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.util.unit.DataSize;
 import com.github.wnameless.spring.boot.up.embedded.keycloak.config.KeycloakServerProperties;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.authentication.AssertionReplayCache;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.authentication.AssertionReplayValidator;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.authentication.InMemoryAssertionReplayCache;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.authentication.OpenSamlParserPool;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.authentication.SlimSaml2AuthenticationConverter;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.health.KeycloakRealmHealthIndicator;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.metadata.CachingSaml2MetadataFilter;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.metrics.SamlLoginMetrics;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.realm.KeycloakDatabaseSnapshot;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.registration.HostRelyingPartyRegistrationResolver;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.registration.ReloadingRelyingPartyRegistrationRepository;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.registration.TenantRelyingPartyRegistrationRepository;
 import com.github.wnameless.spring.boot.up.plugin.keycloak.utils.PathUtils;
 import com.github.wnameless.spring.boot.up.plugin.keycloak.utils.PemUtils;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.warmup.SamlLoginWarmup;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.web.CookieSaml2AuthenticationRequestRepository;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.web.PathPrefixRequestMatcher;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.web.ThemeResourceCacheFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 
 /**
  * Default Spring Security configuration for Keycloak SAML2 authentication.
@@ -41,6 +81,7 @@ import com.github.wnameless.spring.boot.up.plugin.keycloak.utils.PemUtils;
  *   <li>X.509 certificate loading for signing and encryption</li>
  *   <li>Security filter chain configuration</li>
  *   <li>Metadata endpoint exposure</li>
+ *   <li>Micrometer timers for every SAML login and logout stage</li>
  *   <li>Keycloak admin path exclusion from security</li>
  * </ul>
  * 
@@ -52,11 +93,56 @@ import com.github.wnameless.spring.boot.up.plugin.keycloak.utils.PemUtils;
  *   <li>{@code keycloak.plugin.serverCertPem} - Location of the Keycloak certificate</li>
  *   <li>{@code keycloak.plugin.appCertPem} - Location of the application certificate</li>
  *   <li>{@code keycloak.plugin.appPrivateKeyPem} - Location of the application private key</li>
+ *   <li>{@code keycloak.plugin.credentialReloadInterval} - How often {@code file:} PEM locations
+ *   are checked for rotation (default: 0, never)</li>
+ *   <li>{@code keycloak.plugin.tenants} - Comma separated realm names, one registration each
+ *   (default: none, a single registration for {@code realmName})</li>
+ *   <li>{@code keycloak.plugin.hosts} - Comma separated host names whose requests get registrations
+ *   pointing at Keycloak under the same host (default: none, {@code baseUrl} for every host); see
+ *   {@link HostRelyingPartyRegistrationResolver}</li>
+ *   <li>{@code keycloak.plugin.publicPaths} - Comma separated path prefixes, e.g. {@code /css},
+ *   that skip the security filters like the Keycloak paths do (default: none); see
+ *   {@link PathPrefixRequestMatcher}</li>
+ *   <li>{@code keycloak.plugin.tenantIdleTimeout} - How long an unused tenant registration is kept
+ *   (default: 30m)</li>
+ *   <li>{@code keycloak.plugin.authnRequestStore} - {@code session} (default) or {@code cookie};
+ *   see {@link CookieSaml2AuthenticationRequestRepository}</li>
+ *   <li>{@code keycloak.plugin.databaseSnapshot} - A prebuilt H2 database copied into place when
+ *   the file-based database does not exist yet and the snapshot was built from the current realm
+ *   files (default: none); see {@link KeycloakDatabaseSnapshot}</li>
+ *   <li>{@code keycloak.plugin.slimPrincipal} - Keep only the principal, not the raw SAMLResponse,
+ *   in the session (default: false); see {@link SlimSaml2AuthenticationConverter}</li>
+ *   <li>{@code keycloak.plugin.replayCacheSize} - How many accepted assertion IDs are remembered
+ *   to reject replayed SAMLResponses (default: 100000, 0 turns the check off); see
+ *   {@link AssertionReplayValidator}</li>
+ *   <li>{@code keycloak.plugin.parserPoolSize} - How many XML parsers OpenSAML keeps for reuse
+ *   (default: 64); see {@link OpenSamlParserPool}</li>
+ *   <li>{@code keycloak.plugin.themeCache} - Serve Keycloak's theme resources from memory with
+ *   immutable caching headers (default: true); see {@link ThemeResourceCacheFilter}</li>
+ *   <li>{@code keycloak.plugin.themeCacheSize} - The most bytes of theme resources kept
+ *   (default: 32MB)</li>
+ *   <li>{@code keycloak.plugin.warmupLogins} - How many SAML logins of a throwaway user run at
+ *   startup, before the application is ready (default: 0, none); see {@link SamlLoginWarmup}</li>
+ *   <li>{@code keycloak.plugin.healthCacheTtl} - How long the {@code keycloakRealm} health result
+ *   is reused (default: 10s); see {@link KeycloakRealmHealthIndicator}</li>
  * </ul>
  *
  * <p>The three PEM locations accept a bare classpath name (the default), an explicit
  * {@code classpath:} location, or a {@code file:} location. Use {@code file:} to keep private keys
- * out of the packaged application archive.
+ * out of the packaged application archive. With a positive reload interval, rotated {@code file:}
+ * credentials are picked up without a restart; see
+ * {@link ReloadingRelyingPartyRegistrationRepository}.
+ *
+ * <p>With {@code keycloak.plugin.tenants} set, every listed realm gets a registration whose ID is
+ * the realm name, built on first use; see {@link TenantRelyingPartyRegistrationRepository}. A
+ * {@code {registrationId}} placeholder in {@code clientId} or in the PEM locations is replaced by
+ * the realm name, so each tenant can have its own client and key pair, e.g.
+ * {@code file:/etc/myapp/{registrationId}/app_private_key.pem}. Tenant registrations are refreshed
+ * by idle eviction rather than by {@code credentialReloadInterval}.
+ *
+ * <p>The SAML components are the Spring Security defaults, each decorated by
+ * {@link SamlLoginMetrics}. Timers are recorded into the application's {@link MeterRegistry} when
+ * there is one, and into Micrometer's global registry otherwise.
  *
  * @author Wei-Ming Wu
  * @since 1.0.0
@@ -70,6 +156,9 @@ public class DefaultKeycloakPluginSecurityConfig {
   private static final Logger LOG =
       LoggerFactory.getLogger(DefaultKeycloakPluginSecurityConfig.class);
 
+  static final String ECDSA_SHA256 = "http://www.w3.org/2001/04/xmldsig-more#ecdsa-sha256";
+  static final String REGISTRATION_ID_PLACEHOLDER = "{registrationId}";
+
   @Value("${server.ssl.enabled:false}")
   boolean serverSslEnabled;
   @Value("${server.port:8080}")
@@ -87,24 +176,81 @@ public class DefaultKeycloakPluginSecurityConfig {
   String appCert;
   @Value("${keycloak.plugin.appPrivateKeyPem:app_private_key.pem}")
   String appPK;
+  @Value("${keycloak.plugin.credentialReloadInterval:0s}")
+  Duration credentialReloadInterval;
+  @Value("${keycloak.plugin.tenants:}")
+  List<String> tenants;
+  @Value("${keycloak.plugin.tenantIdleTimeout:30m}")
+  Duration tenantIdleTimeout;
+  @Value("${keycloak.plugin.hosts:}")
+  List<String> hosts;
+  @Value("${keycloak.plugin.publicPaths:}")
+  List<String> publicPaths;
+  @Value("${keycloak.plugin.themeCacheSize:32MB}")
+  DataSize themeCacheSize;
+  @Value("${keycloak.plugin.warmupLogins:0}")
+  int warmupLogins;
+  @Value("${keycloak.plugin.healthCacheTtl:10s}")
+  Duration healthCacheTtl;
+  @Value("${keycloak.plugin.slimPrincipal:false}")
+  boolean slimPrincipal;
+  @Value("${keycloak.plugin.replayCacheSize:" + InMemoryAssertionReplayCache.DEFAULT_MAX_ENTRIES
+      + "}")
+  int replayCacheSize;
+
+  private volatile String baseUrl;
 
   @Autowired
   KeycloakServerProperties keycloakServerProperties;
+  @Autowired
+  ObjectProvider<MeterRegistry> meterRegistry;
+  @Autowired
+  ObjectProvider<AuthenticationEventPublisher> authenticationEventPublisher;
+  @Autowired
+  ObjectProvider<AssertionReplayCache> assertionReplayCache;
+  @Autowired
+  ObjectProvider<Saml2AuthenticationRequestRepository<AbstractSaml2AuthenticationRequest>>
+      authnRequestRepository;
 
   /**
-   * Configures web security to exclude Keycloak admin paths.
+   * Configures web security to exclude Keycloak admin paths and the configured public paths.
+   * 
+   * <p>The Keycloak context path and {@code keycloak.plugin.publicPaths} go into one
+   * {@link PathPrefixRequestMatcher}, so deciding whether a request skips the security filters is a
+   * single trie lookup however many public paths there are.
    * 
    * @param props Keycloak server properties
-   * @return WebSecurityCustomizer that ignores Keycloak admin paths
+   * @return WebSecurityCustomizer that ignores Keycloak admin paths and public paths
    */
   @Bean
   WebSecurityCustomizer webSecurityCustomizer(KeycloakServerProperties props) {
-    return (web) -> web.ignoring()
-        .requestMatchers(PathUtils.joinPath(props.getContextPath(), "/**"));
+    List<String> prefixes = new ArrayList<>();
+    prefixes.add(props.getContextPath());
+    prefixes.addAll(publicPaths);
+    PathPrefixRequestMatcher matcher = new PathPrefixRequestMatcher(prefixes);
+    LOG.debug("Security filters skip " + matcher.getPrefixes());
+    return (web) -> web.ignoring().requestMatchers(matcher);
   }
 
-  static {
-    OpenSamlInitializationService.initialize();
+  /**
+   * Serves the embedded Keycloak's theme resources from memory, ahead of Keycloak itself.
+   * 
+   * <p>Enabled unless {@code keycloak.plugin.themeCache} is {@code false}; the cached bodies are
+   * bounded by {@code keycloak.plugin.themeCacheSize}.
+   * 
+   * @param props Keycloak server properties
+   * @return the filter registration for {@code <contextPath>/resources/*}
+   */
+  @Bean
+  @ConditionalOnProperty(name = "keycloak.plugin.themeCache", havingValue = "true",
+      matchIfMissing = true)
+  FilterRegistrationBean<ThemeResourceCacheFilter> themeResourceCacheFilter(
+      KeycloakServerProperties props) {
+    FilterRegistrationBean<ThemeResourceCacheFilter> registration = new FilterRegistrationBean<>(
+        new ThemeResourceCacheFilter(props.getContextPath(), themeCacheSize.toBytes()));
+    registration.addUrlPatterns(PathUtils.joinPath("/", props.getContextPath(), "resources/*"));
+    registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+    return registration;
   }
 
   /**
@@ -121,92 +267,255 @@ public class DefaultKeycloakPluginSecurityConfig {
    * Determines the base URL for the application.
    * 
    * <p>Uses the configured base URL if available, otherwise constructs
-   * it from the server protocol, hostname, and port.
+   * it from the server protocol, hostname, and port. The result is determined and logged once.
    * 
    * @return the base URL for the application
    * @throws RuntimeException if hostname cannot be determined
    */
   String getBaseUrl() {
+    String url = baseUrl;
+    if (url != null) return url;
+
     if (!keycloakPluginBaseUrl.isBlank()) {
-      LOG.info("Keycloak plugin base URL: " + keycloakPluginBaseUrl);
-      return keycloakPluginBaseUrl;
+      url = keycloakPluginBaseUrl;
+    } else {
+      try {
+        String protocolSchema = serverSslEnabled ? "https" : "http";
+        url = protocolSchema + "://" + getHostName() + ":" + serverPort;
+      } catch (UnknownHostException e) {
+        throw new RuntimeException(e);
+      }
     }
+    LOG.info("Keycloak plugin base URL: " + url);
+    baseUrl = url;
+    return url;
+  }
 
-    try {
-      String protocolSchema = serverSslEnabled ? "https" : "http";
-      return protocolSchema + "://" + getHostName() + ":" + serverPort;
-    } catch (UnknownHostException e) {
-      throw new RuntimeException(e);
-    }
+  /**
+   * Logs a throwaway user in {@code keycloak.plugin.warmupLogins} times before the application
+   * reports itself ready, so the first real logins do not run on a cold JVM.
+   * 
+   * <p>With {@code keycloak.plugin.tenants} set, the first tenant's realm is warmed up.
+   * 
+   * @return the warm-up, which does nothing unless {@code warmupLogins} is positive
+   */
+  @Bean
+  SamlLoginWarmup samlLoginWarmup() {
+    String realm = realmNames().get(0);
+    return new SamlLoginWarmup(getBaseUrl(), serverSslEnabled,
+        keycloakServerProperties.getContextPath(), realm, realm, warmupLogins,
+        meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+  }
+
+  /**
+   * Seeds a missing file-based H2 Keycloak database from {@code keycloak.plugin.databaseSnapshot}
+   * before any bean, the embedded Keycloak server included, is created.
+   *
+   * @return the snapshot installer
+   */
+  @Bean
+  static KeycloakDatabaseSnapshot keycloakDatabaseSnapshot() {
+    return new KeycloakDatabaseSnapshot();
+  }
+
+  /**
+   * Initializes OpenSAML with a pooled, locked down XML parser before any bean uses it.
+   *
+   * @return the parser pool installer
+   */
+  @Bean
+  static OpenSamlParserPool openSamlParserPool() {
+    return new OpenSamlParserPool();
   }
 
   /**
    * Creates the SAML2 relying party registration repository.
    * 
-   * <p>Configures the relying party (service provider) settings including:
-   * entity ID, signing/decryption credentials, and asserting party metadata.
+   * <p>Holds the registration built by {@link #buildRegistration()}. When
+   * {@code keycloak.plugin.credentialReloadInterval} is positive, the registration is rebuilt
+   * whenever one of the {@code file:} PEM locations changes. When
+   * {@code keycloak.plugin.tenants} is set, holds one lazily built registration per tenant
+   * instead.
    * 
    * @return repository containing the relying party registration
    */
   @Lazy
   @Bean
   RelyingPartyRegistrationRepository relyingPartyRegistrations() {
-    PrivateKey webmvcPK = loadWebmvPK();
-    X509Certificate webmvcCert = loadWebmvCert();
-    X509Certificate keycloakCert = loadKeycloakCert();
+    List<String> tenantIds = tenants.stream().map(String::trim).filter(t -> !t.isEmpty()).toList();
+    if (!tenantIds.isEmpty()) {
+      return new TenantRelyingPartyRegistrationRepository(tenantIds, this::buildRegistration,
+          tenantIdleTimeout);
+    }
+    if (credentialReloadInterval.isZero() || credentialReloadInterval.isNegative()) {
+      return new InMemoryRelyingPartyRegistrationRepository(buildRegistration());
+    }
+    return new ReloadingRelyingPartyRegistrationRepository(this::buildRegistration,
+        List.of(serverCert, appCert, appPK), credentialReloadInterval);
+  }
+
+  /**
+   * Builds the SAML2 relying party registration from the current PEM files.
+   * 
+   * <p>Configures the relying party (service provider) settings including:
+   * entity ID, signing/decryption credentials, and asserting party metadata.
+   * AuthnRequests are signed with RSA-SHA256, or with ECDSA-SHA256 when the application private
+   * key is an EC key.
+   * 
+   * @return the relying party registration
+   */
+  RelyingPartyRegistration buildRegistration() {
+    return buildRegistration(realmName);
+  }
+
+  /**
+   * Builds the SAML2 relying party registration of one realm from its current PEM files.
+   * 
+   * <p>The registration ID is the realm name. {@code {registrationId}} placeholders in the client
+   * ID and the PEM locations are replaced by it.
+   * 
+   * @param realmName the realm, used as registration ID
+   * @return the relying party registration
+   */
+  RelyingPartyRegistration buildRegistration(String realmName) {
+    PrivateKey webmvcPK = loadWebmvPK(realmName);
+    X509Certificate webmvcCert = loadWebmvCert(realmName);
+    X509Certificate keycloakCert = loadKeycloakCert(realmName);
     String baseUrl = getBaseUrl();
-    RelyingPartyRegistration registration = RelyingPartyRegistration //
+    return RelyingPartyRegistration //
         .withRegistrationId(realmName) //
-        .entityId(clientId) //
+        .entityId(forRealm(clientId, realmName)) //
         .signingX509Credentials((c) -> c.add(Saml2X509Credential.signing(webmvcPK, webmvcCert)))
         .decryptionX509Credentials(
             (c) -> c.add(Saml2X509Credential.decryption(webmvcPK, webmvcCert)))
         .assertingPartyMetadata((metadata) -> {
-          metadata.entityId(PathUtils.joinPath(baseUrl, keycloakServerProperties.getContextPath(),
-              "/realms/" + realmName));
-          metadata.singleSignOnServiceLocation(
-              PathUtils.joinPath(baseUrl, keycloakServerProperties.getContextPath(),
-                  "/realms/" + realmName + "/protocol/saml"));
-          metadata.singleLogoutServiceLocation(
-              PathUtils.joinPath(baseUrl, keycloakServerProperties.getContextPath(),
-                  "/realms/" + realmName + "/protocol/saml"));
+          keycloakEndpoints(metadata, baseUrl, realmName);
           metadata.encryptionX509Credentials(
               (c) -> c.add(Saml2X509Credential.encryption(keycloakCert)));
           metadata.verificationX509Credentials(
               (c) -> c.add(Saml2X509Credential.verification(keycloakCert)));
           metadata.wantAuthnRequestsSigned(true);
+          if ("EC".equals(webmvcPK.getAlgorithm())) {
+            // The default list only holds RSA-SHA256, which an EC key cannot produce
+            metadata.signingAlgorithms((algorithms) -> {
+              algorithms.clear();
+              algorithms.add(ECDSA_SHA256);
+            });
+          }
         }).build();
-    return new InMemoryRelyingPartyRegistrationRepository(registration);
+  }
+
+  /**
+   * Points a registration at the embedded Keycloak under another base URL, for
+   * {@link HostRelyingPartyRegistrationResolver}.
+   *
+   * @param registration the resolved registration, whose ID is the realm name
+   * @param baseUrl the {@code scheme://host[:port]} the request came in on
+   * @return the registration with the Keycloak endpoints under that base URL
+   */
+  RelyingPartyRegistration forBaseUrl(RelyingPartyRegistration registration, String baseUrl) {
+    return registration.mutate().assertingPartyMetadata((metadata) -> keycloakEndpoints(metadata,
+        baseUrl, registration.getRegistrationId())).build();
+  }
+
+  private void keycloakEndpoints(AssertingPartyMetadata.Builder<?> metadata, String baseUrl,
+      String realmName) {
+    String realmUrl = PathUtils.joinPath(baseUrl, keycloakServerProperties.getContextPath(),
+        "/realms/" + realmName);
+    metadata.entityId(realmUrl);
+    metadata.singleSignOnServiceLocation(realmUrl + "/protocol/saml");
+    metadata.singleLogoutServiceLocation(realmUrl + "/protocol/saml");
+  }
+
+  /**
+   * Replaces the {@code {registrationId}} placeholder in a configured value.
+   *
+   * @param value the configured value
+   * @param realmName the realm, which is the registration ID
+   * @return the value for that realm
+   */
+  static String forRealm(String value, String realmName) {
+    return value.replace(REGISTRATION_ID_PLACEHOLDER, realmName);
+  }
+
+  /**
+   * Gets the realms the application logs in with.
+   *
+   * @return the {@code keycloak.plugin.tenants}, or {@code realmName} when there are none
+   */
+  List<String> realmNames() {
+    List<String> tenantIds = tenants.stream().map(String::trim).filter(t -> !t.isEmpty()).toList();
+    return tenantIds.isEmpty() ? List.of(realmName) : tenantIds;
   }
 
   /**
    * Loads the Keycloak server X.509 certificate.
    *
+   * @param realmName the realm whose certificate to load
    * @return the Keycloak server certificate
    * @throws IllegalStateException if certificate cannot be loaded
    */
-  X509Certificate loadKeycloakCert() {
-    return PemUtils.loadCertificate(serverCert);
+  X509Certificate loadKeycloakCert(String realmName) {
+    return PemUtils.loadCertificate(forRealm(serverCert, realmName));
   }
 
   /**
    * Loads the application private key.
    *
+   * @param realmName the realm whose private key to load
    * @return the application private key
    * @throws IllegalStateException if private key cannot be loaded
    */
-  PrivateKey loadWebmvPK() {
-    return PemUtils.loadPrivateKey(appPK);
+  PrivateKey loadWebmvPK(String realmName) {
+    return PemUtils.loadPrivateKey(forRealm(appPK, realmName));
   }
 
   /**
    * Loads the application X.509 certificate.
    *
+   * @param realmName the realm whose certificate to load
    * @return the application certificate
    * @throws IllegalStateException if certificate cannot be loaded
    */
-  X509Certificate loadWebmvCert() {
-    return PemUtils.loadCertificate(appCert);
+  X509Certificate loadWebmvCert(String realmName) {
+    return PemUtils.loadCertificate(forRealm(appCert, realmName));
+  }
+
+  /**
+   * Creates the resolver the SAML endpoints look registrations up with.
+   *
+   * <p>With {@code keycloak.plugin.hosts} set, requests for those hosts get registrations whose
+   * Keycloak endpoints are under the request's own base URL, built once per host; see
+   * {@link HostRelyingPartyRegistrationResolver}. Otherwise, and for every other host, it is the
+   * Spring Security default.
+   *
+   * @return the registration resolver
+   */
+  RelyingPartyRegistrationResolver relyingPartyRegistrationResolver() {
+    List<String> hostNames = hosts.stream().map(String::trim).filter(h -> !h.isEmpty()).toList();
+    if (hostNames.isEmpty()) {
+      return new DefaultRelyingPartyRegistrationResolver(relyingPartyRegistrations());
+    }
+    return new HostRelyingPartyRegistrationResolver(relyingPartyRegistrations(), hostNames,
+        this::forBaseUrl);
+  }
+
+  /**
+   * Keeps outstanding AuthnRequests in an encrypted cookie instead of the HTTP session, when
+   * {@code keycloak.plugin.authnRequestStore=cookie}.
+   *
+   * <p>{@code saml2Login} picks the repository up as a bean, for both saving the request on the
+   * way to Keycloak and loading it at the assertion consumer service. The per-host converter of
+   * {@code keycloak.plugin.hosts} is handed the same bean.
+   *
+   * @return the cookie-backed repository
+   */
+  @Lazy
+  @Bean
+  @ConditionalOnProperty(name = "keycloak.plugin.authnRequestStore", havingValue = "cookie")
+  Saml2AuthenticationRequestRepository<AbstractSaml2AuthenticationRequest>
+      authenticationRequestRepository() {
+    return new CookieSaml2AuthenticationRequestRepository(relyingPartyRegistrations());
   }
 
   /**
@@ -214,9 +523,11 @@ public class DefaultKeycloakPluginSecurityConfig {
    * 
    * <p>Sets up:
    * <ul>
+   *   <li>Registration lookup per request host when {@code keycloak.plugin.hosts} is set</li>
    *   <li>Authorization rules requiring authentication for all requests</li>
-   *   <li>SAML2 login and logout support</li>
-   *   <li>Metadata filter for exposing SP metadata</li>
+   *   <li>SAML2 login and logout support, timed by {@link SamlLoginMetrics}</li>
+   *   <li>Metadata filter for exposing SP metadata, rendered once per registration and served
+   *   with an ETag and gzip; see {@link CachingSaml2MetadataFilter}</li>
    * </ul>
    * 
    * @param http the HttpSecurity to configure
@@ -226,20 +537,116 @@ public class DefaultKeycloakPluginSecurityConfig {
   @Lazy
   @Bean
   SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+    SamlLoginMetrics metrics =
+        new SamlLoginMetrics(meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
     RelyingPartyRegistrationResolver relyingPartyRegistrationResolver =
-        new DefaultRelyingPartyRegistrationResolver(relyingPartyRegistrations());
-    Saml2MetadataFilter metadataFilter =
-        new Saml2MetadataFilter(relyingPartyRegistrationResolver, new OpenSaml4MetadataResolver());
+        relyingPartyRegistrationResolver();
+    CachingSaml2MetadataFilter metadataFilter =
+        new CachingSaml2MetadataFilter(relyingPartyRegistrations(),
+            relyingPartyRegistrationResolver,
+            metrics.metadataResolver(new OpenSaml4MetadataResolver()));
     // @formatter:off
 		http
 			.authorizeHttpRequests((authorize) -> authorize
 				.anyRequest().authenticated()
 			)
-      .saml2Login(Customizer.withDefaults())
-			.saml2Logout(Customizer.withDefaults())
+			.saml2Login((saml2) -> {
+				saml2
+					.authenticationRequestResolver(metrics.authenticationRequestResolver(
+						new OpenSaml4AuthenticationRequestResolver(relyingPartyRegistrationResolver)))
+					.authenticationManager(authenticationManager(metrics));
+				if (relyingPartyRegistrationResolver instanceof HostRelyingPartyRegistrationResolver) {
+					// The ACS must validate the response against the same per-host registration.
+					// saml2Login only hands the request repository bean to a converter it builds itself
+					Saml2AuthenticationTokenConverter authenticationConverter =
+						new Saml2AuthenticationTokenConverter(relyingPartyRegistrationResolver);
+					authnRequestRepository
+						.ifAvailable(authenticationConverter::setAuthenticationRequestRepository);
+					saml2.authenticationConverter(authenticationConverter);
+				}
+			})
+			.saml2Logout((saml2) -> saml2
+				.logoutRequest((request) -> request
+					.logoutRequestResolver(metrics.logoutRequestResolver(
+						new OpenSaml4LogoutRequestResolver(relyingPartyRegistrationResolver)))
+					.logoutRequestValidator(
+						metrics.logoutRequestValidator(new OpenSaml4LogoutRequestValidator())))
+				.logoutResponse((response) -> response
+					.logoutResponseResolver(metrics.logoutResponseResolver(
+						new OpenSaml4LogoutResponseResolver(relyingPartyRegistrationResolver)))
+					.logoutResponseValidator(
+						metrics.logoutResponseValidator(new OpenSaml4LogoutResponseValidator())))
+			)
 			.addFilterBefore(metadataFilter, Saml2WebSsoAuthenticationFilter.class);
 		// @formatter:on 
     return http.build();
   }
 
+  /**
+   * Creates the authentication manager for SAMLResponses posted to the assertion consumer service.
+   * 
+   * <p>Uses the default {@link OpenSaml4AuthenticationProvider} with its default assertion
+   * validator and response converter, each timed by the given metrics. Authentication events are
+   * published as they would be by the default manager.
+   *
+   * <p>The IDs of assertions in fully validated responses are recorded by an
+   * {@link AssertionReplayValidator}, so a replayed SAMLResponse is rejected. The cache is the
+   * application's {@link AssertionReplayCache} bean when there is one, for clusters, and an
+   * {@link InMemoryAssertionReplayCache} of {@code keycloak.plugin.replayCacheSize} entries
+   * otherwise. With {@code keycloak.plugin.slimPrincipal} the converted authentication drops the
+   * raw SAMLResponse; see {@link SlimSaml2AuthenticationConverter}.
+   * 
+   * @param metrics the SAML login metrics
+   * @return the authentication manager
+   */
+  ProviderManager authenticationManager(SamlLoginMetrics metrics) {
+    OpenSaml4AuthenticationProvider provider = new OpenSaml4AuthenticationProvider();
+    provider.setAssertionValidator(metrics
+        .assertionValidator(OpenSaml4AuthenticationProvider.createDefaultAssertionValidator()));
+    Converter<ResponseToken, ? extends AbstractAuthenticationToken> responseConverter =
+        OpenSaml4AuthenticationProvider.createDefaultResponseAuthenticationConverter();
+    if (slimPrincipal) {
+      responseConverter = new SlimSaml2AuthenticationConverter(responseConverter,
+          meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+    }
+    AssertionReplayCache replayCache = assertionReplayCache.getIfAvailable(
+        () -> replayCacheSize > 0 ? new InMemoryAssertionReplayCache(replayCacheSize) : null);
+    if (replayCache != null) {
+      // Wraps the response converter, which only runs once the whole response has been validated
+      responseConverter = new AssertionReplayValidator(responseConverter, replayCache);
+    }
+    provider.setResponseAuthenticationConverter(
+        metrics.responseAuthenticationConverter(responseConverter));
+    ProviderManager manager = new ProviderManager(metrics.authenticationProvider(provider));
+    authenticationEventPublisher.ifAvailable(manager::setAuthenticationEventPublisher);
+    return manager;
+  }
+
+  /**
+   * Registers the {@code keycloakRealm} health indicator when Spring Boot Actuator is on the
+   * classpath.
+   */
+  @Configuration(proxyBeanMethods = false)
+  @ConditionalOnClass(HealthIndicator.class)
+  static class KeycloakRealmHealthConfiguration {
+
+    /**
+     * Checks that the realm, its SAML client and its signing certificate are in place.
+     * 
+     * <p>With {@code keycloak.plugin.tenants} set, the first tenant's realm is checked, as it is
+     * the one warmed up.
+     * 
+     * @param config the plugin configuration
+     * @return the health indicator, also meant for the readiness group
+     */
+    @Bean
+    KeycloakRealmHealthIndicator keycloakRealmHealthIndicator(
+        DefaultKeycloakPluginSecurityConfig config) {
+      return new KeycloakRealmHealthIndicator(List.of(config.realmNames().get(0)),
+          (realm) -> forRealm(config.clientId, realm), config::loadKeycloakCert,
+          config.healthCacheTtl);
+    }
+
+  }
+
 }
@@ -0,0 +1,151 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.health;
+
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.keycloak.crypto.Algorithm;
+import org.keycloak.crypto.KeyUse;
+import org.keycloak.crypto.KeyWrapper;
+import org.keycloak.models.ClientModel;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.services.resources.KeycloakApplication;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+
+/**
+ * Reports whether the embedded Keycloak can complete a SAML login for the configured realms.
+ *
+ * <p>The application context, and with it the default readiness state, is up before the embedded
+ * Keycloak has finished migrating its database or importing the realm, and a login started in
+ * between ends in "Realm not found" or a 5xx. This indicator is {@code UP} only when, for every
+ * realm it is given:
+ * <ul>
+ * <li>the realm exists,</li>
+ * <li>its SAML client exists, is enabled and speaks {@code saml}, and</li>
+ * <li>its active RS256 signing key's certificate is the Keycloak certificate the relying party
+ * registration trusts, so the SAMLResponse signatures will verify.</li>
+ * </ul>
+ *
+ * <p>With {@code keycloak.plugin.tenants}, the plugin gives it the first tenant's realm only, the
+ * one {@code SamlLoginWarmup} logs in to: tenants are many and built on demand, and one tenant
+ * whose realm is not imported yet must not take the whole node out of rotation.
+ *
+ * <p>The checks run in-process against Keycloak's model, one transaction per realm, without any
+ * HTTP round trip. The result, up or down, is kept for a fixed time, so frequent probes from a load
+ * balancer cost a field read. Include it in the readiness group to hold traffic back until a node
+ * can finish a login: {@code management.endpoint.health.group.readiness.include=readinessState,
+ * keycloakRealm}.
+ *
+ * @author Wei-Ming Wu
+ * @since 26.7.3.1
+ */
+public class KeycloakRealmHealthIndicator implements HealthIndicator {
+
+  private static final Logger LOG = LoggerFactory.getLogger(KeycloakRealmHealthIndicator.class);
+
+  public static final Duration DEFAULT_CACHE_TTL = Duration.ofSeconds(10);
+
+  private final List<String> realms;
+  private final Function<String, String> clientIds;
+  private final Function<String, X509Certificate> certificates;
+  private final Duration cacheTtl;
+  private final Clock clock;
+  private final Supplier<KeycloakSessionFactory> sessionFactory;
+
+  private volatile Checked checked;
+
+  private record Checked(Health health, Instant expiresAt) {}
+
+  /**
+   * Creates the indicator.
+   *
+   * @param realms the realms to check
+   * @param clientIds gives the SAML client ID of a realm
+   * @param certificates loads the Keycloak certificate a realm's registration trusts
+   * @param cacheTtl how long a result is reused
+   */
+  public KeycloakRealmHealthIndicator(List<String> realms, Function<String, String> clientIds,
+      Function<String, X509Certificate> certificates, Duration cacheTtl) {
+    this(realms, clientIds, certificates, cacheTtl, Clock.systemUTC(),
+        KeycloakApplication::getSessionFactory);
+  }
+
+  KeycloakRealmHealthIndicator(List<String> realms, Function<String, String> clientIds,
+      Function<String, X509Certificate> certificates, Duration cacheTtl, Clock clock,
+      Supplier<KeycloakSessionFactory> sessionFactory) {
+    this.realms = List.copyOf(realms);
+    this.clientIds = clientIds;
+    this.certificates = certificates;
+    this.cacheTtl = cacheTtl;
+    this.clock = clock;
+    this.sessionFactory = sessionFactory;
+  }
+
+  @Override
+  public Health health() {
+    Instant now = clock.instant();
+    Checked current = checked;
+    if (current != null && now.isBefore(current.expiresAt())) return current.health();
+
+    // Concurrent probes may both check once the result expires; that is cheaper than a lock
+    Health health = check();
+    if (!health.getStatus().equals(current == null ? null : current.health().getStatus())) {
+      LOG.info("Keycloak realm health is " + health.getStatus() + ": " + health.getDetails());
+    }
+    checked = new Checked(health, now.plus(cacheTtl));
+    return health;
+  }
+
+  private Health check() {
+    KeycloakSessionFactory sessionFactory = this.sessionFactory.get();
+    if (sessionFactory == null) {
+      return Health.down().withDetail("keycloak", "not started").build();
+    }
+
+    try {
+      Map<String, String> problems = new LinkedHashMap<>();
+      for (String realm : realms) {
+        String problem = checkRealm(sessionFactory, realm);
+        if (problem != null) problems.put(realm, problem);
+      }
+      Health.Builder builder = problems.isEmpty() ? Health.up() : Health.down();
+      builder.withDetail("realms", realms);
+      if (!problems.isEmpty()) builder.withDetail("problems", problems);
+      return builder.build();
+    } catch (RuntimeException e) {
+      return Health.down(e).withDetail("realms", realms).build();
+    }
+  }
+
+  private String checkRealm(KeycloakSessionFactory sessionFactory, String realmName) {
+    String clientId = clientIds.apply(realmName);
+    X509Certificate expected = certificates.apply(realmName);
+    return KeycloakModelUtils.runJobInTransactionWithResult(sessionFactory, (session) -> {
+      RealmModel realm = session.realms().getRealmByName(realmName);
+      if (realm == null) return "realm not found";
+      ClientModel client = realm.getClientByClientId(clientId);
+      if (client == null) return "SAML client '" + clientId + "' not found";
+      if (!client.isEnabled()) return "SAML client '" + clientId + "' is disabled";
+      if (!"saml".equals(client.getProtocol())) {
+        return "client '" + clientId + "' uses protocol " + client.getProtocol() + ", not saml";
+      }
+      KeyWrapper key = session.keys().getActiveKey(realm, KeyUse.SIG, Algorithm.RS256);
+      if (key == null || key.getCertificate() == null) return "no active RS256 signing key";
+      if (!expected.equals(key.getCertificate())) {
+        return "active signing certificate does not match the configured Keycloak certificate";
+      }
+      return null;
+    });
+  }
+
+}
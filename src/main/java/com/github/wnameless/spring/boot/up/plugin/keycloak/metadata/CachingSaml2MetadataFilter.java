@@ -0,0 +1,145 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.metadata;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.saml2.provider.service.metadata.Saml2MetadataResolver;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistrationRepository;
+import org.springframework.security.saml2.provider.service.web.RelyingPartyRegistrationResolver;
+import org.springframework.security.web.servlet.util.matcher.PathPatternRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher.MatchResult;
+import org.springframework.web.filter.OncePerRequestFilter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.utils.HttpCacheUtils;
+
+/**
+ * Serves service provider metadata like {@code Saml2MetadataFilter}, rendering each document once
+ * instead of on every request.
+ *
+ * <p>A document is rendered the first time it is asked for and kept as bytes, together with its
+ * gzipped form and a strong ETag computed from its content. It is rendered again only when the
+ * repository returns a different registration instance for its ID, which is what a credential
+ * reload does. Because the registration's {@code {baseUrl}} placeholders are resolved against the
+ * request, the request's base URL is part of the cache key; at most {@value #CACHE_LIMIT} documents
+ * are kept, so arbitrary Host headers cannot grow the cache without bound.
+ *
+ * <p>Responses carry the ETag, {@code Cache-Control: no-cache} and {@code Vary: Accept-Encoding}.
+ * A matching {@code If-None-Match} is answered with 304 and no body, and clients accepting gzip get
+ * the precompressed body. Monitoring systems and federation aggregators polling the endpoint
+ * therefore cost a map lookup, and usually not even a body.
+ *
+ * @author Wei-Ming Wu
+ * @since 26.7.3.1
+ */
+public class CachingSaml2MetadataFilter extends OncePerRequestFilter {
+
+  public static final String DEFAULT_METADATA_FILE_NAME = "saml-{registrationId}-metadata.xml";
+
+  static final String METADATA_CONTENT_TYPE = "application/samlmetadata+xml";
+  static final int CACHE_LIMIT = 32;
+
+  private final RelyingPartyRegistrationRepository registrations;
+  private final RelyingPartyRegistrationResolver registrationResolver;
+  private final Saml2MetadataResolver metadataResolver;
+  private final RequestMatcher requestMatcher = PathPatternRequestMatcher.withDefaults()
+      .matcher("/saml2/service-provider-metadata/{registrationId}");
+  private final ConcurrentMap<String, Rendered> cache = new ConcurrentHashMap<>();
+
+  /**
+   * A rendered document and the registration it was rendered from.
+   */
+  private record Rendered(RelyingPartyRegistration source, String fileName, byte[] body,
+      byte[] gzipped, String etag) {}
+
+  /**
+   * Creates the filter.
+   *
+   * @param registrations the repository whose registration instances decide when a document is
+   *        stale
+   * @param registrationResolver resolves the registration, placeholders included, for a request
+   * @param metadataResolver renders the metadata document
+   */
+  public CachingSaml2MetadataFilter(RelyingPartyRegistrationRepository registrations,
+      RelyingPartyRegistrationResolver registrationResolver,
+      Saml2MetadataResolver metadataResolver) {
+    this.registrations = registrations;
+    this.registrationResolver = registrationResolver;
+    this.metadataResolver = metadataResolver;
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+      FilterChain chain) throws ServletException, IOException {
+    MatchResult match = requestMatcher.matcher(request);
+    if (!match.isMatch()) {
+      chain.doFilter(request, response);
+      return;
+    }
+
+    String registrationId = match.getVariables().get("registrationId");
+    RelyingPartyRegistration source = registrations.findByRegistrationId(registrationId);
+    if (source == null) {
+      response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+      return;
+    }
+
+    String key = registrationId + '|' + baseUrl(request);
+    Rendered rendered = cache.get(key);
+    if (rendered == null || rendered.source() != source) {
+      rendered = render(request, registrationId, source);
+      if (cache.size() >= CACHE_LIMIT && !cache.containsKey(key)) cache.clear();
+      cache.put(key, rendered);
+    }
+    write(request, response, rendered);
+  }
+
+  private Rendered render(HttpServletRequest request, String registrationId,
+      RelyingPartyRegistration source) throws IOException {
+    RelyingPartyRegistration registration = registrationResolver.resolve(request, registrationId);
+    byte[] body = metadataResolver.resolve(registration).getBytes(StandardCharsets.UTF_8);
+
+    byte[] gzipped = HttpCacheUtils.gzip(body);
+
+    String fileName = DEFAULT_METADATA_FILE_NAME.replace("{registrationId}", registrationId);
+    return new Rendered(source, fileName, body, gzipped, HttpCacheUtils.etag(body));
+  }
+
+  private static void write(HttpServletRequest request, HttpServletResponse response,
+      Rendered rendered) throws IOException {
+    response.setHeader(HttpHeaders.ETAG, rendered.etag());
+    response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+    response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+    if (HttpCacheUtils.etagMatches(ifNoneMatch, rendered.etag())) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    response.setContentType(METADATA_CONTENT_TYPE);
+    response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+    response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+        String.format("attachment; filename=\"%s\"; filename*=UTF-8''%s", rendered.fileName(),
+            URLEncoder.encode(rendered.fileName(), StandardCharsets.UTF_8)));
+    byte[] body = rendered.body();
+    if (rendered.gzipped() != null && HttpCacheUtils.acceptsGzip(request)) {
+      response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+      body = rendered.gzipped();
+    }
+    response.setContentLength(body.length);
+    response.getOutputStream().write(body);
+  }
+
+  private static String baseUrl(HttpServletRequest request) {
+    return request.getScheme() + "://" + request.getServerName() + ':' + request.getServerPort()
+        + request.getContextPath();
+  }
+
+}
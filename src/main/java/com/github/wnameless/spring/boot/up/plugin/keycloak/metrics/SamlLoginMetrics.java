@@ -0,0 +1,376 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.saml2.core.Saml2Error;
+import org.springframework.security.saml2.core.Saml2ResponseValidatorResult;
+import org.springframework.security.saml2.provider.service.authentication.AbstractSaml2AuthenticationRequest;
+import org.springframework.security.saml2.provider.service.authentication.OpenSaml4AuthenticationProvider.AssertionToken;
+import org.springframework.security.saml2.provider.service.authentication.OpenSaml4AuthenticationProvider.ResponseToken;
+import org.springframework.security.saml2.provider.service.authentication.Saml2AuthenticatedPrincipal;
+import org.springframework.security.saml2.provider.service.authentication.Saml2AuthenticationException;
+import org.springframework.security.saml2.provider.service.authentication.Saml2AuthenticationToken;
+import org.springframework.security.saml2.provider.service.authentication.logout.Saml2LogoutRequest;
+import org.springframework.security.saml2.provider.service.authentication.logout.Saml2LogoutRequestValidator;
+import org.springframework.security.saml2.provider.service.authentication.logout.Saml2LogoutResponse;
+import org.springframework.security.saml2.provider.service.authentication.logout.Saml2LogoutResponseValidator;
+import org.springframework.security.saml2.provider.service.authentication.logout.Saml2LogoutValidatorResult;
+import org.springframework.security.saml2.provider.service.metadata.Saml2MetadataResolver;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+import org.springframework.security.saml2.provider.service.web.authentication.Saml2AuthenticationRequestResolver;
+import org.springframework.security.saml2.provider.service.web.authentication.logout.Saml2LogoutRequestResolver;
+import org.springframework.security.saml2.provider.service.web.authentication.logout.Saml2LogoutResponseResolver;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Decorates the SAML components of the security filter chain with Micrometer timers.
+ *
+ * <p>Every stage of a login and logout gets its own timer:
+ * <ul>
+ * <li>{@value #AUTHN_REQUEST} - building, signing and encoding the AuthnRequest</li>
+ * <li>{@value #RESPONSE} - the whole assertion consumer service step: parsing the SAMLResponse,
+ * verifying its signature, validating it and converting it</li>
+ * <li>{@value #ASSERTION_VALIDATION} - validating conditions, audience and subject
+ * confirmation</li>
+ * <li>{@value #PRINCIPAL_CONVERSION} - turning the validated response into an
+ * {@code Authentication}</li>
+ * <li>{@value #LOGOUT_REQUEST} - creating a LogoutRequest, or validating one sent by Keycloak</li>
+ * <li>{@value #LOGOUT_RESPONSE} - creating a LogoutResponse, or validating one sent by
+ * Keycloak</li>
+ * <li>{@value #METADATA} - generating the service provider metadata</li>
+ * </ul>
+ *
+ * <p>Each timer is tagged with {@code registration}, the relying party registration ID, and
+ * {@code outcome}: {@code success}, or the {@code Saml2ErrorCodes} value of the failure, such as
+ * {@code invalid_signature} for a response whose signature does not verify or
+ * {@code invalid_assertion} for an expired assertion.
+ * Failures that carry no SAML error code are tagged {@code error}. The logout timers carry an
+ * additional {@code operation} tag, {@code resolve} or {@code validate}. A timer's count doubles as
+ * the counter of its stage and outcome.
+ *
+ * <p>Subtracting the nested stages from {@value #RESPONSE} leaves the XML parsing and signature
+ * verification, which OpenSAML performs inside the provider and which cannot be timed on their own.
+ *
+ * <p>Timers are registered on first use and kept by name and tags, so recording a stage is a map
+ * lookup rather than a meter builder and a registry lookup per request.
+ *
+ * @author Wei-Ming Wu
+ * @since 26.7.3.1
+ */
+public class SamlLoginMetrics {
+
+  public static final String AUTHN_REQUEST = "keycloak.plugin.saml.authn.request";
+  public static final String RESPONSE = "keycloak.plugin.saml.response";
+  public static final String ASSERTION_VALIDATION = "keycloak.plugin.saml.assertion.validation";
+  public static final String PRINCIPAL_CONVERSION = "keycloak.plugin.saml.principal.conversion";
+  public static final String LOGOUT_REQUEST = "keycloak.plugin.saml.logout.request";
+  public static final String LOGOUT_RESPONSE = "keycloak.plugin.saml.logout.response";
+  public static final String METADATA = "keycloak.plugin.saml.metadata";
+
+  static final String SUCCESS = "success";
+  static final String ERROR = "error";
+  static final String UNKNOWN = "unknown";
+
+  private final MeterRegistry registry;
+  private final ConcurrentMap<TimerKey, Timer> timers = new ConcurrentHashMap<>();
+
+  private record TimerKey(String name, String registrationId, String outcome, String operation) {}
+
+  /**
+   * Creates the decorators, recording into the given registry.
+   *
+   * @param registry the registry the timers are registered with
+   */
+  public SamlLoginMetrics(MeterRegistry registry) {
+    this.registry = registry;
+  }
+
+  /**
+   * Times AuthnRequest creation. Requests the resolver does not handle return null and are not
+   * recorded.
+   *
+   * @param delegate the resolver doing the work
+   * @return the timed resolver
+   */
+  public Saml2AuthenticationRequestResolver authenticationRequestResolver(
+      Saml2AuthenticationRequestResolver delegate) {
+    return new Saml2AuthenticationRequestResolver() {
+      @Override
+      public <T extends AbstractSaml2AuthenticationRequest> T resolve(
+          HttpServletRequest request) {
+        long start = System.nanoTime();
+        T authnRequest;
+        try {
+          authnRequest = delegate.resolve(request);
+        } catch (RuntimeException e) {
+          record(AUTHN_REQUEST, start, UNKNOWN, outcome(e));
+          throw e;
+        }
+        if (authnRequest != null) {
+          record(AUTHN_REQUEST, start, authnRequest.getRelyingPartyRegistrationId(), SUCCESS);
+        }
+        return authnRequest;
+      }
+    };
+  }
+
+  /**
+   * Times the assertion consumer service step as a whole.
+   *
+   * @param delegate the provider authenticating {@link Saml2AuthenticationToken}s
+   * @return the timed provider
+   */
+  public AuthenticationProvider authenticationProvider(AuthenticationProvider delegate) {
+    return new AuthenticationProvider() {
+      @Override
+      public Authentication authenticate(Authentication authentication) {
+        String registrationId = authentication instanceof Saml2AuthenticationToken token
+            ? token.getRelyingPartyRegistration().getRegistrationId()
+            : UNKNOWN;
+        long start = System.nanoTime();
+        try {
+          Authentication result = delegate.authenticate(authentication);
+          record(RESPONSE, start, registrationId, SUCCESS);
+          return result;
+        } catch (RuntimeException e) {
+          record(RESPONSE, start, registrationId, outcome(e));
+          throw e;
+        }
+      }
+
+      @Override
+      public boolean supports(Class<?> authentication) {
+        return delegate.supports(authentication);
+      }
+    };
+  }
+
+  /**
+   * Times assertion validation.
+   *
+   * @param delegate the validator doing the work
+   * @return the timed validator
+   */
+  public Converter<AssertionToken, Saml2ResponseValidatorResult> assertionValidator(
+      Converter<AssertionToken, Saml2ResponseValidatorResult> delegate) {
+    return (assertionToken) -> {
+      String registrationId = registrationId(assertionToken.getToken());
+      long start = System.nanoTime();
+      try {
+        Saml2ResponseValidatorResult result = delegate.convert(assertionToken);
+        record(ASSERTION_VALIDATION, start, registrationId,
+            result == null || !result.hasErrors() ? SUCCESS
+                : result.getErrors().iterator().next().getErrorCode());
+        return result;
+      } catch (RuntimeException e) {
+        record(ASSERTION_VALIDATION, start, registrationId, outcome(e));
+        throw e;
+      }
+    };
+  }
+
+  /**
+   * Times principal conversion.
+   *
+   * @param delegate the converter doing the work
+   * @return the timed converter
+   */
+  public Converter<ResponseToken, AbstractAuthenticationToken> responseAuthenticationConverter(
+      Converter<ResponseToken, ? extends AbstractAuthenticationToken> delegate) {
+    return (responseToken) -> {
+      String registrationId = registrationId(responseToken.getToken());
+      long start = System.nanoTime();
+      try {
+        AbstractAuthenticationToken result = delegate.convert(responseToken);
+        record(PRINCIPAL_CONVERSION, start, registrationId, SUCCESS);
+        return result;
+      } catch (RuntimeException e) {
+        record(PRINCIPAL_CONVERSION, start, registrationId, outcome(e));
+        throw e;
+      }
+    };
+  }
+
+  /**
+   * Times the creation of LogoutRequests sent to Keycloak.
+   *
+   * @param delegate the resolver doing the work
+   * @return the timed resolver
+   */
+  public Saml2LogoutRequestResolver logoutRequestResolver(Saml2LogoutRequestResolver delegate) {
+    return (request, authentication) -> {
+      long start = System.nanoTime();
+      try {
+        Saml2LogoutRequest logoutRequest = delegate.resolve(request, authentication);
+        if (logoutRequest != null) {
+          record(LOGOUT_REQUEST, start, logoutRequest.getRelyingPartyRegistrationId(), SUCCESS,
+              "resolve");
+        }
+        return logoutRequest;
+      } catch (RuntimeException e) {
+        record(LOGOUT_REQUEST, start, registrationId(authentication), outcome(e), "resolve");
+        throw e;
+      }
+    };
+  }
+
+  /**
+   * Times the validation of LogoutRequests sent by Keycloak.
+   *
+   * @param delegate the validator doing the work
+   * @return the timed validator
+   */
+  public Saml2LogoutRequestValidator logoutRequestValidator(Saml2LogoutRequestValidator delegate) {
+    return (parameters) -> {
+      String registrationId = registrationId(parameters.getRelyingPartyRegistration());
+      long start = System.nanoTime();
+      try {
+        Saml2LogoutValidatorResult result = delegate.validate(parameters);
+        record(LOGOUT_REQUEST, start, registrationId, outcome(result), "validate");
+        return result;
+      } catch (RuntimeException e) {
+        record(LOGOUT_REQUEST, start, registrationId, outcome(e), "validate");
+        throw e;
+      }
+    };
+  }
+
+  /**
+   * Times the creation of LogoutResponses sent to Keycloak.
+   *
+   * @param delegate the resolver doing the work
+   * @return the timed resolver
+   */
+  public Saml2LogoutResponseResolver logoutResponseResolver(Saml2LogoutResponseResolver delegate) {
+    return (request, authentication) -> {
+      String registrationId = registrationId(authentication);
+      long start = System.nanoTime();
+      try {
+        Saml2LogoutResponse logoutResponse = delegate.resolve(request, authentication);
+        if (logoutResponse != null) {
+          record(LOGOUT_RESPONSE, start, registrationId, SUCCESS, "resolve");
+        }
+        return logoutResponse;
+      } catch (RuntimeException e) {
+        record(LOGOUT_RESPONSE, start, registrationId, outcome(e), "resolve");
+        throw e;
+      }
+    };
+  }
+
+  /**
+   * Times the validation of LogoutResponses sent by Keycloak.
+   *
+   * @param delegate the validator doing the work
+   * @return the timed validator
+   */
+  public Saml2LogoutResponseValidator logoutResponseValidator(
+      Saml2LogoutResponseValidator delegate) {
+    return (parameters) -> {
+      String registrationId = registrationId(parameters.getRelyingPartyRegistration());
+      long start = System.nanoTime();
+      try {
+        Saml2LogoutValidatorResult result = delegate.validate(parameters);
+        record(LOGOUT_RESPONSE, start, registrationId, outcome(result), "validate");
+        return result;
+      } catch (RuntimeException e) {
+        record(LOGOUT_RESPONSE, start, registrationId, outcome(e), "validate");
+        throw e;
+      }
+    };
+  }
+
+  /**
+   * Times metadata generation.
+   *
+   * @param delegate the resolver doing the work
+   * @return the timed resolver
+   */
+  public Saml2MetadataResolver metadataResolver(Saml2MetadataResolver delegate) {
+    return new Saml2MetadataResolver() {
+      @Override
+      public String resolve(RelyingPartyRegistration registration) {
+        String registrationId = registrationId(registration);
+        long start = System.nanoTime();
+        try {
+          String metadata = delegate.resolve(registration);
+          record(METADATA, start, registrationId, SUCCESS);
+          return metadata;
+        } catch (RuntimeException e) {
+          record(METADATA, start, registrationId, outcome(e));
+          throw e;
+        }
+      }
+
+      @Override
+      public String resolve(Iterable<RelyingPartyRegistration> registrations) {
+        long start = System.nanoTime();
+        try {
+          String metadata = delegate.resolve(registrations);
+          record(METADATA, start, "all", SUCCESS);
+          return metadata;
+        } catch (RuntimeException e) {
+          record(METADATA, start, "all", outcome(e));
+          throw e;
+        }
+      }
+    };
+  }
+
+  private void record(String name, long startNanos, String registrationId, String outcome) {
+    record(name, startNanos, registrationId, outcome, null);
+  }
+
+  private void record(String name, long startNanos, String registrationId, String outcome,
+      String operation) {
+    long elapsed = System.nanoTime() - startNanos;
+    TimerKey key =
+        new TimerKey(name, registrationId == null ? UNKNOWN : registrationId, outcome, operation);
+    Timer timer = timers.get(key);
+    if (timer == null) timer = timers.computeIfAbsent(key, this::register);
+    timer.record(elapsed, TimeUnit.NANOSECONDS);
+  }
+
+  private Timer register(TimerKey key) {
+    Timer.Builder builder = Timer.builder(key.name()).tag("registration", key.registrationId())
+        .tag("outcome", key.outcome());
+    if (key.operation() != null) builder.tag("operation", key.operation());
+    return builder.register(registry);
+  }
+
+  static String outcome(RuntimeException e) {
+    if (e instanceof Saml2AuthenticationException saml2) {
+      Saml2Error error = saml2.getSaml2Error();
+      if (error != null && error.getErrorCode() != null) return error.getErrorCode();
+    }
+    return ERROR;
+  }
+
+  private static String outcome(Saml2LogoutValidatorResult result) {
+    return result == null || !result.hasErrors() ? SUCCESS
+        : result.getErrors().iterator().next().getErrorCode();
+  }
+
+  private static String registrationId(Saml2AuthenticationToken token) {
+    return token == null ? UNKNOWN : registrationId(token.getRelyingPartyRegistration());
+  }
+
+  private static String registrationId(RelyingPartyRegistration registration) {
+    return registration == null ? UNKNOWN : registration.getRegistrationId();
+  }
+
+  private static String registrationId(Authentication authentication) {
+    return authentication != null
+        && authentication.getPrincipal() instanceof Saml2AuthenticatedPrincipal principal
+            ? principal.getRelyingPartyRegistrationId()
+            : UNKNOWN;
+  }
+
+}
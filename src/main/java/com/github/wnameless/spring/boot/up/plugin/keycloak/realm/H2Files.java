@@ -0,0 +1,55 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.realm;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Locates the files of a file-based H2 database from its JDBC URL.
+ *
+ * <p>{@link #DATABASE_SUFFIX} is public for the bootstrap, which writes database snapshots.
+ *
+ * @author Wei-Ming Wu
+ * @since 26.7.3.1
+ */
+public final class H2Files {
+
+  public static final String DATABASE_SUFFIX = ".mv.db";
+
+  private H2Files() {}
+
+  /**
+   * Derives the database path, without file suffix, from an H2 JDBC URL.
+   *
+   * @param jdbcUrl the database URL, may be null
+   * @return the absolute database path, or null if the URL is not a file-based H2 database
+   */
+  static Path databasePath(String jdbcUrl) {
+    if (jdbcUrl == null || !jdbcUrl.startsWith("jdbc:h2:")) return null;
+    String database = jdbcUrl.substring("jdbc:h2:".length());
+    int settings = database.indexOf(';');
+    if (settings >= 0) database = database.substring(0, settings);
+    if (database.startsWith("file:")) {
+      database = database.substring("file:".length());
+    } else if (database.matches("^[a-z]+:.*") && !database.matches("^[A-Za-z]:[/\\\\].*")) {
+      // mem:, tcp:, ssl: and the like; a Windows drive letter is still a file
+      return null;
+    }
+    if (database.isEmpty()) return null;
+    if (database.startsWith("~")) {
+      database = System.getProperty("user.home") + database.substring(1);
+    }
+    return Paths.get(database).toAbsolutePath().normalize();
+  }
+
+  /**
+   * Appends a suffix to a database path.
+   *
+   * @param database the database path, may be null
+   * @param suffix the file suffix
+   * @return the suffixed path, or null if the database path is null
+   */
+  static Path withSuffix(Path database, String suffix) {
+    return database == null ? null : database.resolveSibling(database.getFileName() + suffix);
+  }
+
+}
@@ -0,0 +1,175 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.realm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.Ordered;
+import org.springframework.core.PriorityOrdered;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+
+/**
+ * Seeds an empty file-based H2 Keycloak database from a prebuilt snapshot before anything opens
+ * it.
+ *
+ * <p>A snapshot is an H2 {@code .mv.db} file in which Keycloak has already run its Liquibase
+ * migrations and imported the realm; {@code KeycloakRealmBootstrap -Dsnapshot=...} produces one.
+ * When {@code keycloak.plugin.databaseSnapshot} points at a snapshot and the database named by
+ * {@code keycloak.connections-jpa.url} does not exist yet, the snapshot is copied into its place.
+ * Keycloak then starts on a finished database instead of building one from scratch.
+ *
+ * <p>The snapshot's {@link RealmFingerprint} is checked first against the realm files the
+ * application is configured with - {@code keycloak-realm.json} and the three
+ * {@code keycloak.plugin.*Pem} locations of {@code keycloak.plugin.realmName}. A snapshot built
+ * from other files holds a realm with other keys, with which every login would fail, so it is not
+ * used: a warning says to rebuild it, and the embedded server builds the database itself. A
+ * snapshot without a fingerprint is used as is.
+ *
+ * <p>The copy happens in a {@link BeanFactoryPostProcessor}, which runs before any bean - the
+ * embedded Keycloak server included - is created. An existing database is never touched, and the
+ * copy is written aside and renamed into place, so nodes starting side by side on a shared
+ * directory never see a partial file.
+ *
+ * @author Wei-Ming Wu
+ * @since 26.7.3.1
+ */
+public class KeycloakDatabaseSnapshot
+    implements BeanFactoryPostProcessor, EnvironmentAware, PriorityOrdered {
+
+  private static final Logger LOG = LoggerFactory.getLogger(KeycloakDatabaseSnapshot.class);
+
+  public static final String SNAPSHOT_PROPERTY = "keycloak.plugin.databaseSnapshot";
+  public static final String DATABASE_URL_PROPERTY = "keycloak.connections-jpa.url";
+
+  static final String REALM_JSON = "keycloak-realm.json";
+  static final String REGISTRATION_ID_PLACEHOLDER = "{registrationId}";
+
+  private static final ResourceLoader RESOURCE_LOADER = new DefaultResourceLoader();
+
+  private Environment environment;
+
+  @Override
+  public void setEnvironment(Environment environment) {
+    this.environment = environment;
+  }
+
+  @Override
+  public int getOrder() {
+    return Ordered.HIGHEST_PRECEDENCE;
+  }
+
+  @Override
+  public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory)
+      throws BeansException {
+    String snapshot = environment.getProperty(SNAPSHOT_PROPERTY, "");
+    if (snapshot.isBlank()) return;
+    install(snapshot.trim(), environment.getProperty(DATABASE_URL_PROPERTY),
+        realmFiles(environment));
+  }
+
+  /**
+   * Gets the realm files the plugin configuration points at, in the order
+   * {@code KeycloakRealmBootstrap} fingerprints them.
+   *
+   * @param environment the application environment
+   * @return the realm JSON, Keycloak certificate, application certificate and application private
+   *         key locations
+   */
+  static List<String> realmFiles(Environment environment) {
+    String realmName = environment.getProperty("keycloak.plugin.realmName", "webmvc");
+    return Stream.of(REALM_JSON,
+        environment.getProperty("keycloak.plugin.serverCertPem", "keycloak_certificate.pem"),
+        environment.getProperty("keycloak.plugin.appCertPem", "app_certificate.pem"),
+        environment.getProperty("keycloak.plugin.appPrivateKeyPem", "app_private_key.pem"))
+        .map((location) -> location.replace(REGISTRATION_ID_PLACEHOLDER, realmName)).toList();
+  }
+
+  /**
+   * Copies a snapshot into the place of a database that does not exist yet, unless it was built
+   * from other realm files.
+   *
+   * @param snapshot the location of the snapshot {@code .mv.db} file, a bare classpath name or a
+   *        {@code classpath:}/{@code file:} location
+   * @param jdbcUrl the Keycloak database URL
+   * @param realmFiles the locations of the realm files the application is configured with
+   * @return whether the snapshot was copied
+   * @throws IllegalStateException if the database URL is not a file-based H2 database, or the
+   *         snapshot cannot be found or copied
+   */
+  static boolean install(String snapshot, String jdbcUrl, List<String> realmFiles) {
+    Path database = H2Files.databasePath(jdbcUrl);
+    if (database == null) {
+      throw new IllegalStateException(SNAPSHOT_PROPERTY + " needs a file-based H2 database, but "
+          + DATABASE_URL_PROPERTY + " is '" + jdbcUrl + "'. Use e.g. "
+          + DATABASE_URL_PROPERTY + "=jdbc:h2:file:./keycloak-db, or remove " + SNAPSHOT_PROPERTY
+          + ".");
+    }
+    Path target = H2Files.withSuffix(database, H2Files.DATABASE_SUFFIX);
+    if (Files.exists(target)) {
+      LOG.debug("Keycloak database " + target + " exists; snapshot " + snapshot + " not used");
+      return false;
+    }
+
+    Resource resource = RESOURCE_LOADER.getResource(snapshot);
+    if (!resource.exists()) {
+      throw new IllegalStateException("Keycloak database snapshot not found: '" + snapshot
+          + "'. Generate one with KeycloakRealmBootstrap -Dsnapshot=<path>, or remove "
+          + SNAPSHOT_PROPERTY + ".");
+    }
+    try {
+      String fingerprint = RealmFingerprint.read(fingerprintResource(snapshot));
+      if (fingerprint == null) {
+        LOG.debug("Snapshot " + snapshot + " has no realm fingerprint; not checked");
+      } else if (!fingerprint.equals(RealmFingerprint.fingerprint(realmFiles))) {
+        LOG.warn("Keycloak database snapshot " + snapshot + " was built from other realm files"
+            + " than " + realmFiles + "; not used, so the realm is imported from scratch."
+            + " Rebuild it with KeycloakRealmBootstrap -Dsnapshot=<path>.");
+        return false;
+      }
+      Files.createDirectories(target.getParent());
+      copy(resource, target);
+    } catch (FileAlreadyExistsException e) {
+      LOG.info("Keycloak database " + target + " was created concurrently; snapshot not used");
+      return false;
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          "Cannot copy Keycloak database snapshot '" + snapshot + "' to " + target, e);
+    }
+    LOG.info("Seeded Keycloak database " + target + " from snapshot " + snapshot);
+    return true;
+  }
+
+  private static Resource fingerprintResource(String snapshot) {
+    String name = snapshot.endsWith(H2Files.DATABASE_SUFFIX)
+        ? snapshot.substring(0, snapshot.length() - H2Files.DATABASE_SUFFIX.length())
+        : snapshot;
+    return RESOURCE_LOADER.getResource(name + RealmFingerprint.FILE_SUFFIX);
+  }
+
+  private static void copy(Resource resource, Path target) throws IOException {
+    Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+    try {
+      try (InputStream in = resource.getInputStream()) {
+        Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+      }
+      // A rename within the directory, which refuses a database that appeared meanwhile
+      Files.move(temp, target);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+}
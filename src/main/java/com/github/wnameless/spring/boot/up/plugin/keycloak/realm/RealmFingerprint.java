@@ -0,0 +1,104 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.realm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+
+/**
+ * A SHA-256 fingerprint of the files a realm is imported from - the realm JSON and its PEM set.
+ *
+ * <p>{@code KeycloakRealmBootstrap -Dsnapshot=...} stores the fingerprint of the realm files a
+ * database snapshot was built from in {@code <snapshot>}{@value #FILE_SUFFIX}.
+ * {@link KeycloakDatabaseSnapshot} compares it with the fingerprint of the application's current
+ * realm files before seeding a database: a snapshot built from other files holds a realm with other
+ * keys, so it is refused and the embedded server imports the realm from scratch instead.
+ *
+ * @author Wei-Ming Wu
+ * @since 26.7.3.1
+ */
+public final class RealmFingerprint {
+
+  public static final String FILE_SUFFIX = ".realm-fingerprint";
+
+  private static final ResourceLoader RESOURCE_LOADER = new DefaultResourceLoader();
+
+  private RealmFingerprint() {}
+
+  /**
+   * Stores a fingerprint. It is written aside and moved into place, so a crash never leaves a
+   * truncated fingerprint behind.
+   *
+   * @param file the fingerprint file
+   * @param fingerprint the fingerprint
+   * @throws IOException if the file cannot be written
+   */
+  public static void write(Path file, String fingerprint) throws IOException {
+    Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+    Files.writeString(temp, fingerprint, StandardCharsets.US_ASCII);
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Reads a stored fingerprint.
+   *
+   * @param resource the fingerprint file
+   * @return the fingerprint, or null if there is none
+   * @throws IOException if the file exists but cannot be read
+   */
+  public static String read(Resource resource) throws IOException {
+    if (!resource.exists()) return null;
+    try (InputStream in = resource.getInputStream()) {
+      return new String(in.readAllBytes(), StandardCharsets.US_ASCII).trim();
+    }
+  }
+
+  /**
+   * Computes the SHA-256 fingerprint of the content behind the given locations, in order. A
+   * missing location is part of the fingerprint as such, so creating it later changes the
+   * fingerprint. Only the content counts, so the same files give the same fingerprint whether they
+   * are reached through the classpath or the filesystem.
+   *
+   * @param locations the locations to fingerprint, each a bare classpath name or a
+   *        {@code classpath:}/{@code file:} location
+   * @return the hex encoded SHA-256 fingerprint
+   * @throws IllegalStateException if a location exists but cannot be read
+   */
+  public static String fingerprint(List<String> locations) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    for (String location : locations) {
+      Resource resource = RESOURCE_LOADER.getResource(location);
+      if (!resource.exists()) {
+        digest.update((byte) 0);
+        continue;
+      }
+      digest.update((byte) 1);
+      try (InputStream in = new DigestInputStream(resource.getInputStream(), digest)) {
+        long length = in.transferTo(OutputStream.nullOutputStream());
+        // The length closes each entry, so content cannot shift from one file into the next
+        digest.update(ByteBuffer.allocate(Long.BYTES).putLong(length).flip());
+      } catch (IOException e) {
+        throw new IllegalStateException("Cannot read realm file '" + location + "'", e);
+      }
+    }
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+}
@@ -0,0 +1,425 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.realm;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.keycloak.credential.CredentialModel;
+import org.keycloak.credential.hash.PasswordHashProvider;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.PasswordPolicy;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.credential.PasswordCredentialModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.representations.idm.CredentialRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.keycloak.services.resources.KeycloakApplication;
+import org.keycloak.util.JsonSerialization;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Imports users into a realm of the embedded Keycloak in bulk, in-process, for seeding load tests
+ * and similar large data sets.
+ *
+ * <p>Creating users through the admin REST API costs an HTTP round trip, a transaction and a
+ * password hash per user; seeding 100,000 of them takes hours. This importer streams the users from
+ * a file and writes them straight to Keycloak's model, {@code batchSize} users per transaction, on
+ * {@code parallelism} worker threads. Reading stays ahead of the workers by at most two batches per
+ * worker, so a file of any size is imported in constant memory.
+ *
+ * <p>Password hashing, which would otherwise dominate, is done once per distinct password: the
+ * credential hashed with the realm's password policy is stored for every user with that password.
+ * Those users then share a salt, which is fine for test users and not meant for real accounts.
+ * Credentials that come already hashed, as Keycloak exports them with {@code secretData} and
+ * {@code credentialData}, are stored as they are, without hashing at all.
+ *
+ * <p>Two formats are read:
+ * <ul>
+ * <li>NDJSON ({@code .ndjson}, {@code .jsonl}) - one Keycloak {@link UserRepresentation} per line,
+ * as in a realm export: {@code username}, {@code email}, {@code emailVerified},
+ * {@code firstName}, {@code lastName}, {@code enabled} and {@code credentials}</li>
+ * <li>CSV ({@code .csv}) - a header line naming the columns, out of {@code username},
+ * {@code password}, {@code email}, {@code firstName}, {@code lastName} and {@code enabled}, then
+ * one user per line; values cannot contain commas</li>
+ * </ul>
+ *
+ * <p>Users whose username already exists in the realm are skipped, so an interrupted import can be
+ * run again. A batch that fails is rolled back and written again one user per transaction: a
+ * username that two batches in flight both created, in any letter case, then fails only in the
+ * batch that committed second and is skipped as existing on the retry. Only the users that fail on
+ * their own are counted as failed. Lines that cannot be parsed are logged, counted and skipped;
+ * batches already handed to the workers are always finished before the import returns or throws.
+ *
+ * @author Wei-Ming Wu
+ * @since 26.7.3.1
+ */
+public class RealmUserImporter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RealmUserImporter.class);
+
+  public static final int DEFAULT_BATCH_SIZE = 500;
+
+  static final int CREDENTIAL_CACHE_LIMIT = 1024;
+
+  private final KeycloakSessionFactory sessionFactory;
+  private final String realmName;
+  private final int batchSize;
+  private final int parallelism;
+  private final Map<String, PasswordCredentialModel> hashedPasswords = new ConcurrentHashMap<>();
+
+  /**
+   * The outcome of an import.
+   *
+   * @param imported the users created
+   * @param skipped the users whose username already existed
+   * @param failed the users that could not be written
+   * @param malformed the lines that could not be parsed
+   * @param millis how long the import took
+   */
+  public record Result(long imported, long skipped, long failed, long malformed, long millis) {}
+
+  /**
+   * The formats an import reads.
+   */
+  public enum Format {
+    NDJSON, CSV;
+
+    /**
+     * Tells the format of a file by its extension.
+     *
+     * @param file the file
+     * @return the format
+     * @throws IllegalStateException if the extension is none of {@code .ndjson}, {@code .jsonl} or
+     *         {@code .csv}
+     */
+    public static Format of(Path file) {
+      String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+      if (name.endsWith(".ndjson") || name.endsWith(".jsonl")) return NDJSON;
+      if (name.endsWith(".csv")) return CSV;
+      throw new IllegalStateException("Cannot tell the format of " + file
+          + "; name it .ndjson, .jsonl or .csv, or pass the format explicitly.");
+    }
+  }
+
+  /**
+   * Creates an importer for a realm of the running embedded Keycloak, with batches of
+   * {@value #DEFAULT_BATCH_SIZE} users and one worker per processor.
+   *
+   * @param realmName the realm the users are imported into
+   * @throws IllegalStateException if the embedded Keycloak is not running
+   */
+  public RealmUserImporter(String realmName) {
+    this(runningSessionFactory(), realmName, DEFAULT_BATCH_SIZE,
+        Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates an importer.
+   *
+   * @param sessionFactory the Keycloak session factory
+   * @param realmName the realm the users are imported into
+   * @param batchSize the users written per transaction
+   * @param parallelism the worker threads writing batches
+   * @throws IllegalStateException if the batch size or the parallelism is not positive
+   */
+  public RealmUserImporter(KeycloakSessionFactory sessionFactory, String realmName, int batchSize,
+      int parallelism) {
+    if (batchSize <= 0 || parallelism <= 0) {
+      throw new IllegalStateException("The batch size and the parallelism must be positive, but"
+          + " are " + batchSize + " and " + parallelism);
+    }
+    this.sessionFactory = sessionFactory;
+    this.realmName = realmName;
+    this.batchSize = batchSize;
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Imports the users of a file, telling its format by its extension.
+   *
+   * @param file the NDJSON or CSV file
+   * @return the outcome
+   * @throws IOException if the file cannot be read
+   * @throws IllegalStateException if the format is unknown, the CSV header is invalid or the realm
+   *         does not exist
+   */
+  public Result importUsers(Path file) throws IOException {
+    try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      return importUsers(reader, Format.of(file));
+    }
+  }
+
+  /**
+   * Imports the users read from a reader.
+   *
+   * @param reader the users, in the given format
+   * @param format the format
+   * @return the outcome
+   * @throws IOException if the reader fails
+   * @throws IllegalStateException if the CSV header is invalid or the realm does not exist
+   */
+  public Result importUsers(Reader reader, Format format) throws IOException {
+    Boolean realmExists = KeycloakModelUtils.runJobInTransactionWithResult(sessionFactory,
+        (session) -> session.realms().getRealmByName(realmName) != null);
+    if (!realmExists) {
+      throw new IllegalStateException("Realm '" + realmName + "' does not exist; import the realm"
+          + " before its users.");
+    }
+
+    long start = System.nanoTime();
+    AtomicLong imported = new AtomicLong();
+    AtomicLong skipped = new AtomicLong();
+    AtomicLong failed = new AtomicLong();
+    long malformed = 0;
+    ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+    // Bounds the batches read but not yet written
+    Semaphore pending = new Semaphore(parallelism * 2);
+    try {
+      BufferedReader lines = reader instanceof BufferedReader buffered ? buffered
+          : new BufferedReader(reader);
+      String[] header = format == Format.CSV ? readHeader(lines) : null;
+      List<UserRepresentation> batch = new ArrayList<>(batchSize);
+      String line;
+      int lineNumber = header == null ? 0 : 1;
+      while ((line = lines.readLine()) != null) {
+        lineNumber++;
+        if (line.isBlank()) continue;
+        try {
+          batch.add(format == Format.CSV ? parseCsv(header, line, lineNumber)
+              : parseJson(line, lineNumber));
+        } catch (IllegalStateException e) {
+          LOG.warn("Skipping a malformed line: " + e.getMessage());
+          malformed++;
+          continue;
+        }
+        if (batch.size() == batchSize) {
+          submit(workers, pending, batch, imported, skipped, failed);
+          batch = new ArrayList<>(batchSize);
+        }
+      }
+      if (!batch.isEmpty()) submit(workers, pending, batch, imported, skipped, failed);
+    } catch (InterruptedException e) {
+      workers.shutdownNow();
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("User import interrupted", e);
+    } finally {
+      // Batches already handed over are finished even when reading stopped early
+      awaitWorkers(workers);
+    }
+
+    Result result = new Result(imported.get(), skipped.get(), failed.get(), malformed,
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    LOG.info("Imported " + result.imported() + " user(s) into realm " + realmName + " in "
+        + result.millis() + " ms; " + result.skipped() + " skipped as existing, " + result.failed()
+        + " failed, " + result.malformed() + " malformed line(s)");
+    return result;
+  }
+
+  private static void awaitWorkers(ExecutorService workers) {
+    workers.shutdown();
+    try {
+      if (!workers.awaitTermination(1, TimeUnit.DAYS)) {
+        throw new IllegalStateException("User import did not finish");
+      }
+    } catch (InterruptedException e) {
+      workers.shutdownNow();
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("User import interrupted", e);
+    }
+  }
+
+  private void submit(ExecutorService workers, Semaphore pending, List<UserRepresentation> batch,
+      AtomicLong imported, AtomicLong skipped, AtomicLong failed) throws InterruptedException {
+    pending.acquire();
+    workers.execute(() -> {
+      try {
+        long created = KeycloakModelUtils.runJobInTransactionWithResult(sessionFactory,
+            (session) -> writeBatch(session, batch));
+        imported.addAndGet(created);
+        skipped.addAndGet(batch.size() - created);
+      } catch (RuntimeException e) {
+        LOG.debug("A batch of " + batch.size() + " user(s), starting with '"
+            + batch.get(0).getUsername() + "', failed; writing it user by user: "
+            + e.getMessage());
+        writeOneByOne(batch, imported, skipped, failed);
+      } finally {
+        pending.release();
+      }
+    });
+  }
+
+  /**
+   * Writes the users of a failed batch in a transaction each, so that only the users that fail on
+   * their own are lost, and a username another batch committed meanwhile is skipped as existing.
+   */
+  private void writeOneByOne(List<UserRepresentation> batch, AtomicLong imported,
+      AtomicLong skipped, AtomicLong failed) {
+    for (UserRepresentation rep : batch) {
+      try {
+        long created = KeycloakModelUtils.runJobInTransactionWithResult(sessionFactory,
+            (session) -> writeBatch(session, List.of(rep)));
+        (created == 1 ? imported : skipped).incrementAndGet();
+      } catch (RuntimeException e) {
+        LOG.error("User '" + rep.getUsername() + "' failed: " + e.getMessage());
+        failed.incrementAndGet();
+      }
+    }
+  }
+
+  private long writeBatch(KeycloakSession session, List<UserRepresentation> batch) {
+    RealmModel realm = session.realms().getRealmByName(realmName);
+    long created = 0;
+    for (UserRepresentation rep : batch) {
+      if (session.users().getUserByUsername(realm, rep.getUsername()) != null) continue;
+
+      UserModel user = session.users().addUser(realm, rep.getUsername());
+      user.setEnabled(rep.isEnabled() == null || rep.isEnabled());
+      if (rep.getEmail() != null) user.setEmail(rep.getEmail());
+      if (rep.isEmailVerified() != null) user.setEmailVerified(rep.isEmailVerified());
+      if (rep.getFirstName() != null) user.setFirstName(rep.getFirstName());
+      if (rep.getLastName() != null) user.setLastName(rep.getLastName());
+      if (rep.getCredentials() != null) {
+        for (CredentialRepresentation credential : rep.getCredentials()) {
+          user.credentialManager().createStoredCredential(storedCredential(session, realm,
+              credential));
+        }
+      }
+      created++;
+    }
+    return created;
+  }
+
+  private CredentialModel storedCredential(KeycloakSession session, RealmModel realm,
+      CredentialRepresentation credential) {
+    CredentialModel model;
+    if (credential.getSecretData() != null) {
+      model = new CredentialModel();
+      model.setType(credential.getType() == null ? PasswordCredentialModel.TYPE
+          : credential.getType());
+      model.setSecretData(credential.getSecretData());
+      model.setCredentialData(credential.getCredentialData());
+      model.setUserLabel(credential.getUserLabel());
+    } else if (credential.getValue() != null) {
+      PasswordCredentialModel hashed = hashedPassword(session, realm, credential.getValue());
+      // A fresh model per user, since storing one assigns it an ID
+      model = PasswordCredentialModel.createFromValues(hashed.getPasswordCredentialData(),
+          hashed.getPasswordSecretData());
+    } else {
+      throw new IllegalStateException(
+          "A credential needs either a value or secretData and credentialData");
+    }
+    model.setCreatedDate(System.currentTimeMillis());
+    return model;
+  }
+
+  private PasswordCredentialModel hashedPassword(KeycloakSession session, RealmModel realm,
+      String password) {
+    PasswordCredentialModel hashed = hashedPasswords.get(password);
+    if (hashed != null) return hashed;
+
+    PasswordPolicy policy = realm.getPasswordPolicy();
+    String algorithm = policy.getHashAlgorithm();
+    PasswordHashProvider hashProvider = algorithm == null
+        ? session.getProvider(PasswordHashProvider.class)
+        : session.getProvider(PasswordHashProvider.class, algorithm);
+    if (hashProvider == null) {
+      throw new IllegalStateException("No password hash provider for algorithm " + algorithm);
+    }
+    hashed = hashProvider.encodedCredential(password, policy.getHashIterations());
+    if (hashedPasswords.size() >= CREDENTIAL_CACHE_LIMIT) hashedPasswords.clear();
+    hashedPasswords.put(password, hashed);
+    return hashed;
+  }
+
+  private static String[] readHeader(BufferedReader lines) throws IOException {
+    String header = lines.readLine();
+    if (header == null) return new String[0];
+    String[] columns = header.trim().split(",", -1);
+    boolean hasUsername = false;
+    for (int i = 0; i < columns.length; i++) {
+      columns[i] = columns[i].trim();
+      if (!List.of("username", "password", "email", "firstName", "lastName", "enabled")
+          .contains(columns[i])) {
+        throw new IllegalStateException("Unknown CSV column '" + columns[i] + "'. Expected"
+            + " username, password, email, firstName, lastName or enabled.");
+      }
+      hasUsername |= columns[i].equals("username");
+    }
+    if (!hasUsername) {
+      throw new IllegalStateException("The CSV header '" + header + "' has no username column");
+    }
+    return columns;
+  }
+
+  private static UserRepresentation parseCsv(String[] header, String line, int lineNumber) {
+    String[] values = line.split(",", -1);
+    if (values.length != header.length) {
+      throw new IllegalStateException("CSV line " + lineNumber + " has " + values.length
+          + " value(s) but the header has " + header.length + " column(s)");
+    }
+    UserRepresentation rep = new UserRepresentation();
+    for (int i = 0; i < header.length; i++) {
+      String value = values[i].trim();
+      if (value.isEmpty()) continue;
+      switch (header[i]) {
+        case "username" -> rep.setUsername(value);
+        case "email" -> rep.setEmail(value);
+        case "firstName" -> rep.setFirstName(value);
+        case "lastName" -> rep.setLastName(value);
+        case "enabled" -> rep.setEnabled(Boolean.parseBoolean(value));
+        case "password" -> {
+          CredentialRepresentation credential = new CredentialRepresentation();
+          credential.setType(CredentialRepresentation.PASSWORD);
+          credential.setValue(value);
+          rep.setCredentials(List.of(credential));
+        }
+        default -> throw new IllegalStateException("Unknown CSV column " + header[i]);
+      }
+    }
+    return requireUsername(rep, lineNumber);
+  }
+
+  private static UserRepresentation parseJson(String line, int lineNumber) {
+    try {
+      return requireUsername(JsonSerialization.readValue(line, UserRepresentation.class),
+          lineNumber);
+    } catch (IOException e) {
+      throw new IllegalStateException("NDJSON line " + lineNumber + " is not a user: "
+          + e.getMessage(), e);
+    }
+  }
+
+  private static UserRepresentation requireUsername(UserRepresentation rep, int lineNumber) {
+    if (rep.getUsername() == null || rep.getUsername().isBlank()) {
+      throw new IllegalStateException("Line " + lineNumber + " has no username");
+    }
+    // Keycloak stores usernames in lower case
+    rep.setUsername(rep.getUsername().trim().toLowerCase(Locale.ROOT));
+    return rep;
+  }
+
+  private static KeycloakSessionFactory runningSessionFactory() {
+    KeycloakSessionFactory sessionFactory = KeycloakApplication.getSessionFactory();
+    if (sessionFactory == null) {
+      throw new IllegalStateException("The embedded Keycloak is not running; import users once"
+          + " the application has started, e.g. from an ApplicationRunner.");
+    }
+    return sessionFactory;
+  }
+
+}
@@ -0,0 +1,122 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.registration;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistrationRepository;
+import org.springframework.security.saml2.provider.service.web.DefaultRelyingPartyRegistrationResolver;
+import org.springframework.security.saml2.provider.service.web.RelyingPartyRegistrationResolver;
+
+/**
+ * A {@link RelyingPartyRegistrationResolver} for an application served under many host names,
+ * which points each host's registrations at the embedded Keycloak under that same host.
+ *
+ * <p>For a request whose host is one of the configured ones, the registration is resolved as
+ * {@link DefaultRelyingPartyRegistrationResolver} would and then handed to a customizer, together
+ * with the request's {@code scheme://host[:port]}, to move the asserting party endpoints to that
+ * base URL. The result is cached per base URL, context path and registration ID, so later requests
+ * from the same host skip the URL templating and the customizer. A cached registration is rebuilt
+ * when the repository hands out a different registration for its ID, as it does after a credential
+ * rotation or a tenant eviction. The cache holds at most {@value #MAX_ENTRIES} registrations and is
+ * cleared when full.
+ *
+ * <p>Requests for any other host are resolved by {@code DefaultRelyingPartyRegistrationResolver}
+ * alone, against the registrations' configured endpoints, so a forged {@code Host} header neither
+ * fills the cache nor sends users to a Keycloak of its choosing. The host is read from
+ * {@link HttpServletRequest#getServerName()}: behind a proxy, let the container apply the forwarded
+ * headers, e.g. with {@code server.forward-headers-strategy=native}.
+ *
+ * @author Wei-Ming Wu
+ * @since 26.7.3.1
+ */
+public class HostRelyingPartyRegistrationResolver implements RelyingPartyRegistrationResolver {
+
+  private static final Logger LOG =
+      LoggerFactory.getLogger(HostRelyingPartyRegistrationResolver.class);
+
+  static final int MAX_ENTRIES = 256;
+
+  private final RelyingPartyRegistrationRepository repository;
+  private final RelyingPartyRegistrationResolver delegate;
+  private final Set<String> hosts;
+  private final BiFunction<RelyingPartyRegistration, String, RelyingPartyRegistration> customizer;
+  private final ConcurrentMap<Key, Resolved> cache = new ConcurrentHashMap<>();
+
+  private record Key(String baseUrl, String contextPath, String registrationId) {}
+
+  /**
+   * A resolved registration and the repository registration it was resolved from.
+   */
+  private record Resolved(RelyingPartyRegistration source, RelyingPartyRegistration registration) {}
+
+  /**
+   * Creates the resolver.
+   *
+   * @param repository the registrations
+   * @param hosts the host names, without port, whose requests get registrations of their own
+   * @param customizer moves a resolved registration to the given {@code scheme://host[:port]} base
+   *        URL
+   */
+  public HostRelyingPartyRegistrationResolver(RelyingPartyRegistrationRepository repository,
+      Collection<String> hosts,
+      BiFunction<RelyingPartyRegistration, String, RelyingPartyRegistration> customizer) {
+    this.repository = repository;
+    this.delegate = new DefaultRelyingPartyRegistrationResolver(repository);
+    this.hosts = hosts.stream().map((host) -> host.trim().toLowerCase(Locale.ROOT))
+        .filter((host) -> !host.isEmpty()).collect(Collectors.toUnmodifiableSet());
+    this.customizer = customizer;
+  }
+
+  @Override
+  public RelyingPartyRegistration resolve(HttpServletRequest request, String registrationId) {
+    String host = request.getServerName();
+    if (host == null || !hosts.contains(host.toLowerCase(Locale.ROOT))) {
+      return delegate.resolve(request, registrationId);
+    }
+
+    // As DefaultRelyingPartyRegistrationResolver does, the ID defaults to the last path segment
+    String id = registrationId != null ? registrationId : lastPathSegment(request);
+    if (id == null) return null;
+    RelyingPartyRegistration source = repository.findByRegistrationId(id);
+    if (source == null) return null;
+
+    Key key = new Key(baseUrl(request, host), request.getContextPath(), id);
+    Resolved resolved = cache.get(key);
+    if (resolved != null && resolved.source() == source) return resolved.registration();
+
+    RelyingPartyRegistration resolvedSource = delegate.resolve(request, id);
+    if (resolvedSource == null) return null;
+    RelyingPartyRegistration registration = customizer.apply(resolvedSource, key.baseUrl());
+    if (cache.size() >= MAX_ENTRIES) {
+      LOG.debug("Host registration cache reached " + MAX_ENTRIES + " entries; clearing it");
+      cache.clear();
+    }
+    cache.put(key, new Resolved(source, registration));
+    return registration;
+  }
+
+  private static String baseUrl(HttpServletRequest request, String host) {
+    String scheme = request.getScheme();
+    int port = request.getServerPort();
+    boolean defaultPort = port <= 0 || ("http".equals(scheme) && port == 80)
+        || ("https".equals(scheme) && port == 443);
+    return scheme + "://" + host.toLowerCase(Locale.ROOT) + (defaultPort ? "" : ":" + port);
+  }
+
+  private static String lastPathSegment(HttpServletRequest request) {
+    String path = request.getRequestURI();
+    if (path == null) return null;
+    int slash = path.lastIndexOf('/');
+    String segment = path.substring(slash + 1);
+    return segment.isEmpty() ? null : segment;
+  }
+
+}
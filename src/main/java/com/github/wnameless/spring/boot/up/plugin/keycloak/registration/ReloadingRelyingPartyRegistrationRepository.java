@@ -0,0 +1,205 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.registration;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.GeneralSecurityException;
+import java.security.Signature;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.saml2.core.Saml2X509Credential;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistrationRepository;
+import org.springframework.util.ResourceUtils;
+
+/**
+ * A {@link RelyingPartyRegistrationRepository} that rebuilds its registration when the PEM files
+ * behind it change on disk.
+ *
+ * <p>Only {@code file:} locations are watched; classpath locations cannot change while the
+ * application runs. The files are polled for their modification time and size at a fixed interval
+ * on a single daemon thread. A change is acted upon once it has been stable for a whole interval,
+ * so a rotation that replaces the key and the certificate one after the other is picked up as one
+ * change rather than as a key paired with the old certificate.
+ *
+ * <p>The registration is held in a volatile field and swapped in one write. Lookups on the request
+ * path read that field and nothing else - no locks, no file access - so a rotation costs logins in
+ * flight nothing.
+ *
+ * <p>A rebuilt registration is only swapped in when every signing credential's private key
+ * matches its certificate. Otherwise, or when the rebuild fails, the current registration stays in
+ * place and a warning is logged; the next change on disk is tried again.
+ *
+ * @author Wei-Ming Wu
+ * @since 26.7.3.1
+ */
+public class ReloadingRelyingPartyRegistrationRepository
+    implements RelyingPartyRegistrationRepository, Iterable<RelyingPartyRegistration>,
+    AutoCloseable {
+
+  private static final Logger LOG =
+      LoggerFactory.getLogger(ReloadingRelyingPartyRegistrationRepository.class);
+
+  private final Supplier<RelyingPartyRegistration> registrationFactory;
+  private final List<Path> watchedFiles;
+  private final ScheduledExecutorService scheduler;
+
+  private volatile RelyingPartyRegistration registration;
+
+  // Only touched by the polling thread
+  private Map<Path, String> loadedStamps;
+  private Map<Path, String> pendingStamps;
+
+  /**
+   * Builds the initial registration and starts watching the {@code file:} locations among the
+   * given ones.
+   *
+   * @param registrationFactory builds a fresh registration from the current files
+   * @param locations the credential locations the registration is built from
+   * @param interval how often to poll the watched files
+   * @throws IllegalArgumentException if the interval is not positive
+   */
+  public ReloadingRelyingPartyRegistrationRepository(
+      Supplier<RelyingPartyRegistration> registrationFactory, List<String> locations,
+      Duration interval) {
+    if (interval.isZero() || interval.isNegative()) {
+      throw new IllegalArgumentException("Reload interval must be positive: " + interval);
+    }
+    this.registrationFactory = registrationFactory;
+    this.watchedFiles = locations.stream().filter(l -> l.startsWith(ResourceUtils.FILE_URL_PREFIX))
+        .map(ReloadingRelyingPartyRegistrationRepository::toPath).distinct().toList();
+    this.loadedStamps = stamps();
+    this.registration = Objects.requireNonNull(registrationFactory.get());
+
+    if (watchedFiles.isEmpty()) {
+      LOG.info("No file: credential location to watch; credential reloading is inactive");
+      this.scheduler = null;
+    } else {
+      this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "keycloak-plugin-credential-reload");
+        thread.setDaemon(true);
+        return thread;
+      });
+      long millis = interval.toMillis();
+      scheduler.scheduleWithFixedDelay(this::poll, millis, millis, TimeUnit.MILLISECONDS);
+      LOG.info("Watching " + watchedFiles + " for credential rotation every " + interval);
+    }
+  }
+
+  @Override
+  public RelyingPartyRegistration findByRegistrationId(String registrationId) {
+    RelyingPartyRegistration current = registration;
+    return current.getRegistrationId().equals(registrationId) ? current : null;
+  }
+
+  @Override
+  public Iterator<RelyingPartyRegistration> iterator() {
+    return List.of(registration).iterator();
+  }
+
+  /**
+   * Stops watching the credential files.
+   */
+  @Override
+  public void close() {
+    if (scheduler != null) scheduler.shutdownNow();
+  }
+
+  /**
+   * Compares the watched files with the last loaded state and reloads once a change has been
+   * stable for a full polling interval.
+   */
+  void poll() {
+    try {
+      Map<Path, String> current = stamps();
+      if (current.equals(loadedStamps)) {
+        pendingStamps = null;
+      } else if (!current.equals(pendingStamps)) {
+        // Changed since the last poll: wait one more interval for the rest of the rotation
+        pendingStamps = current;
+      } else {
+        pendingStamps = null;
+        loadedStamps = current;
+        reload();
+      }
+    } catch (RuntimeException e) {
+      LOG.warn("Credential reload check failed; keeping the current registration", e);
+    }
+  }
+
+  private void reload() {
+    RelyingPartyRegistration candidate;
+    try {
+      candidate = registrationFactory.get();
+    } catch (RuntimeException e) {
+      LOG.warn("Cannot rebuild the relying party registration from " + watchedFiles
+          + "; keeping the current one", e);
+      return;
+    }
+    for (Saml2X509Credential credential : candidate.getSigningX509Credentials()) {
+      if (!keyMatchesCertificate(credential)) {
+        LOG.warn("The private key in " + watchedFiles + " does not match its certificate;"
+            + " keeping the current registration until both halves of the pair are rotated");
+        return;
+      }
+    }
+    registration = candidate;
+    LOG.info("Reloaded relying party registration '" + candidate.getRegistrationId()
+        + "' after a change in " + watchedFiles);
+  }
+
+  private Map<Path, String> stamps() {
+    Map<Path, String> stamps = new LinkedHashMap<>();
+    for (Path file : watchedFiles) {
+      try {
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        stamps.put(file, attrs.lastModifiedTime() + "/" + attrs.size());
+      } catch (IOException e) {
+        // A file briefly missing mid-rotation is a state of its own, not an error
+        stamps.put(file, "missing");
+      }
+    }
+    return stamps;
+  }
+
+  private static boolean keyMatchesCertificate(Saml2X509Credential credential) {
+    String algorithm = "EC".equals(credential.getPrivateKey().getAlgorithm()) //
+        ? "SHA256withECDSA"
+        : "SHA256withRSA";
+    byte[] challenge = "keycloak-plugin-credential-reload".getBytes(StandardCharsets.UTF_8);
+    try {
+      Signature signer = Signature.getInstance(algorithm);
+      signer.initSign(credential.getPrivateKey());
+      signer.update(challenge);
+      byte[] signature = signer.sign();
+      Signature verifier = Signature.getInstance(algorithm);
+      verifier.initVerify(credential.getCertificate());
+      verifier.update(challenge);
+      return verifier.verify(signature);
+    } catch (GeneralSecurityException e) {
+      return false;
+    }
+  }
+
+  private static Path toPath(String location) {
+    try {
+      return ResourceUtils.getFile(location).toPath().toAbsolutePath();
+    } catch (FileNotFoundException e) {
+      throw new IllegalStateException("Cannot watch credential location '" + location + "'", e);
+    }
+  }
+
+}
@@ -0,0 +1,152 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.registration;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistrationRepository;
+
+/**
+ * A {@link RelyingPartyRegistrationRepository} for many tenants, each a realm of its own, whose
+ * registrations are built on first use and dropped again when left unused.
+ *
+ * <p>Only the set of tenant IDs is held up front, so startup time and memory do not grow with the
+ * number of configured tenants. The first lookup of a tenant builds its registration - loading its
+ * PEM files - and keeps it in a concurrent map keyed by registration ID; later lookups are a set
+ * and a map lookup. IDs outside the configured set are answered with null without building
+ * anything, so requests cannot make the repository load arbitrary locations.
+ *
+ * <p>A registration not looked up for the idle timeout is evicted by a daemon thread and rebuilt on
+ * its next use, which also picks up PEM files that changed in between. A registration that cannot
+ * be built is logged and not cached, so the next lookup tries again.
+ *
+ * <p>The repository is deliberately not {@link Iterable}: iterating would build every tenant.
+ * Spring Security therefore generates no login page listing the tenants; a login is started at
+ * {@code /saml2/authenticate/{registrationId}}.
+ *
+ * @author Wei-Ming Wu
+ * @since 26.7.3.1
+ */
+public class TenantRelyingPartyRegistrationRepository
+    implements RelyingPartyRegistrationRepository, AutoCloseable {
+
+  private static final Logger LOG =
+      LoggerFactory.getLogger(TenantRelyingPartyRegistrationRepository.class);
+
+  // Access times are only refreshed this often, so hot tenants do not write on every lookup
+  private static final long TOUCH_GRANULARITY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final Set<String> registrationIds;
+  private final Function<String, RelyingPartyRegistration> registrationFactory;
+  private final long idleTimeoutNanos;
+  private final ConcurrentMap<String, Tenant> tenants = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService evictor;
+
+  /**
+   * A built registration and when it was last looked up.
+   */
+  private static final class Tenant {
+
+    final RelyingPartyRegistration registration;
+    volatile long lastAccess = System.nanoTime();
+
+    Tenant(RelyingPartyRegistration registration) {
+      this.registration = registration;
+    }
+
+    void touch(long now) {
+      if (now - lastAccess > TOUCH_GRANULARITY_NANOS) lastAccess = now;
+    }
+
+  }
+
+  /**
+   * Creates the repository without building any registration.
+   *
+   * @param registrationIds the tenant registration IDs
+   * @param registrationFactory builds the registration of a tenant from its ID
+   * @param idleTimeout how long an unused registration is kept; zero or negative keeps them all
+   */
+  public TenantRelyingPartyRegistrationRepository(Collection<String> registrationIds,
+      Function<String, RelyingPartyRegistration> registrationFactory, Duration idleTimeout) {
+    this.registrationIds = Set.copyOf(registrationIds);
+    this.registrationFactory = registrationFactory;
+    this.idleTimeoutNanos = idleTimeout.toNanos();
+
+    if (idleTimeout.isZero() || idleTimeout.isNegative()) {
+      this.evictor = null;
+    } else {
+      this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "keycloak-plugin-tenant-eviction");
+        thread.setDaemon(true);
+        return thread;
+      });
+      long period = Math.max(idleTimeout.toMillis() / 2, 1000);
+      evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+    LOG.info(this.registrationIds.size() + " tenant registration(s) configured; each is built on"
+        + " first use" + (evictor == null ? "" : " and evicted after " + idleTimeout + " idle"));
+  }
+
+  @Override
+  public RelyingPartyRegistration findByRegistrationId(String registrationId) {
+    if (registrationId == null || !registrationIds.contains(registrationId)) return null;
+
+    long now = System.nanoTime();
+    Tenant tenant = tenants.get(registrationId);
+    if (tenant == null) {
+      try {
+        tenant = tenants.computeIfAbsent(registrationId,
+            (id) -> new Tenant(registrationFactory.apply(id)));
+      } catch (RuntimeException e) {
+        LOG.warn("Cannot build the relying party registration of tenant '" + registrationId + "'",
+            e);
+        return null;
+      }
+    }
+    tenant.touch(now);
+    return tenant.registration;
+  }
+
+  /**
+   * Gets the number of tenants whose registration is currently built.
+   *
+   * @return the number of built registrations
+   */
+  public int loadedCount() {
+    return tenants.size();
+  }
+
+  /**
+   * Drops the registrations not looked up for the idle timeout.
+   */
+  void evictIdle() {
+    try {
+      long now = System.nanoTime();
+      tenants.entrySet().removeIf((e) -> {
+        boolean idle = now - e.getValue().lastAccess > idleTimeoutNanos;
+        if (idle) LOG.debug("Evicting idle tenant registration '" + e.getKey() + "'");
+        return idle;
+      });
+    } catch (RuntimeException e) {
+      LOG.warn("Tenant registration eviction failed", e);
+    }
+  }
+
+  /**
+   * Stops evicting idle registrations.
+   */
+  @Override
+  public void close() {
+    if (evictor != null) evictor.shutdownNow();
+  }
+
+}
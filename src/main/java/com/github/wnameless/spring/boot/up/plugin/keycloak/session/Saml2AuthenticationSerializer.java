@@ -0,0 +1,313 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.session;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.core.serializer.DefaultDeserializer;
+import org.springframework.core.serializer.DefaultSerializer;
+import org.springframework.core.serializer.Deserializer;
+import org.springframework.core.serializer.Serializer;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.saml2.provider.service.authentication.DefaultSaml2AuthenticatedPrincipal;
+import org.springframework.security.saml2.provider.service.authentication.Saml2Authentication;
+import org.springframework.security.web.authentication.WebAuthenticationDetails;
+
+/**
+ * A compact, versioned binary encoding of the {@link Saml2Authentication} the plugin stores in the
+ * session, for session stores that serialize every attribute on every request.
+ *
+ * <p>A {@link SecurityContext} or a {@code Saml2Authentication} is written field by field -
+ * NameID, registration ID, session indexes, attributes, SAMLResponse, authorities and
+ * {@link WebAuthenticationDetails} - behind a four byte header: the magic {@code "SK"}, the
+ * format {@value #VERSION} and the kind of object. No class names or descriptors are written, so
+ * the result is a fraction of its Java serialized size and reads back without reflection. Every
+ * other value, and any authentication the encoding does not cover (a custom principal, authority
+ * or details type, or an attribute value other than a string, boolean, integer, long or instant),
+ * is written with plain Java serialization instead. Reading tells the two apart by the header, so
+ * sessions written before the serializer was installed remain readable.
+ *
+ * <p>Spring Session JDBC picks it up through a conversion service bean:
+ *
+ * <pre>{@code
+ * @Bean("springSessionConversionService")
+ * GenericConversionService springSessionConversionService() {
+ *   Saml2AuthenticationSerializer serializer = new Saml2AuthenticationSerializer();
+ *   GenericConversionService conversionService = new GenericConversionService();
+ *   conversionService.addConverter(Object.class, byte[].class,
+ *       new SerializingConverter(serializer));
+ *   conversionService.addConverter(byte[].class, Object.class,
+ *       new DeserializingConverter(serializer));
+ *   return conversionService;
+ * }
+ * }</pre>
+ *
+ * <p>Other stores can call {@link #serializeToByteArray(Object)} and
+ * {@link #deserializeFromByteArray(byte[])} from their own serializer hook.
+ *
+ * @author Wei-Ming Wu
+ * @since 26.7.3.1
+ */
+public class Saml2AuthenticationSerializer implements Serializer<Object>, Deserializer<Object> {
+
+  /**
+   * The current format. A reader accepts this and every earlier version.
+   */
+  public static final int VERSION = 1;
+
+  static final int MAGIC_0 = 'S';
+  static final int MAGIC_1 = 'K';
+
+  static final int KIND_SECURITY_CONTEXT = 1;
+  static final int KIND_AUTHENTICATION = 2;
+
+  static final int NULL = 0;
+  static final int STRING = 1;
+  static final int BOOLEAN = 2;
+  static final int INTEGER = 3;
+  static final int LONG = 4;
+  static final int INSTANT = 5;
+
+  private final Serializer<Object> fallbackSerializer = new DefaultSerializer();
+  private final Deserializer<Object> fallbackDeserializer;
+
+  /**
+   * Creates a serializer whose Java serialization fallback resolves classes with the default class
+   * loader.
+   */
+  public Saml2AuthenticationSerializer() {
+    this(null);
+  }
+
+  /**
+   * Creates a serializer whose Java serialization fallback resolves classes with the given class
+   * loader.
+   *
+   * @param classLoader the class loader, or null for the default one
+   */
+  public Saml2AuthenticationSerializer(ClassLoader classLoader) {
+    this.fallbackDeserializer = new DefaultDeserializer(classLoader);
+  }
+
+  @Override
+  public void serialize(Object object, OutputStream outputStream) throws IOException {
+    Saml2Authentication authentication = object instanceof SecurityContext context
+        && context.getClass() == SecurityContextImpl.class ? compact(context.getAuthentication())
+            : compact(object);
+    if (authentication == null) {
+      fallbackSerializer.serialize(object, outputStream);
+      return;
+    }
+
+    DataOutputStream out = new DataOutputStream(outputStream);
+    out.writeByte(MAGIC_0);
+    out.writeByte(MAGIC_1);
+    out.writeByte(VERSION);
+    out.writeByte(object instanceof SecurityContext ? KIND_SECURITY_CONTEXT : KIND_AUTHENTICATION);
+
+    DefaultSaml2AuthenticatedPrincipal principal =
+        (DefaultSaml2AuthenticatedPrincipal) authentication.getPrincipal();
+    writeString(out, principal.getName());
+    writeString(out, principal.getRelyingPartyRegistrationId());
+    writeStrings(out, principal.getSessionIndexes());
+    Map<String, List<Object>> attributes = principal.getAttributes();
+    out.writeInt(attributes.size());
+    for (Map.Entry<String, List<Object>> attribute : attributes.entrySet()) {
+      writeString(out, attribute.getKey());
+      out.writeInt(attribute.getValue().size());
+      for (Object value : attribute.getValue()) {
+        writeValue(out, value);
+      }
+    }
+    writeString(out, authentication.getSaml2Response());
+    Collection<? extends GrantedAuthority> authorities = authentication.getAuthorities();
+    out.writeInt(authorities.size());
+    for (GrantedAuthority authority : authorities) {
+      writeString(out, authority.getAuthority());
+    }
+    WebAuthenticationDetails details = (WebAuthenticationDetails) authentication.getDetails();
+    out.writeBoolean(details != null);
+    if (details != null) {
+      writeString(out, details.getRemoteAddress());
+      writeString(out, details.getSessionId());
+    }
+    out.flush();
+  }
+
+  @Override
+  public Object deserialize(InputStream inputStream) throws IOException {
+    PushbackInputStream pushback = new PushbackInputStream(inputStream, 2);
+    int magic0 = pushback.read();
+    int magic1 = pushback.read();
+    if (magic0 != MAGIC_0 || magic1 != MAGIC_1) {
+      // Not written by the compact encoding: Java serialization starts with 0xACED
+      if (magic1 >= 0) pushback.unread(magic1);
+      if (magic0 >= 0) pushback.unread(magic0);
+      return fallbackDeserializer.deserialize(pushback);
+    }
+
+    DataInputStream in = new DataInputStream(pushback);
+    int version = in.readUnsignedByte();
+    if (version < 1 || version > VERSION) {
+      throw new IOException("Unsupported Saml2Authentication format " + version + "; this "
+          + "serializer reads up to " + VERSION + ". The session was written by a newer plugin "
+          + "version; upgrade every node, or let such sessions expire.");
+    }
+    int kind = in.readUnsignedByte();
+
+    String name = readString(in);
+    String registrationId = readString(in);
+    List<String> sessionIndexes = readStrings(in);
+    int attributeCount = in.readInt();
+    Map<String, List<Object>> attributes = new LinkedHashMap<>();
+    for (int i = 0; i < attributeCount; i++) {
+      String attributeName = readString(in);
+      int valueCount = in.readInt();
+      List<Object> values = new ArrayList<>(valueCount);
+      for (int j = 0; j < valueCount; j++) {
+        values.add(readValue(in));
+      }
+      attributes.put(attributeName, values);
+    }
+    DefaultSaml2AuthenticatedPrincipal principal =
+        new DefaultSaml2AuthenticatedPrincipal(name, attributes, sessionIndexes);
+    principal.setRelyingPartyRegistrationId(registrationId);
+
+    String saml2Response = readString(in);
+    int authorityCount = in.readInt();
+    List<GrantedAuthority> authorities = new ArrayList<>(authorityCount);
+    for (int i = 0; i < authorityCount; i++) {
+      authorities.add(new SimpleGrantedAuthority(readString(in)));
+    }
+    Saml2Authentication authentication =
+        new Saml2Authentication(principal, saml2Response, authorities);
+    if (in.readBoolean()) {
+      authentication.setDetails(new WebAuthenticationDetails(readString(in), readString(in)));
+    }
+
+    return switch (kind) {
+      case KIND_SECURITY_CONTEXT -> new SecurityContextImpl(authentication);
+      case KIND_AUTHENTICATION -> authentication;
+      default -> throw new IOException("Unknown Saml2Authentication kind " + kind);
+    };
+  }
+
+  /**
+   * Returns the object as a {@code Saml2Authentication} if it is one made only of types the
+   * encoding covers, and null otherwise.
+   */
+  private static Saml2Authentication compact(Object object) {
+    if (object == null || object.getClass() != Saml2Authentication.class) return null;
+    Saml2Authentication authentication = (Saml2Authentication) object;
+    if (!authentication.isAuthenticated() || authentication.getPrincipal() == null
+        || authentication.getPrincipal().getClass() != DefaultSaml2AuthenticatedPrincipal.class) {
+      return null;
+    }
+    Object details = authentication.getDetails();
+    if (details != null && details.getClass() != WebAuthenticationDetails.class) return null;
+    for (GrantedAuthority authority : authentication.getAuthorities()) {
+      if (authority.getClass() != SimpleGrantedAuthority.class) return null;
+    }
+    DefaultSaml2AuthenticatedPrincipal principal =
+        (DefaultSaml2AuthenticatedPrincipal) authentication.getPrincipal();
+    for (List<Object> values : principal.getAttributes().values()) {
+      for (Object value : values) {
+        if (typeOf(value) < 0) return null;
+      }
+    }
+    return authentication;
+  }
+
+  private static int typeOf(Object value) {
+    if (value == null) return NULL;
+    if (value instanceof String) return STRING;
+    if (value instanceof Boolean) return BOOLEAN;
+    if (value instanceof Integer) return INTEGER;
+    if (value instanceof Long) return LONG;
+    if (value instanceof Instant) return INSTANT;
+    return -1;
+  }
+
+  private static void writeValue(DataOutputStream out, Object value) throws IOException {
+    int type = typeOf(value);
+    out.writeByte(type);
+    switch (type) {
+      case STRING -> writeString(out, (String) value);
+      case BOOLEAN -> out.writeBoolean((Boolean) value);
+      case INTEGER -> out.writeInt((Integer) value);
+      case LONG -> out.writeLong((Long) value);
+      case INSTANT -> {
+        out.writeLong(((Instant) value).getEpochSecond());
+        out.writeInt(((Instant) value).getNano());
+      }
+      default -> {}
+    }
+  }
+
+  private static Object readValue(DataInputStream in) throws IOException {
+    int type = in.readUnsignedByte();
+    return switch (type) {
+      case NULL -> null;
+      case STRING -> readString(in);
+      case BOOLEAN -> in.readBoolean();
+      case INTEGER -> in.readInt();
+      case LONG -> in.readLong();
+      case INSTANT -> Instant.ofEpochSecond(in.readLong(), in.readInt());
+      default -> throw new IOException("Unknown attribute value type " + type);
+    };
+  }
+
+  private static void writeStrings(DataOutputStream out, List<String> strings)
+      throws IOException {
+    out.writeInt(strings.size());
+    for (String string : strings) {
+      writeString(out, string);
+    }
+  }
+
+  private static List<String> readStrings(DataInputStream in) throws IOException {
+    int count = in.readInt();
+    List<String> strings = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      strings.add(readString(in));
+    }
+    return strings;
+  }
+
+  /**
+   * Writes a string as its UTF-8 length and bytes, -1 for null. Unlike
+   * {@link DataOutputStream#writeUTF(String)} it has no 64 KB limit, which a SAMLResponse can
+   * exceed.
+   */
+  private static void writeString(DataOutputStream out, String string) throws IOException {
+    if (string == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) return null;
+    byte[] bytes = in.readNBytes(length);
+    if (bytes.length < length) throw new EOFException("Truncated Saml2Authentication");
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+}
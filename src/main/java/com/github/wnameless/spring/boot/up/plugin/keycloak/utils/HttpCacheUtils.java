@@ -0,0 +1,99 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.zip.GZIPOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+
+/**
+ * Utility class for serving cached response bodies.
+ *
+ * <p>Provides the strong ETags, conditional request checks and gzip negotiation shared by the
+ * filters that answer from memory.
+ *
+ * @author Wei-Ming Wu
+ * @since 26.7.3.1
+ */
+public final class HttpCacheUtils {
+
+  /**
+   * Private constructor to prevent instantiation of utility class.
+   */
+  private HttpCacheUtils() {}
+
+  /**
+   * Computes a strong ETag from a body's SHA-256 digest.
+   *
+   * @param body the response body
+   * @return the quoted ETag
+   */
+  public static String etag(byte[] body) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+      return '"' + Base64.getUrlEncoder().withoutPadding().encodeToString(digest) + '"';
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Gzips a body, if that makes it smaller.
+   *
+   * @param body the response body
+   * @return the gzipped body, or null if it is not smaller than the body itself
+   * @throws IOException if compression fails
+   */
+  public static byte[] gzip(byte[] body) throws IOException {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream(body.length / 2);
+    try (GZIPOutputStream gzip = new GZIPOutputStream(buffer)) {
+      gzip.write(body);
+    }
+    return buffer.size() < body.length ? buffer.toByteArray() : null;
+  }
+
+  /**
+   * Checks an {@code If-None-Match} header against an ETag.
+   *
+   * @param ifNoneMatch the header value, may be null
+   * @param etag the current ETag
+   * @return true if the client's copy is current
+   */
+  public static boolean etagMatches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) return false;
+    for (String candidate : ifNoneMatch.split(",")) {
+      String tag = candidate.trim();
+      // A weak comparison is what If-None-Match calls for
+      if (tag.startsWith("W/")) tag = tag.substring(2);
+      if (tag.equals("*") || tag.equals(etag)) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Checks whether a request accepts a gzip-encoded response.
+   *
+   * @param request the request
+   * @return true if {@code Accept-Encoding} allows gzip
+   */
+  public static boolean acceptsGzip(HttpServletRequest request) {
+    String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+    if (acceptEncoding == null) return false;
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parts = coding.trim().split(";");
+      String name = parts[0].trim();
+      if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) continue;
+      boolean refused = false;
+      for (int i = 1; i < parts.length; i++) {
+        String param = parts[i].trim();
+        if (param.startsWith("q=")) refused = param.substring(2).matches("0(\\.0*)?");
+      }
+      if (!refused) return true;
+    }
+    return false;
+  }
+
+}
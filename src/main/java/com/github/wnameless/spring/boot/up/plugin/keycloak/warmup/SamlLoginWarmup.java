@@ -0,0 +1,315 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.warmup;
+
+import java.net.CookieManager;
+import java.net.CookiePolicy;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserCredentialModel;
+import org.keycloak.models.UserManager;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.services.resources.KeycloakApplication;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.web.context.WebServerInitializedEvent;
+import org.springframework.context.ApplicationListener;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.utils.PathUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Runs a number of complete SP-initiated SAML logins against the embedded realm during startup, so
+ * that the first real users do not pay for a cold JVM.
+ *
+ * <p>A first login after a deploy is several times slower than the hundredth: the OpenSAML,
+ * XML-security and Keycloak code is still interpreted, the {@code @Lazy} registration and filter
+ * chain beans are not built yet, and Keycloak's realm, client and key caches are empty. The
+ * warm-up creates a throwaway user with a random password, logs it in {@code logins} times, each
+ * time in a fresh cookie jar, and removes it again, sessions included. Every login walks the real
+ * path over HTTP: the AuthnRequest, Keycloak's login form, the credentials, the SAMLResponse posted
+ * to the assertion consumer service and the resulting redirect.
+ *
+ * <p>Spring Boot calls {@link ApplicationRunner}s after the web server has started but before the
+ * readiness state turns to {@code ACCEPTING_TRAFFIC}, so a node behind a readiness probe receives
+ * traffic only once it is warm. The logins go to the node's own connector on the loopback address
+ * and the port it listens on, never to {@code keycloak.plugin.baseUrl}: behind a load balancer that
+ * URL could land on another node, which would get warm in this one's place. URLs under the base URL
+ * that the flow redirects to are rewritten to the loopback connector, and the requests carry the
+ * base URL in {@code X-Forwarded-Proto}, {@code X-Forwarded-Host} and {@code X-Forwarded-Port}, so
+ * a container that applies forwarded headers ({@code server.forward-headers-strategy}) still issues
+ * and checks the SAML messages under the public URL. The warm-up is best effort: a failed login is
+ * logged and counted, and never stops the application from starting.
+ *
+ * <p>Each login is recorded in the {@value #LOGIN} timer, tagged with {@code registration} and
+ * {@code outcome} ({@code success} or {@code failure}); the whole warm-up, user setup included, in
+ * the {@value #DURATION} timer.
+ *
+ * @author Wei-Ming Wu
+ * @since 26.7.3.1
+ */
+public class SamlLoginWarmup
+    implements ApplicationRunner, ApplicationListener<WebServerInitializedEvent> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SamlLoginWarmup.class);
+
+  public static final String LOGIN = "keycloak.plugin.warmup.login";
+  public static final String DURATION = "keycloak.plugin.warmup.duration";
+
+  static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+  private static final Pattern LOGIN_ACTION =
+      Pattern.compile("<form[^>]*id=\"kc-form-login\"[^>]*action=\"([^\"]+)\"");
+  private static final Pattern FORM_ACTION = Pattern.compile("<form[^>]*action=\"([^\"]+)\"");
+  private static final Pattern SAML_RESPONSE =
+      Pattern.compile("name=\"SAMLResponse\"[^>]*value=\"([^\"]+)\"");
+
+  private final String baseUrl;
+  private final URI publicOrigin;
+  private final boolean ssl;
+  private final String keycloakContextPath;
+  private final String realmName;
+  private final String registrationId;
+  private final int logins;
+  private final MeterRegistry registry;
+
+  private volatile URI localOrigin;
+
+  /**
+   * Creates the warm-up.
+   *
+   * @param baseUrl the application's base URL
+   * @param ssl whether the application's own connector serves HTTPS
+   * @param keycloakContextPath the embedded Keycloak's context path, e.g. {@code /auth}
+   * @param realmName the realm the throwaway user is created in
+   * @param registrationId the relying party registration logged in through
+   * @param logins how many logins to run; 0 or less skips the warm-up
+   * @param registry the registry the timers are recorded in
+   */
+  public SamlLoginWarmup(String baseUrl, boolean ssl, String keycloakContextPath,
+      String realmName, String registrationId, int logins, MeterRegistry registry) {
+    this.baseUrl = baseUrl;
+    this.publicOrigin = origin(URI.create(baseUrl));
+    this.ssl = ssl;
+    this.keycloakContextPath = keycloakContextPath;
+    this.realmName = realmName;
+    this.registrationId = registrationId;
+    this.logins = logins;
+    this.registry = registry;
+  }
+
+  /**
+   * Records the port of the application's own connector; the management server's is ignored.
+   */
+  @Override
+  public void onApplicationEvent(WebServerInitializedEvent event) {
+    if (event.getApplicationContext().getServerNamespace() != null) return;
+    localOrigin = URI.create((ssl ? "https" : "http") + "://"
+        + InetAddress.getLoopbackAddress().getHostName() + ":" + event.getWebServer().getPort());
+  }
+
+  @Override
+  public void run(ApplicationArguments args) {
+    if (logins <= 0) return;
+    if (localOrigin == null) {
+      LOG.warn("Skipping the login warm-up: the application has no web server of its own");
+      return;
+    }
+
+    Timer successes = loginTimer("success");
+    Timer failures = loginTimer("failure");
+    long start = System.nanoTime();
+    int succeeded = 0;
+    try {
+      // Keycloak initializes on its first request, which is also part of what is warmed up
+      get(HttpClient.newHttpClient(),
+          PathUtils.joinPath(baseUrl, keycloakContextPath, "realms", realmName));
+      KeycloakSessionFactory sessionFactory = KeycloakApplication.getSessionFactory();
+      if (sessionFactory == null) {
+        LOG.warn("Skipping the login warm-up: the embedded Keycloak is not running at "
+            + localOrigin + keycloakContextPath);
+        return;
+      }
+
+      String username = "warmup-" + UUID.randomUUID();
+      String password = randomPassword();
+      String userId = createUser(sessionFactory, username, password);
+      if (userId == null) {
+        LOG.warn("Skipping the login warm-up: realm '" + realmName + "' does not exist");
+        return;
+      }
+      try {
+        for (int i = 0; i < logins; i++) {
+          long loginStart = System.nanoTime();
+          boolean success = login(username, password);
+          long elapsed = System.nanoTime() - loginStart;
+          (success ? successes : failures).record(elapsed, TimeUnit.NANOSECONDS);
+          if (success) succeeded++;
+          LOG.debug("Warm-up login " + (i + 1) + " of " + logins + " took "
+              + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms");
+        }
+      } finally {
+        removeUser(sessionFactory, userId);
+      }
+    } catch (Exception e) {
+      LOG.warn("Login warm-up stopped early", e);
+    } finally {
+      long elapsed = System.nanoTime() - start;
+      Timer.builder(DURATION).tag("registration", registrationId).register(registry)
+          .record(elapsed, TimeUnit.NANOSECONDS);
+      LOG.info("Login warm-up: " + succeeded + " of " + logins + " logins succeeded in "
+          + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms");
+    }
+  }
+
+  private Timer loginTimer(String outcome) {
+    return Timer.builder(LOGIN).tag("registration", registrationId).tag("outcome", outcome)
+        .register(registry);
+  }
+
+  private String createUser(KeycloakSessionFactory sessionFactory, String username,
+      String password) {
+    return KeycloakModelUtils.runJobInTransactionWithResult(sessionFactory, (session) -> {
+      RealmModel realm = session.realms().getRealmByName(realmName);
+      if (realm == null) return null;
+      UserModel user = session.users().addUser(realm, username);
+      user.setEnabled(true);
+      // Filled in so that the realm's user profile asks for nothing before the login completes
+      user.setFirstName("Warm");
+      user.setLastName("Up");
+      user.setEmail(username + "@warmup.invalid");
+      user.setEmailVerified(true);
+      user.credentialManager().updateCredential(UserCredentialModel.password(password, false));
+      return user.getId();
+    });
+  }
+
+  private void removeUser(KeycloakSessionFactory sessionFactory, String userId) {
+    KeycloakModelUtils.runJobInTransaction(sessionFactory, (session) -> {
+      RealmModel realm = session.realms().getRealmByName(realmName);
+      UserModel user = realm == null ? null : session.users().getUserById(realm, userId);
+      if (user != null) new UserManager(session).removeUser(realm, user);
+    });
+  }
+
+  private boolean login(String username, String password) {
+    // A fresh cookie jar per login, so every login gets new HTTP and Keycloak sessions
+    HttpClient http = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NEVER)
+        .cookieHandler(new CookieManager(null, CookiePolicy.ACCEPT_ALL)).connectTimeout(TIMEOUT)
+        .build();
+    try {
+      HttpResponse<String> res = expect(get(http,
+          PathUtils.joinPath(baseUrl, "saml2/authenticate", registrationId)), 302);
+      res = expect(get(http, location(res)), 200);
+      String loginAction = match(LOGIN_ACTION, res.body());
+
+      Map<String, String> credentials = new LinkedHashMap<>();
+      credentials.put("username", username);
+      credentials.put("password", password);
+      res = expect(post(http, loginAction, credentials), 200);
+      String acsUrl = match(FORM_ACTION, res.body());
+      String samlResponse = match(SAML_RESPONSE, res.body());
+
+      res = expect(post(http, acsUrl, Map.of("SAMLResponse", samlResponse)), 302);
+      String target = location(res);
+      if (target.contains("error")) {
+        throw new IllegalStateException("The SAMLResponse was rejected; redirected to " + target);
+      }
+      return true;
+    } catch (Exception e) {
+      LOG.debug("Warm-up login failed", e);
+      return false;
+    }
+  }
+
+  private HttpResponse<String> get(HttpClient http, String url) throws Exception {
+    return http.send(request(url).GET().build(), BodyHandlers.ofString());
+  }
+
+  private HttpResponse<String> post(HttpClient http, String url, Map<String, String> form)
+      throws Exception {
+    String body = form.entrySet().stream()
+        .map((e) -> URLEncoder.encode(e.getKey(), StandardCharsets.UTF_8) + "="
+            + URLEncoder.encode(e.getValue(), StandardCharsets.UTF_8))
+        .collect(Collectors.joining("&"));
+    return http.send(request(url).header("Content-Type", "application/x-www-form-urlencoded")
+        .POST(BodyPublishers.ofString(body)).build(), BodyHandlers.ofString());
+  }
+
+  /**
+   * Builds a request to the loopback connector for a URL under the base URL or the connector.
+   */
+  private HttpRequest.Builder request(String url) {
+    URI uri = URI.create(url);
+    if (origin(uri).equals(publicOrigin)) {
+      String query = uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery();
+      uri = localOrigin.resolve(uri.getRawPath() + query);
+    }
+    HttpRequest.Builder builder = HttpRequest.newBuilder(uri).timeout(TIMEOUT);
+    if (!publicOrigin.equals(localOrigin)) {
+      builder.header("X-Forwarded-Proto", publicOrigin.getScheme())
+          .header("X-Forwarded-Host", publicOrigin.getHost())
+          .header("X-Forwarded-Port", String.valueOf(port(publicOrigin)));
+    }
+    return builder;
+  }
+
+  private static URI origin(URI uri) {
+    return URI.create(uri.getScheme() + "://" + uri.getHost() + ":" + port(uri));
+  }
+
+  private static int port(URI uri) {
+    if (uri.getPort() != -1) return uri.getPort();
+    return "https".equals(uri.getScheme()) ? 443 : 80;
+  }
+
+  private static String location(HttpResponse<String> res) {
+    String location = res.headers().firstValue("Location").orElseThrow(
+        () -> new IllegalStateException("No Location header from " + res.uri()));
+    return res.uri().resolve(location).toString();
+  }
+
+  private static HttpResponse<String> expect(HttpResponse<String> res, int status) {
+    if (res.statusCode() != status) {
+      throw new IllegalStateException(
+          "Expected " + status + " but got " + res.statusCode() + " from " + res.uri());
+    }
+    return res;
+  }
+
+  private static String match(Pattern pattern, String html) {
+    Matcher matcher = pattern.matcher(html);
+    if (!matcher.find()) {
+      throw new IllegalStateException("No match for " + pattern.pattern() + " in the page");
+    }
+    return matcher.group(1).replace("&amp;", "&").replace("&quot;", "\"").replace("&#43;", "+")
+        .replace("&#47;", "/").replace("&#61;", "=");
+  }
+
+  private static String randomPassword() {
+    byte[] bytes = new byte[24];
+    new SecureRandom().nextBytes(bytes);
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes) + "-Aa1!";
+  }
+
+}
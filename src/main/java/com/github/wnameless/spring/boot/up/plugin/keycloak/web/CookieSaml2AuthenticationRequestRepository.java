@@ -0,0 +1,302 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.web;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.security.saml2.core.Saml2X509Credential;
+import org.springframework.security.saml2.provider.service.authentication.AbstractSaml2AuthenticationRequest;
+import org.springframework.security.saml2.provider.service.authentication.Saml2PostAuthenticationRequest;
+import org.springframework.security.saml2.provider.service.authentication.Saml2RedirectAuthenticationRequest;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistrationRepository;
+import org.springframework.security.saml2.provider.service.registration.Saml2MessageBinding;
+import org.springframework.security.saml2.provider.service.web.HttpSessionSaml2AuthenticationRequestRepository;
+import org.springframework.security.saml2.provider.service.web.Saml2AuthenticationRequestRepository;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Keeps the outstanding AuthnRequest in an encrypted cookie instead of the HTTP session, so the
+ * SAMLResponse can be posted to any node behind a load balancer without sticky sessions or a
+ * shared session store.
+ *
+ * <p>The request is serialized compactly, deflated and sealed with AES-256-GCM, which both
+ * encrypts it and authenticates it: a cookie that was altered, or sealed for another registration,
+ * fails to open and is treated as absent. The AES key of a registration is derived from the
+ * private key of its first signing credential, which every node already loads, so no extra secret
+ * has to be distributed and a credential rotation also rotates the cookie key. The cookie expires
+ * after the max age, which is also checked against the time sealed inside it.
+ *
+ * <p>A request too large for a cookie - a POST binding AuthnRequest can be - is kept in the HTTP
+ * session instead, with a warning. Unlike the session, a cookie cannot be consumed on the server,
+ * so a replayed SAMLResponse is not stopped by this repository alone; that is the job of the
+ * {@link com.github.wnameless.spring.boot.up.plugin.keycloak.authentication.AssertionReplayCache},
+ * which must then be shared by all nodes.
+ *
+ * @author Wei-Ming Wu
+ * @since 26.7.3.1
+ */
+public class CookieSaml2AuthenticationRequestRepository
+    implements Saml2AuthenticationRequestRepository<AbstractSaml2AuthenticationRequest> {
+
+  private static final Logger LOG =
+      LoggerFactory.getLogger(CookieSaml2AuthenticationRequestRepository.class);
+
+  public static final String COOKIE_NAME = "SAML2_AUTHN_REQUEST";
+  public static final Duration DEFAULT_MAX_AGE = Duration.ofMinutes(5);
+
+  // Browsers accept about 4096 bytes per cookie, name and attributes included
+  static final int MAX_VALUE_LENGTH = 3800;
+
+  private static final byte VERSION = 1;
+  private static final int IV_LENGTH = 12;
+  private static final int TAG_BITS = 128;
+  private static final byte[] KEY_LABEL =
+      "keycloak-plugin-saml2-authn-request-cookie".getBytes(StandardCharsets.US_ASCII);
+  private static final int KEY_CACHE_LIMIT = 32;
+
+  private final RelyingPartyRegistrationRepository registrations;
+  private final Duration maxAge;
+  private final Saml2AuthenticationRequestRepository<AbstractSaml2AuthenticationRequest> fallback =
+      new HttpSessionSaml2AuthenticationRequestRepository();
+  private final SecureRandom random = new SecureRandom();
+  private final ConcurrentMap<PrivateKey, SecretKey> keys = new ConcurrentHashMap<>();
+
+  /**
+   * Creates the repository with the {@link #DEFAULT_MAX_AGE}.
+   *
+   * @param registrations the registrations whose signing keys the cookie keys are derived from
+   */
+  public CookieSaml2AuthenticationRequestRepository(
+      RelyingPartyRegistrationRepository registrations) {
+    this(registrations, DEFAULT_MAX_AGE);
+  }
+
+  /**
+   * Creates the repository.
+   *
+   * @param registrations the registrations whose signing keys the cookie keys are derived from
+   * @param maxAge how long a login may take from the redirect to Keycloak to the SAMLResponse
+   */
+  public CookieSaml2AuthenticationRequestRepository(
+      RelyingPartyRegistrationRepository registrations, Duration maxAge) {
+    this.registrations = registrations;
+    this.maxAge = maxAge;
+  }
+
+  @Override
+  public AbstractSaml2AuthenticationRequest loadAuthenticationRequest(HttpServletRequest request) {
+    String value = cookieValue(request);
+    if (value == null) return fallback.loadAuthenticationRequest(request);
+    return open(value);
+  }
+
+  @Override
+  public void saveAuthenticationRequest(AbstractSaml2AuthenticationRequest authenticationRequest,
+      HttpServletRequest request, HttpServletResponse response) {
+    if (authenticationRequest == null) {
+      removeAuthenticationRequest(request, response);
+      return;
+    }
+    String value = seal(authenticationRequest);
+    if (value == null || value.length() > MAX_VALUE_LENGTH) {
+      LOG.warn("AuthnRequest of registration '"
+          + authenticationRequest.getRelyingPartyRegistrationId()
+          + "' does not fit in a cookie; keeping it in the HTTP session instead");
+      fallback.saveAuthenticationRequest(authenticationRequest, request, response);
+      return;
+    }
+    response.addHeader(HttpHeaders.SET_COOKIE, cookie(request, value, maxAge).toString());
+  }
+
+  @Override
+  public AbstractSaml2AuthenticationRequest removeAuthenticationRequest(HttpServletRequest request,
+      HttpServletResponse response) {
+    String value = cookieValue(request);
+    if (value == null) return fallback.removeAuthenticationRequest(request, response);
+    response.addHeader(HttpHeaders.SET_COOKIE, cookie(request, "", Duration.ZERO).toString());
+    return open(value);
+  }
+
+  private ResponseCookie cookie(HttpServletRequest request, String value, Duration age) {
+    String path = request.getContextPath().isEmpty() ? "/" : request.getContextPath();
+    // The SAMLResponse arrives as a top-level POST, which SameSite=Lax only allows same-site
+    return ResponseCookie.from(COOKIE_NAME, value).path(path).httpOnly(true)
+        .secure(request.isSecure()).sameSite(request.isSecure() ? "None" : "Lax").maxAge(age)
+        .build();
+  }
+
+  private static String cookieValue(HttpServletRequest request) {
+    Cookie[] cookies = request.getCookies();
+    if (cookies == null) return null;
+    for (Cookie cookie : cookies) {
+      if (COOKIE_NAME.equals(cookie.getName()) && !cookie.getValue().isEmpty()) {
+        return cookie.getValue();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Serializes, deflates and encrypts a request into a cookie value.
+   *
+   * @return the cookie value, or null if the registration has no signing key to derive from
+   */
+  String seal(AbstractSaml2AuthenticationRequest authenticationRequest) {
+    String registrationId = authenticationRequest.getRelyingPartyRegistrationId();
+    SecretKey key = key(registrationId);
+    if (key == null) return null;
+    try {
+      byte[] plain = serialize(authenticationRequest, System.currentTimeMillis());
+      byte[] iv = new byte[IV_LENGTH];
+      random.nextBytes(iv);
+      Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+      cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+      // The registration ID travels in clear to find the key, and is authenticated as AAD
+      byte[] id = registrationId.getBytes(StandardCharsets.UTF_8);
+      cipher.updateAAD(id);
+      byte[] sealed = Arrays.copyOf(iv, IV_LENGTH + cipher.getOutputSize(plain.length));
+      cipher.doFinal(plain, 0, plain.length, sealed, IV_LENGTH);
+      Base64.Encoder base64 = Base64.getUrlEncoder().withoutPadding();
+      return base64.encodeToString(id) + '.' + base64.encodeToString(sealed);
+    } catch (GeneralSecurityException | IOException e) {
+      throw new IllegalStateException("Cannot seal the AuthnRequest cookie of registration '"
+          + registrationId + "'", e);
+    }
+  }
+
+  /**
+   * Decrypts and deserializes a cookie value.
+   *
+   * @return the request, or null if the value is malformed, forged, sealed with another key or
+   *         expired
+   */
+  AbstractSaml2AuthenticationRequest open(String value) {
+    try {
+      int dot = value.indexOf('.');
+      if (dot < 0) return null;
+      Base64.Decoder base64 = Base64.getUrlDecoder();
+      byte[] id = base64.decode(value.substring(0, dot));
+      byte[] sealed = base64.decode(value.substring(dot + 1));
+      if (sealed.length <= IV_LENGTH) return null;
+
+      RelyingPartyRegistration registration =
+          registrations.findByRegistrationId(new String(id, StandardCharsets.UTF_8));
+      SecretKey key = registration == null ? null : key(registration);
+      if (key == null) return null;
+      Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+      cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, sealed, 0, IV_LENGTH));
+      cipher.updateAAD(id);
+      byte[] plain = cipher.doFinal(sealed, IV_LENGTH, sealed.length - IV_LENGTH);
+      return deserialize(plain, registration);
+    } catch (GeneralSecurityException | IOException | IllegalArgumentException e) {
+      LOG.debug("Ignoring an AuthnRequest cookie that does not open: " + e);
+      return null;
+    }
+  }
+
+  private byte[] serialize(AbstractSaml2AuthenticationRequest request, long sealedAt)
+      throws IOException {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024);
+    try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(buffer))) {
+      out.writeByte(VERSION);
+      out.writeLong(sealedAt);
+      out.writeBoolean(request.getBinding() == Saml2MessageBinding.REDIRECT);
+      writeNullable(out, request.getId());
+      writeNullable(out, request.getRelayState());
+      writeNullable(out, request.getAuthenticationRequestUri());
+      writeNullable(out, request.getSamlRequest());
+      if (request instanceof Saml2RedirectAuthenticationRequest redirect) {
+        writeNullable(out, redirect.getSigAlg());
+        writeNullable(out, redirect.getSignature());
+      }
+    }
+    return buffer.toByteArray();
+  }
+
+  private AbstractSaml2AuthenticationRequest deserialize(byte[] plain,
+      RelyingPartyRegistration registration) throws IOException {
+    try (DataInputStream in =
+        new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(plain)))) {
+      if (in.readByte() != VERSION) return null;
+      long age = System.currentTimeMillis() - in.readLong();
+      if (age < 0 || age > maxAge.toMillis()) return null;
+
+      boolean redirect = in.readBoolean();
+      String id = readNullable(in);
+      String relayState = readNullable(in);
+      String uri = readNullable(in);
+      String samlRequest = readNullable(in);
+      if (redirect) {
+        return Saml2RedirectAuthenticationRequest.withRelyingPartyRegistration(registration).id(id)
+            .relayState(relayState).authenticationRequestUri(uri).samlRequest(samlRequest)
+            .sigAlg(readNullable(in)).signature(readNullable(in)).build();
+      }
+      return Saml2PostAuthenticationRequest.withRelyingPartyRegistration(registration).id(id)
+          .relayState(relayState).authenticationRequestUri(uri).samlRequest(samlRequest).build();
+    }
+  }
+
+  private static void writeNullable(DataOutputStream out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) out.writeUTF(value);
+  }
+
+  private static String readNullable(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private SecretKey key(String registrationId) {
+    RelyingPartyRegistration registration = registrations.findByRegistrationId(registrationId);
+    return registration == null ? null : key(registration);
+  }
+
+  private SecretKey key(RelyingPartyRegistration registration) {
+    Saml2X509Credential credential =
+        registration.getSigningX509Credentials().stream().findFirst().orElse(null);
+    if (credential == null) return null;
+    PrivateKey privateKey = credential.getPrivateKey();
+    SecretKey key = keys.get(privateKey);
+    if (key == null) {
+      // Rotated keys would otherwise pile up
+      if (keys.size() >= KEY_CACHE_LIMIT) keys.clear();
+      key = keys.computeIfAbsent(privateKey, CookieSaml2AuthenticationRequestRepository::derive);
+    }
+    return key;
+  }
+
+  private static SecretKey derive(PrivateKey privateKey) {
+    try {
+      MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+      sha256.update(KEY_LABEL);
+      sha256.update(privateKey.getEncoded());
+      return new SecretKeySpec(sha256.digest(), "AES");
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+}
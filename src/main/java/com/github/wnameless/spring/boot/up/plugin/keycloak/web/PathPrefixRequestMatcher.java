@@ -0,0 +1,133 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.web;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+
+/**
+ * Matches requests whose path lies under any of a set of path prefixes, in a single walk of a
+ * prefix trie.
+ *
+ * <p>The prefixes are split into path segments and stored in a trie, so a request is matched by
+ * following its own segments from the root until a prefix ends or a segment has no child: the cost
+ * depends on the depth of the request path, not on the number of prefixes. Prefixes match whole
+ * segments only, so {@code /auth} matches {@code /auth} and {@code /auth/realms/webmvc} but not
+ * {@code /authors}. A trailing {@code /**}, {@code /*} or {@code /} on a configured prefix is
+ * ignored.
+ *
+ * <p>The path is the servlet path plus the path info, as Spring Security's own matchers see it,
+ * after the firewall has rejected encoded slashes and dot segments.
+ *
+ * @author Wei-Ming Wu
+ * @since 26.7.3.1
+ */
+public class PathPrefixRequestMatcher implements RequestMatcher {
+
+  private final Node root = new Node();
+  private final List<String> prefixes;
+
+  private static final class Node {
+
+    final Map<String, Node> children = new HashMap<>();
+    boolean terminal;
+
+  }
+
+  /**
+   * Creates the matcher.
+   *
+   * @param prefixes the path prefixes, each starting with {@code /}; blank ones are skipped
+   * @throws IllegalStateException if a prefix is {@code /} itself, which would match every request
+   */
+  public PathPrefixRequestMatcher(Collection<String> prefixes) {
+    this.prefixes = prefixes.stream().map(PathPrefixRequestMatcher::normalize)
+        .filter((prefix) -> prefix != null).distinct().toList();
+    for (String prefix : this.prefixes) {
+      Node node = root;
+      for (String segment : prefix.substring(1).split("/")) {
+        if (segment.isEmpty()) continue;
+        node = node.children.computeIfAbsent(segment, (s) -> new Node());
+      }
+      node.terminal = true;
+    }
+  }
+
+  /**
+   * Gets the normalized prefixes.
+   *
+   * @return the prefixes, without trailing wildcards or slashes
+   */
+  public List<String> getPrefixes() {
+    return prefixes;
+  }
+
+  @Override
+  public boolean matches(HttpServletRequest request) {
+    return matches(path(request));
+  }
+
+  /**
+   * Tells whether a path lies under one of the prefixes.
+   *
+   * @param path the request path, starting with {@code /}
+   * @return true if a prefix covers the path
+   */
+  public boolean matches(String path) {
+    if (path == null || root.children.isEmpty()) return false;
+    Node node = root;
+    int start = path.startsWith("/") ? 1 : 0;
+    while (start <= path.length()) {
+      int end = path.indexOf('/', start);
+      if (end < 0) end = path.length();
+      if (end > start) {
+        node = node.children.get(path.substring(start, end));
+        if (node == null) return false;
+        if (node.terminal) return true;
+      }
+      start = end + 1;
+    }
+    return false;
+  }
+
+  private static String path(HttpServletRequest request) {
+    String servletPath = request.getServletPath();
+    String pathInfo = request.getPathInfo();
+    if (servletPath != null && !servletPath.isEmpty()) {
+      return pathInfo == null ? servletPath : servletPath + pathInfo;
+    }
+    if (pathInfo != null) return pathInfo;
+    String uri = request.getRequestURI();
+    String contextPath = request.getContextPath();
+    return contextPath != null && uri.startsWith(contextPath)
+        ? uri.substring(contextPath.length())
+        : uri;
+  }
+
+  private static String normalize(String prefix) {
+    if (prefix == null) return null;
+    String normalized = prefix.trim();
+    if (normalized.isEmpty()) return null;
+    if (normalized.endsWith("/**")) {
+      normalized = normalized.substring(0, normalized.length() - 3);
+    } else if (normalized.endsWith("/*")) {
+      normalized = normalized.substring(0, normalized.length() - 2);
+    }
+    while (normalized.endsWith("/")) {
+      normalized = normalized.substring(0, normalized.length() - 1);
+    }
+    if (normalized.isEmpty()) {
+      throw new IllegalStateException("Path prefix '" + prefix
+          + "' would match every request; list narrower prefixes instead.");
+    }
+    return normalized.startsWith("/") ? normalized : "/" + normalized;
+  }
+
+  @Override
+  public String toString() {
+    return "PathPrefix " + prefixes;
+  }
+
+}
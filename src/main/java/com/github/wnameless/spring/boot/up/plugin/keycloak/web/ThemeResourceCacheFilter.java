@@ -0,0 +1,184 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.web;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.keycloak.common.Version;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.utils.HttpCacheUtils;
+
+/**
+ * Serves the embedded Keycloak's theme resources, {@code <contextPath>/resources/**}, from memory
+ * with long-lived caching headers.
+ *
+ * <p>Keycloak puts its resource version in every theme resource URL, as in
+ * {@code /auth/resources/<version>/login/keycloak.v2/css/styles.css}, so a URL never changes
+ * content while the server runs and a new Keycloak version gets new URLs. The first successful
+ * {@code GET} of such a URL is served by Keycloak and kept as bytes, together with its gzipped form
+ * when it is text and compresses, and a strong ETag computed from its content. Later requests are
+ * answered from memory with {@code Cache-Control: public, max-age=31536000, immutable}, so browsers
+ * do not ask again, and a matching {@code If-None-Match} gets 304 with no body.
+ *
+ * <p>Only URLs carrying the current {@link Version#RESOURCES_VERSION} are cached; the others, such
+ * as the per-realm message bundles, go to Keycloak every time. Responses that are not 200, set a
+ * cookie or are already encoded pass through untouched, as do range requests and requests with a
+ * query string, which would otherwise let any client fill the cache with copies of one resource
+ * under made-up queries. The cached bodies are bounded by a byte limit; a single resource above an
+ * eighth of it is never cached, and the cache is cleared when the next resource would not fit.
+ *
+ * <p>Browsers get gzip only: the JDK has no Brotli encoder, and gzip already takes most of the
+ * bandwidth off the login pages.
+ *
+ * @author Wei-Ming Wu
+ * @since 26.7.3.1
+ */
+public class ThemeResourceCacheFilter extends OncePerRequestFilter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ThemeResourceCacheFilter.class);
+
+  public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+  static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+  private final String resourcesPath;
+  private final long maxBytes;
+  private final ConcurrentMap<String, Cached> cache = new ConcurrentHashMap<>();
+  private final AtomicLong cachedBytes = new AtomicLong();
+
+  /**
+   * A theme resource as Keycloak served it.
+   */
+  private record Cached(String contentType, byte[] body, byte[] gzipped, String etag) {
+
+    long size() {
+      return body.length + (gzipped == null ? 0 : gzipped.length);
+    }
+
+  }
+
+  /**
+   * Creates the filter.
+   *
+   * @param keycloakContextPath the embedded Keycloak's context path, e.g. {@code /auth}
+   * @param maxBytes the most bytes of bodies, gzipped forms included, kept at once
+   * @throws IllegalStateException if the limit is not positive
+   */
+  public ThemeResourceCacheFilter(String keycloakContextPath, long maxBytes) {
+    if (maxBytes <= 0) {
+      throw new IllegalStateException(
+          "The theme resource cache needs a positive size, but got " + maxBytes + " bytes");
+    }
+    String contextPath = keycloakContextPath == null ? "" : keycloakContextPath.trim();
+    while (contextPath.endsWith("/")) {
+      contextPath = contextPath.substring(0, contextPath.length() - 1);
+    }
+    if (!contextPath.isEmpty() && !contextPath.startsWith("/")) contextPath = "/" + contextPath;
+    this.resourcesPath = contextPath + "/resources/";
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Gets the number of bytes currently kept.
+   *
+   * @return the size of the cached bodies, gzipped forms included
+   */
+  public long getCachedBytes() {
+    return cachedBytes.get();
+  }
+
+  @Override
+  protected boolean shouldNotFilter(HttpServletRequest request) {
+    if (!"GET".equals(request.getMethod()) || request.getHeader(HttpHeaders.RANGE) != null
+        || request.getQueryString() != null) {
+      return true;
+    }
+    String path = request.getRequestURI().substring(request.getContextPath().length());
+    return !path.startsWith(resourcesPath + Version.RESOURCES_VERSION + "/");
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+      FilterChain chain) throws ServletException, IOException {
+    String key = request.getRequestURI();
+    Cached cached = cache.get(key);
+    if (cached != null) {
+      write(request, response, cached);
+      return;
+    }
+
+    ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+    chain.doFilter(request, wrapper);
+    cached = capture(wrapper);
+    if (cached == null) {
+      wrapper.copyBodyToResponse();
+      return;
+    }
+    store(key, cached);
+    write(request, response, cached);
+  }
+
+  private Cached capture(ContentCachingResponseWrapper wrapper) throws IOException {
+    if (wrapper.getStatus() != HttpServletResponse.SC_OK || wrapper.isCommitted()
+        || wrapper.containsHeader(HttpHeaders.SET_COOKIE)
+        || wrapper.containsHeader(HttpHeaders.CONTENT_ENCODING)
+        || wrapper.getContentSize() > maxBytes / 8) {
+      return null;
+    }
+
+    byte[] body = wrapper.getContentAsByteArray();
+    String contentType = wrapper.getContentType();
+    byte[] gzipped = compressible(contentType) ? HttpCacheUtils.gzip(body) : null;
+    return new Cached(contentType, body, gzipped, HttpCacheUtils.etag(body));
+  }
+
+  private void store(String key, Cached cached) {
+    if (cachedBytes.get() + cached.size() > maxBytes) {
+      LOG.debug("Theme resource cache reached " + cachedBytes.get() + " bytes; clearing it");
+      cache.clear();
+      cachedBytes.set(0);
+    }
+    if (cache.putIfAbsent(key, cached) == null) cachedBytes.addAndGet(cached.size());
+  }
+
+  private static void write(HttpServletRequest request, HttpServletResponse response,
+      Cached cached) throws IOException {
+    response.setHeader(HttpHeaders.ETAG, cached.etag());
+    response.setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+    response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+    if (HttpCacheUtils.etagMatches(ifNoneMatch, cached.etag())) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    response.setStatus(HttpServletResponse.SC_OK);
+    if (cached.contentType() != null) response.setContentType(cached.contentType());
+    byte[] body = cached.body();
+    if (cached.gzipped() != null && HttpCacheUtils.acceptsGzip(request)) {
+      response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+      body = cached.gzipped();
+    }
+    response.setContentLength(body.length);
+    response.getOutputStream().write(body);
+  }
+
+  private static boolean compressible(String contentType) {
+    if (contentType == null) return false;
+    String type = contentType.toLowerCase(Locale.ROOT);
+    return type.startsWith("text/") || type.startsWith("application/javascript")
+        || type.startsWith("application/json") || type.startsWith("application/xml")
+        || type.startsWith("image/svg+xml") || type.startsWith("font/ttf")
+        || type.startsWith("application/vnd.ms-fontobject");
+  }
+
+}
@@ -0,0 +1,225 @@
+package com.github.wnameless.spring.boot.up.keycloakannotation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static com.github.wnameless.spring.boot.up.keycloakannotation.SamlBrowser.firstMatch;
+import static com.github.wnameless.spring.boot.up.keycloakannotation.SamlBrowser.unescapeHtml;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.DefaultResourceLoader;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.bootstrap.KeycloakRealmBootstrap;
+
+/**
+ * Boots the embedded Keycloak server on realms rendered from the {@code full} and {@code lean}
+ * templates, runs the SAML login flow of {@link SamlLoginFlowTest} against each, and reports the
+ * startup time and the heap in use after a full GC side by side.
+ *
+ * <p>Every profile runs in a JVM of its own, started with the same heap settings, so neither the
+ * other profile nor the Spring contexts cached by other tests are in the numbers. Disabled unless
+ * {@code realm.profiles} lists the profiles to compare, so a regular build never pays for it:
+ *
+ * <pre>
+ * mvn test -Dtest=LeanRealmLoginTest -Drealm.profiles=full,lean
+ * </pre>
+ */
+@EnabledIfSystemProperty(named = "realm.profiles", matches = "[a-z]+(,[a-z]+)*")
+public class LeanRealmLoginTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LeanRealmLoginTest.class);
+
+  static final int PORT = 18085;
+  static final String BASE = "http://localhost:" + PORT;
+  static final String DATABASE_URL = "jdbc:h2:mem:pluginLeanRealmTest;DB_CLOSE_DELAY=-1";
+  static final String HEAP = "-Xmx1g";
+
+  static final Pattern RESULT =
+      Pattern.compile("REALM_PROFILE_RESULT (\\w+) startupMillis=(\\d+) heapMegabytes=(\\d+)");
+
+  @TempDir
+  Path dir;
+
+  @Test
+  public void samlLoginSucceedsOnEveryProfile() throws Exception {
+    Map<String, Matcher> results = new LinkedHashMap<>();
+    for (String profile : System.getProperty("realm.profiles").split(",")) {
+      Path realmDir = Files.createDirectories(dir.resolve(profile));
+      results.put(profile, measure(profile, realmDir));
+    }
+
+    StringBuilder report = new StringBuilder("Realm profiles (separate JVMs, " + HEAP + "):");
+    results.forEach((profile, result) -> report.append(String.format(
+        "%n  %-5s started in %6s ms, %5s MB heap in use after GC", profile, result.group(2),
+        result.group(3))));
+    LOG.info(report.toString());
+  }
+
+  /**
+   * Runs {@link Measurement} for one profile in a fresh JVM on this test's classpath.
+   */
+  private static Matcher measure(String profile, Path realmDir) throws Exception {
+    List<String> command = new ArrayList<>();
+    command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+    command.add(HEAP);
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(Measurement.class.getName());
+    command.add(profile);
+    command.add(realmDir.toString());
+    Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+
+    Matcher result = null;
+    StringBuilder output = new StringBuilder();
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        output.append(line).append(System.lineSeparator());
+        Matcher matcher = RESULT.matcher(line);
+        if (matcher.find()) result = matcher;
+      }
+    }
+    assertTrue(process.waitFor(10, TimeUnit.MINUTES), "Profile " + profile + " timed out");
+    assertEquals(0, process.exitValue(), "Profile " + profile + " failed:\n" + output);
+    assertNotNull(result, "Profile " + profile + " reported no measurement:\n" + output);
+    return result;
+  }
+
+  /**
+   * Generates a realm of one profile, boots the test application on it, measures, and logs in.
+   * Runs as the main class of a JVM of its own.
+   */
+  public static class Measurement {
+
+    public static void main(String[] args) {
+      try {
+        run(args[0], Path.of(args[1]));
+      } catch (Throwable e) {
+        e.printStackTrace();
+        // Tomcat's threads would otherwise keep a failed JVM alive
+        System.exit(1);
+      }
+      System.exit(0);
+    }
+
+    private static void run(String profile, Path realmDir) throws Exception {
+      generateRealm(profile, realmDir);
+
+      Thread thread = Thread.currentThread();
+      // The embedded server imports keycloak-realm.json from the classpath, where the full realm
+      // of the test resources would otherwise win
+      try (URLClassLoader realmClassLoader =
+          new RealmFirstClassLoader(realmDir, thread.getContextClassLoader())) {
+        thread.setContextClassLoader(realmClassLoader);
+        long start = System.nanoTime();
+        try (ConfigurableApplicationContext context =
+            new SpringApplicationBuilder(SpringKeycloakPluginAnnotationTestApp.class)
+                .resourceLoader(new DefaultResourceLoader(realmClassLoader))
+                .run("--server.port=" + PORT, "--keycloak.plugin.baseUrl=" + BASE,
+                    "--keycloak.plugin.serverCertPem=" + pem(realmDir, "keycloak_certificate.pem"),
+                    "--keycloak.plugin.appCertPem=" + pem(realmDir, "app_certificate.pem"),
+                    "--keycloak.plugin.appPrivateKeyPem=" + pem(realmDir, "app_private_key.pem"),
+                    "--keycloak.connectionsJpa.url=" + DATABASE_URL)) {
+          long startupMillis = (System.nanoTime() - start) / 1_000_000;
+          System.gc();
+          System.gc();
+          long heapMegabytes =
+              ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / (1024 * 1024);
+
+          login(new SamlBrowser(BASE, SamlBrowser.newHttpClient()));
+          System.out.println("REALM_PROFILE_RESULT " + profile + " startupMillis=" + startupMillis
+              + " heapMegabytes=" + heapMegabytes);
+        }
+      }
+    }
+
+    private static void generateRealm(String profile, Path realmDir) throws Exception {
+      System.setProperty("targetDir", realmDir.toString());
+      System.setProperty("realmProfile", profile);
+      try {
+        KeycloakRealmBootstrap.main(new String[0]);
+      } finally {
+        System.clearProperty("targetDir");
+        System.clearProperty("realmProfile");
+      }
+    }
+
+    private static String pem(Path realmDir, String name) {
+      return realmDir.resolve(name).toUri().toString();
+    }
+
+  }
+
+  private static void login(SamlBrowser browser) throws Exception {
+    int status = browser.createUser("webmvc", "tester", "secret");
+    assertEquals(201, status, "User creation failed");
+
+    HttpResponse<String> res = browser.get(BASE + "/");
+    assertEquals(302, res.statusCode());
+    res = browser.get(browser.absolute(browser.location(res)));
+    assertEquals(302, res.statusCode());
+
+    res = browser.get(browser.location(res));
+    assertEquals(200, res.statusCode());
+    String loginAction = unescapeHtml(firstMatch(res.body(),
+        "<form[^>]*id=\"kc-form-login\"[^>]*action=\"([^\"]+)\""));
+    assertNotNull(loginAction, "Login form action not found in login page");
+
+    res = browser.postForm(loginAction, Map.of("username", "tester", "password", "secret"));
+    assertEquals(200, res.statusCode());
+    String acsUrl = unescapeHtml(firstMatch(res.body(), "<form[^>]*action=\"([^\"]+)\""));
+    String samlResponse = unescapeHtml(firstMatch(res.body(),
+        "name=\"SAMLResponse\"[^>]*value=\"([^\"]+)\""));
+    assertNotNull(samlResponse, "SAMLResponse not found in post-binding page");
+
+    res = browser.postForm(acsUrl, Map.of("SAMLResponse", samlResponse));
+    assertEquals(302, res.statusCode());
+    String target = browser.location(res);
+    assertFalse(target.contains("error"), "Assertion consumer service failed: " + target);
+
+    res = browser.get(browser.absolute(target));
+    assertEquals(200, res.statusCode());
+    assertTrue(res.body().contains("TEST"));
+  }
+
+  /**
+   * Looks resources up in the realm directory before the parent, so the generated realm shadows
+   * the one on the test classpath. Classes still come from the parent.
+   */
+  static class RealmFirstClassLoader extends URLClassLoader {
+
+    RealmFirstClassLoader(Path realmDir, ClassLoader parent) throws Exception {
+      super(new URL[] {realmDir.toUri().toURL()}, parent);
+    }
+
+    @Override
+    public URL getResource(String name) {
+      URL url = findResource(name);
+      return url != null ? url : super.getResource(name);
+    }
+
+  }
+
+}
@@ -0,0 +1,80 @@
+package com.github.wnameless.spring.boot.up.keycloakannotation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.keycloak.models.UserModel;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.services.resources.KeycloakApplication;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.warmup.SamlLoginWarmup;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * With {@code keycloak.plugin.warmupLogins=2}, {@link SamlLoginWarmup} logs a throwaway user in
+ * twice before the test runs, records both logins, and leaves no user behind.
+ */
+@DirtiesContext
+@Import(LoginWarmupTest.Metrics.class)
+@SpringBootTest(classes = SpringKeycloakPluginAnnotationTestApp.class,
+    webEnvironment = SpringBootTest.WebEnvironment.DEFINED_PORT,
+    properties = {"server.port=18087", "keycloak.plugin.baseUrl=http://localhost:18087",
+        "keycloak.plugin.warmupLogins=2",
+        "keycloak.connectionsJpa.url=jdbc:h2:mem:pluginWarmupTest;DB_CLOSE_DELAY=-1"})
+public class LoginWarmupTest {
+
+  @TestConfiguration
+  static class Metrics {
+
+    @Bean
+    MeterRegistry meterRegistry() {
+      return new SimpleMeterRegistry();
+    }
+
+  }
+
+  @Autowired
+  MeterRegistry registry;
+
+  @Test
+  public void everyWarmupLoginSucceeds() {
+    assertEquals(2, loginTimer("success").count());
+    assertEquals(0, loginTimer("failure").count());
+
+    Timer duration = registry.find(SamlLoginWarmup.DURATION).tag("registration", "webmvc").timer();
+    assertNotNull(duration);
+    assertEquals(1, duration.count());
+  }
+
+  @Test
+  public void throwawayUserIsRemoved() {
+    KeycloakSessionFactory sessionFactory = KeycloakApplication.getSessionFactory();
+    assertNotNull(sessionFactory);
+
+    long warmupUsers =
+        KeycloakModelUtils.runJobInTransactionWithResult(sessionFactory, (session) -> {
+          RealmModel realm = session.realms().getRealmByName("webmvc");
+          return session.users().searchForUserStream(realm, Map.of(UserModel.SEARCH, "warmup-*"))
+              .count();
+        });
+    assertEquals(0, warmupUsers);
+  }
+
+  private Timer loginTimer(String outcome) {
+    Timer timer = registry.find(SamlLoginWarmup.LOGIN).tag("registration", "webmvc")
+        .tag("outcome", outcome).timer();
+    assertNotNull(timer, "No " + outcome + " timer");
+    return timer;
+  }
+
+}
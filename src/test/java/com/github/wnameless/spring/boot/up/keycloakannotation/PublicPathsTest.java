@@ -0,0 +1,57 @@
+package com.github.wnameless.spring.boot.up.keycloakannotation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.net.http.HttpResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+
+/**
+ * The Keycloak context path and {@code keycloak.plugin.publicPaths} bypass the security filter
+ * chain, while every other path, {@code /} included, still requires a SAML login.
+ */
+@DirtiesContext
+@SpringBootTest(classes = SpringKeycloakPluginAnnotationTestApp.class,
+    webEnvironment = SpringBootTest.WebEnvironment.DEFINED_PORT,
+    properties = {"server.port=18086", "keycloak.plugin.baseUrl=http://localhost:18086",
+        "keycloak.plugin.publicPaths=/public/**,/assets/",
+        "keycloak.connectionsJpa.url=jdbc:h2:mem:pluginPublicPathsTest;DB_CLOSE_DELAY=-1"})
+public class PublicPathsTest {
+
+  static final String BASE = "http://localhost:18086";
+
+  SamlBrowser browser = new SamlBrowser(BASE, SamlBrowser.newHttpClient());
+
+  @Test
+  public void keycloakContextPathBypassesSecurity() throws Exception {
+    HttpResponse<String> res = browser.get(BASE + "/auth/realms/webmvc/protocol/saml/descriptor");
+    assertEquals(200, res.statusCode());
+  }
+
+  @Test
+  public void publicPathBypassesSecurity() throws Exception {
+    HttpResponse<String> res = browser.get(BASE + "/public/hello.txt");
+    assertEquals(200, res.statusCode());
+    assertEquals("public", res.body().trim());
+  }
+
+  @Test
+  public void rootStillRequiresLogin() throws Exception {
+    assertRedirectsToLogin("/");
+  }
+
+  @Test
+  public void pathSharingPrefixTextStillRequiresLogin() throws Exception {
+    assertRedirectsToLogin("/publicity");
+    assertRedirectsToLogin("/authors");
+  }
+
+  private void assertRedirectsToLogin(String path) throws Exception {
+    HttpResponse<String> res = browser.get(BASE + path);
+    assertEquals(302, res.statusCode(), path);
+    String target = browser.location(res);
+    assertTrue(target.contains("/saml2/authenticate"), path + " redirected to " + target);
+  }
+
+}
@@ -0,0 +1,109 @@
+package com.github.wnameless.spring.boot.up.keycloakannotation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static com.github.wnameless.spring.boot.up.keycloakannotation.SamlBrowser.firstMatch;
+import static com.github.wnameless.spring.boot.up.keycloakannotation.SamlBrowser.unescapeHtml;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.keycloak.services.resources.KeycloakApplication;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.realm.RealmUserImporter;
+
+/**
+ * Imports a small CSV and a small NDJSON file into the test realm with {@link RealmUserImporter},
+ * then logs imported users in through the SAML flow.
+ */
+@DirtiesContext
+@SpringBootTest(classes = SpringKeycloakPluginAnnotationTestApp.class,
+    webEnvironment = SpringBootTest.WebEnvironment.DEFINED_PORT,
+    properties = {"server.port=18088", "keycloak.plugin.baseUrl=http://localhost:18088",
+        "keycloak.connectionsJpa.url=jdbc:h2:mem:pluginUserImportTest;DB_CLOSE_DELAY=-1"})
+public class RealmUserImportTest {
+
+  static final String BASE = "http://localhost:18088";
+
+  @TempDir
+  Path dir;
+
+  @Test
+  public void csvUsersCanLogIn() throws Exception {
+    Path csv = dir.resolve("users.csv");
+    Files.writeString(csv, """
+        username,password,email,firstName,lastName
+        csv-alice,alice-secret,csv-alice@example.com,Alice,Csv
+        csv-bob,bob-secret,csv-bob@example.com,Bob,Csv
+        this line has too few values
+        CSV-Alice,other-secret,csv-alice2@example.com,Alice,Again
+        """);
+
+    // Batches of one user on two workers put both spellings of alice in flight at once
+    RealmUserImporter.Result result =
+        new RealmUserImporter(KeycloakApplication.getSessionFactory(), "webmvc", 1, 2)
+            .importUsers(csv);
+
+    assertEquals(2, result.imported());
+    assertEquals(1, result.skipped());
+    assertEquals(0, result.failed());
+    assertEquals(1, result.malformed());
+    login("csv-bob", "bob-secret");
+  }
+
+  @Test
+  public void ndjsonUsersCanLogIn() throws Exception {
+    Path ndjson = dir.resolve("users.ndjson");
+    Files.writeString(ndjson, """
+        {"username":"json-carol","email":"json-carol@example.com","emailVerified":true,\
+        "firstName":"Carol","lastName":"Json","enabled":true,\
+        "credentials":[{"type":"password","value":"carol-secret","temporary":false}]}
+        {"username":
+        {"email":"nobody@example.com"}
+        """);
+
+    RealmUserImporter.Result result = new RealmUserImporter("webmvc").importUsers(ndjson);
+
+    assertEquals(1, result.imported());
+    assertEquals(0, result.skipped());
+    assertEquals(0, result.failed());
+    assertEquals(2, result.malformed());
+    login("json-carol", "carol-secret");
+  }
+
+  private static void login(String username, String password) throws Exception {
+    SamlBrowser browser = new SamlBrowser(BASE, SamlBrowser.newHttpClient());
+    HttpResponse<String> res = browser.get(BASE + "/");
+    assertEquals(302, res.statusCode());
+    res = browser.get(browser.absolute(browser.location(res)));
+    assertEquals(302, res.statusCode());
+
+    res = browser.get(browser.location(res));
+    assertEquals(200, res.statusCode());
+    String loginAction = unescapeHtml(firstMatch(res.body(),
+        "<form[^>]*id=\"kc-form-login\"[^>]*action=\"([^\"]+)\""));
+    assertNotNull(loginAction, "Login form action not found in login page");
+
+    res = browser.postForm(loginAction, Map.of("username", username, "password", password));
+    assertEquals(200, res.statusCode());
+    String acsUrl = unescapeHtml(firstMatch(res.body(), "<form[^>]*action=\"([^\"]+)\""));
+    String samlResponse = unescapeHtml(firstMatch(res.body(),
+        "name=\"SAMLResponse\"[^>]*value=\"([^\"]+)\""));
+    assertNotNull(samlResponse, username + " was not logged in by Keycloak");
+
+    res = browser.postForm(acsUrl, Map.of("SAMLResponse", samlResponse));
+    assertEquals(302, res.statusCode());
+    String target = browser.location(res);
+    assertFalse(target.contains("error"), "Assertion consumer service failed: " + target);
+
+    res = browser.get(browser.absolute(target));
+    assertEquals(200, res.statusCode());
+    assertTrue(res.body().contains("TEST"));
+  }
+
+}
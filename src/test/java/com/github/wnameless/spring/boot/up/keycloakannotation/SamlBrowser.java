@@ -0,0 +1,139 @@
+package com.github.wnameless.spring.boot.up.keycloakannotation;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A minimal browser for replaying the SP-initiated SAML flow: it never follows redirects on its
+ * own, so every hop can be inspected, and it keeps its own cookie jar.
+ *
+ * <p>The {@link HttpClient} is passed in rather than owned, so that the load test can run
+ * thousands of browsers - each with its own cookies, i.e. its own HTTP and Keycloak sessions - over
+ * a single client and its connection pool.
+ */
+class SamlBrowser {
+
+  private final String base;
+  private final HttpClient http;
+  private final Map<String, String> cookies = new LinkedHashMap<>();
+
+  SamlBrowser(String base, HttpClient http) {
+    this.base = base;
+    this.http = http;
+  }
+
+  static HttpClient newHttpClient() {
+    return HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NEVER).build();
+  }
+
+  HttpResponse<String> get(String url) throws Exception {
+    HttpResponse<String> res = http.send(withCookies(HttpRequest.newBuilder(URI.create(url)))
+        .GET().build(), BodyHandlers.ofString());
+    storeCookies(res);
+    return res;
+  }
+
+  HttpResponse<String> postForm(String url, Map<String, String> form) throws Exception {
+    String body = form.entrySet().stream()
+        .map(e -> URLEncoder.encode(e.getKey(), StandardCharsets.UTF_8) + "="
+            + URLEncoder.encode(e.getValue(), StandardCharsets.UTF_8))
+        .collect(Collectors.joining("&"));
+    HttpResponse<String> res = http.send(withCookies(HttpRequest.newBuilder(URI.create(url)))
+        .header("Content-Type", "application/x-www-form-urlencoded")
+        .POST(BodyPublishers.ofString(body)).build(), BodyHandlers.ofString());
+    storeCookies(res);
+    return res;
+  }
+
+  HttpResponse<String> postJson(String url, String bearerToken, String json) throws Exception {
+    return http.send(HttpRequest.newBuilder().uri(URI.create(url))
+        .header("Authorization", "Bearer " + bearerToken)
+        .header("Content-Type", "application/json")
+        .POST(BodyPublishers.ofString(json)).build(), BodyHandlers.ofString());
+  }
+
+  /**
+   * Creates a realm user through the Keycloak admin REST API, as the master realm's admin.
+   *
+   * @return the status of the user creation, 201 or 409 if the user already exists
+   */
+  int createUser(String realm, String username, String password) throws Exception {
+    HttpResponse<String> tokenRes =
+        postForm(base + "/auth/realms/master/protocol/openid-connect/token",
+            Map.of("grant_type", "password", "client_id", "admin-cli", "username", "admin",
+                "password", "admin"));
+    if (tokenRes.statusCode() != 200) {
+      throw new IllegalStateException("Admin token request failed: " + tokenRes.body());
+    }
+    String accessToken =
+        new ObjectMapper().readTree(tokenRes.body()).get("access_token").asText();
+
+    String user = String.format("""
+        {"username":"%s","enabled":true,"firstName":"Test","lastName":"User",
+         "email":"%s@example.com","emailVerified":true,
+         "credentials":[{"type":"password","value":"%s","temporary":false}]}""", username,
+        username, password);
+    return postJson(base + "/auth/admin/realms/" + realm + "/users", accessToken, user)
+        .statusCode();
+  }
+
+  boolean hasCookie(String name) {
+    return cookies.containsKey(name);
+  }
+
+  /**
+   * Forgets a cookie, as a request landing on another node would never have carried it.
+   */
+  void removeCookie(String name) {
+    cookies.remove(name);
+  }
+
+  String location(HttpResponse<String> res) {
+    return res.headers().firstValue("Location").orElseThrow();
+  }
+
+  String absolute(String url) {
+    return url.startsWith("http") ? url : base + url;
+  }
+
+  private HttpRequest.Builder withCookies(HttpRequest.Builder builder) {
+    if (!cookies.isEmpty()) {
+      builder.header("Cookie", cookies.entrySet().stream()
+          .map(e -> e.getKey() + "=" + e.getValue()).collect(Collectors.joining("; ")));
+    }
+    return builder;
+  }
+
+  private void storeCookies(HttpResponse<String> res) {
+    res.headers().allValues("Set-Cookie").forEach(c -> {
+      String pair = c.split(";", 2)[0];
+      int eq = pair.indexOf('=');
+      if (eq > 0) cookies.put(pair.substring(0, eq).trim(), pair.substring(eq + 1).trim());
+    });
+  }
+
+  static String firstMatch(String text, String regex) {
+    Matcher m = Pattern.compile(regex, Pattern.DOTALL).matcher(text);
+    return m.find() ? m.group(1) : null;
+  }
+
+  static String unescapeHtml(String s) {
+    if (s == null) return null;
+    return s.replace("&amp;", "&").replace("&quot;", "\"").replace("&lt;", "<")
+        .replace("&gt;", ">").replace("&#39;", "'").replace("&#43;", "+").replace("&#47;", "/")
+        .replace("&#61;", "=");
+  }
+
+}
@@ -0,0 +1,71 @@
+package com.github.wnameless.spring.boot.up.keycloakannotation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static com.github.wnameless.spring.boot.up.keycloakannotation.SamlBrowser.firstMatch;
+import static com.github.wnameless.spring.boot.up.keycloakannotation.SamlBrowser.unescapeHtml;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.web.CookieSaml2AuthenticationRequestRepository;
+
+/**
+ * The SAML login flow of {@link SamlLoginFlowTest} with {@code keycloak.plugin.hosts} and
+ * {@code keycloak.plugin.authnRequestStore=cookie} together: the per-host authentication converter
+ * must load the AuthnRequest from the cookie, not from the HTTP session. The session cookie is
+ * dropped before the SAMLResponse is posted, as it would be on another node without sticky
+ * sessions.
+ */
+@DirtiesContext
+@SpringBootTest(classes = SpringKeycloakPluginAnnotationTestApp.class,
+    webEnvironment = SpringBootTest.WebEnvironment.DEFINED_PORT,
+    properties = {"server.port=18083", "keycloak.plugin.baseUrl=http://localhost:18083",
+        "keycloak.plugin.hosts=localhost", "keycloak.plugin.authnRequestStore=cookie",
+        "keycloak.connectionsJpa.url=jdbc:h2:mem:pluginSamlHostCookieTest;DB_CLOSE_DELAY=-1"})
+public class SamlLoginHostCookieTest {
+
+  static final String BASE = "http://localhost:18083";
+
+  SamlBrowser browser = new SamlBrowser(BASE, SamlBrowser.newHttpClient());
+
+  @Test
+  public void samlLoginSucceedsWithoutHttpSession() throws Exception {
+    int status = browser.createUser("webmvc", "tester", "secret");
+    assertTrue(status == 201 || status == 409, "User creation failed: " + status);
+
+    HttpResponse<String> res = browser.get(BASE + "/");
+    assertEquals(302, res.statusCode());
+    res = browser.get(browser.absolute(browser.location(res)));
+    assertEquals(302, res.statusCode());
+    assertTrue(browser.hasCookie(CookieSaml2AuthenticationRequestRepository.COOKIE_NAME),
+        "AuthnRequest was not kept in a cookie");
+
+    res = browser.get(browser.location(res));
+    assertEquals(200, res.statusCode());
+    String loginAction = unescapeHtml(firstMatch(res.body(),
+        "<form[^>]*id=\"kc-form-login\"[^>]*action=\"([^\"]+)\""));
+    assertNotNull(loginAction, "Login form action not found in login page");
+
+    res = browser.postForm(loginAction, Map.of("username", "tester", "password", "secret"));
+    assertEquals(200, res.statusCode());
+    String acsUrl = unescapeHtml(firstMatch(res.body(), "<form[^>]*action=\"([^\"]+)\""));
+    String samlResponse = unescapeHtml(firstMatch(res.body(),
+        "name=\"SAMLResponse\"[^>]*value=\"([^\"]+)\""));
+    assertNotNull(samlResponse, "SAMLResponse not found in post-binding page");
+
+    browser.removeCookie("JSESSIONID");
+    res = browser.postForm(acsUrl, Map.of("SAMLResponse", samlResponse));
+    assertEquals(302, res.statusCode());
+    String target = browser.location(res);
+    assertFalse(target.contains("error"), "Assertion consumer service failed: " + target);
+
+    res = browser.get(browser.absolute(target));
+    assertEquals(200, res.statusCode());
+    assertTrue(res.body().contains("TEST"));
+  }
+
+}
@@ -0,0 +1,208 @@
+package com.github.wnameless.spring.boot.up.keycloakannotation;
+
+import static com.github.wnameless.spring.boot.up.keycloakannotation.SamlBrowser.firstMatch;
+import static com.github.wnameless.spring.boot.up.keycloakannotation.SamlBrowser.unescapeHtml;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.StringReader;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.realm.RealmUserImporter;
+
+/**
+ * Concurrent load test of the SP-initiated SAML login flow replayed by {@link SamlLoginFlowTest}.
+ *
+ * <p>Thousands of users are seeded into the embedded realm, then every one of them logs in at the
+ * same time from its own simulated browser - its own cookie jar and its own thread, virtual when
+ * the JVM has them. Each hop of the flow is a stage with its own latency histogram:
+ * <ol>
+ *   <li>protected page, redirected into the SAML flow</li>
+ *   <li>{@code /saml2/authenticate}, where the SP builds and signs the AuthnRequest</li>
+ *   <li>the Keycloak login form</li>
+ *   <li>the credential post, answered with the SAMLResponse auto-post page</li>
+ *   <li>the SAMLResponse post to the assertion consumer service</li>
+ *   <li>the protected page, now authenticated</li>
+ * </ol>
+ *
+ * <p>Disabled unless {@code loadtest.users} is set, so a regular build never pays for it:
+ *
+ * <pre>
+ * mvn test -Dtest=SamlLoginLoadTest -Dloadtest.users=2000
+ * </pre>
+ *
+ * <p>The report lists p50/p90/p99/max per stage plus completed logins per second. Failed logins are
+ * counted rather than failing the run, because finding the point where Tomcat or the embedded
+ * Keycloak saturates is the purpose of the exercise.
+ */
+@EnabledIfSystemProperty(named = "loadtest.users", matches = "\\d+")
+@SpringBootTest(classes = SpringKeycloakPluginAnnotationTestApp.class,
+    webEnvironment = SpringBootTest.WebEnvironment.DEFINED_PORT,
+    properties = {"server.port=18082", "keycloak.plugin.baseUrl=http://localhost:18082",
+        "keycloak.connectionsJpa.url=jdbc:h2:mem:pluginSamlLoadTest;DB_CLOSE_DELAY=-1"})
+public class SamlLoginLoadTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SamlLoginLoadTest.class);
+
+  static final String BASE = "http://localhost:18082";
+  static final String PASSWORD = "secret";
+
+  enum Stage {
+    PROTECTED_PAGE, AUTHN_REQUEST, LOGIN_FORM, CREDENTIALS, ACS, AUTHENTICATED_PAGE
+  }
+
+  @FunctionalInterface
+  interface Step {
+    HttpResponse<String> call() throws Exception;
+  }
+
+  HttpClient http = SamlBrowser.newHttpClient();
+  Map<Stage, Histogram> histograms = new EnumMap<>(Stage.class);
+
+  @Test
+  public void concurrentSamlLogins() throws Exception {
+    int users = Integer.getInteger("loadtest.users");
+    for (Stage stage : Stage.values()) {
+      histograms.put(stage, new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(5), 3));
+    }
+    List<String> usernames = IntStream.rangeClosed(1, users)
+        .mapToObj(i -> String.format("loadtest-%06d", i)).toList();
+    seedUsers(usernames);
+
+    CountDownLatch startGate = new CountDownLatch(1);
+    List<Future<Boolean>> logins = new ArrayList<>(users);
+    ExecutorService browsers = newBrowserExecutor();
+    long succeeded = 0;
+    long elapsedNanos;
+    try {
+      for (String username : usernames) {
+        logins.add(browsers.submit(() -> {
+          startGate.await();
+          return login(new SamlBrowser(BASE, http), username);
+        }));
+      }
+      long start = System.nanoTime();
+      startGate.countDown();
+      for (Future<Boolean> login : logins) {
+        if (login.get()) succeeded++;
+      }
+      elapsedNanos = System.nanoTime() - start;
+    } finally {
+      browsers.shutdownNow();
+    }
+
+    report(users, succeeded, elapsedNanos);
+    assertTrue(succeeded > 0, "No login succeeded out of " + users);
+  }
+
+  /**
+   * Replays one complete login, recording every stage.
+   *
+   * @return whether the login reached the authenticated page
+   */
+  private boolean login(SamlBrowser browser, String username) {
+    try {
+      HttpResponse<String> res = timed(Stage.PROTECTED_PAGE, () -> browser.get(BASE + "/"));
+      String authenticateUrl = browser.absolute(browser.location(expect(res, 302)));
+
+      res = timed(Stage.AUTHN_REQUEST, () -> browser.get(authenticateUrl));
+      String idpUrl = browser.location(expect(res, 302));
+
+      res = timed(Stage.LOGIN_FORM, () -> browser.get(idpUrl));
+      String loginAction = unescapeHtml(firstMatch(expect(res, 200).body(),
+          "<form[^>]*id=\"kc-form-login\"[^>]*action=\"([^\"]+)\""));
+
+      res = timed(Stage.CREDENTIALS, () -> browser.postForm(loginAction,
+          Map.of("username", username, "password", PASSWORD)));
+      String body = expect(res, 200).body();
+      String acsUrl = unescapeHtml(firstMatch(body, "<form[^>]*action=\"([^\"]+)\""));
+      String samlResponse =
+          unescapeHtml(firstMatch(body, "name=\"SAMLResponse\"[^>]*value=\"([^\"]+)\""));
+
+      res = timed(Stage.ACS,
+          () -> browser.postForm(acsUrl, Map.of("SAMLResponse", samlResponse)));
+      String targetUrl = browser.absolute(browser.location(expect(res, 302)));
+
+      res = timed(Stage.AUTHENTICATED_PAGE, () -> browser.get(targetUrl));
+      expect(res, 200);
+      return true;
+    } catch (Exception e) {
+      LOG.debug("Login of " + username + " failed", e);
+      return false;
+    }
+  }
+
+  private HttpResponse<String> timed(Stage stage, Step step) throws Exception {
+    long start = System.nanoTime();
+    HttpResponse<String> res = step.call();
+    histograms.get(stage).recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+    return res;
+  }
+
+  private static HttpResponse<String> expect(HttpResponse<String> res, int status) {
+    if (res.statusCode() != status) {
+      throw new IllegalStateException(
+          "Expected " + status + " but got " + res.statusCode() + " from " + res.uri());
+    }
+    return res;
+  }
+
+  /**
+   * Seeds the users in-process with {@link RealmUserImporter}: batched transactions on parallel
+   * workers, and the shared password hashed once rather than once per user.
+   */
+  private void seedUsers(List<String> usernames) throws Exception {
+    String csv = usernames.stream()
+        .map(username -> username + "," + PASSWORD + "," + username + "@example.com,Load,Test")
+        .collect(Collectors.joining("\n", "username,password,email,firstName,lastName\n", "\n"));
+    RealmUserImporter.Result result = new RealmUserImporter("webmvc")
+        .importUsers(new StringReader(csv), RealmUserImporter.Format.CSV);
+    assertEquals(0, result.failed(), "User seeding failed: " + result);
+    LOG.info("Seeded " + result.imported() + " users in " + result.millis() + " ms");
+  }
+
+  private void report(int users, long succeeded, long elapsedNanos) {
+    double seconds = elapsedNanos / 1e9;
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("%n%d logins, %d succeeded, %d failed in %.1f s: %.1f logins/s%n",
+        users, succeeded, users - succeeded, seconds, succeeded / seconds));
+    sb.append(String.format("%-20s %8s %10s %10s %10s %10s%n", "stage (ms)", "count", "p50",
+        "p90", "p99", "max"));
+    histograms.forEach((stage, h) -> sb.append(String.format(
+        "%-20s %8d %10.1f %10.1f %10.1f %10.1f%n", stage, h.getTotalCount(),
+        h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(90) / 1000.0,
+        h.getValueAtPercentile(99) / 1000.0, h.getMaxValue() / 1000.0)));
+    LOG.info(sb.toString());
+  }
+
+  /**
+   * One thread per simulated browser: a virtual thread where the JVM offers them (Java 21+),
+   * otherwise a platform thread. The lookup is reflective because the project compiles for Java 17.
+   */
+  private static ExecutorService newBrowserExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool();
+    }
+  }
+
+}
@@ -0,0 +1,134 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.authentication;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.saml2.core.Saml2ErrorCodes;
+import org.springframework.security.saml2.core.Saml2X509Credential;
+import org.springframework.security.saml2.provider.service.authentication.OpenSaml4AuthenticationProvider;
+import org.springframework.security.saml2.provider.service.authentication.Saml2AuthenticationException;
+import org.springframework.security.saml2.provider.service.authentication.Saml2AuthenticationToken;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.bootstrap.SelfSignedX509Certificate;
+
+/**
+ * Runs {@link AssertionReplayValidator} inside a real {@link OpenSaml4AuthenticationProvider}, so
+ * that only SAMLResponses the provider fully validated get their assertion IDs recorded.
+ */
+public class AssertionReplayValidatorTest {
+
+  static final String BASE_URL = "http://localhost:8080";
+  static final String REALM_NAME = "webmvc";
+  static final String CLIENT_ID = "webmvc-app";
+  static final String IDP_ENTITY_ID = BASE_URL + "/auth/realms/" + REALM_NAME;
+  static final String ACS_LOCATION = BASE_URL + "/login/saml2/sso/" + REALM_NAME;
+
+  static SelfSignedX509Certificate keycloak;
+  static RelyingPartyRegistration registration;
+
+  InMemoryAssertionReplayCache cache;
+  List<Instant> recordedExpiries;
+  OpenSaml4AuthenticationProvider provider;
+
+  @BeforeAll
+  static void setUpRegistration() throws Exception {
+    OpenSamlParserPool.install(OpenSamlParserPool.DEFAULT_SIZE);
+    keycloak = new SelfSignedX509Certificate(REALM_NAME, 1);
+    registration = RelyingPartyRegistration //
+        .withRegistrationId(REALM_NAME) //
+        .entityId(CLIENT_ID) //
+        .assertionConsumerServiceLocation(ACS_LOCATION)
+        .assertingPartyMetadata((metadata) -> {
+          metadata.entityId(IDP_ENTITY_ID);
+          metadata.singleSignOnServiceLocation(IDP_ENTITY_ID + "/protocol/saml");
+          metadata.verificationX509Credentials(
+              (c) -> c.add(Saml2X509Credential.verification(keycloak.getCertificate())));
+        }).build();
+  }
+
+  @BeforeEach
+  void setUpProvider() {
+    cache = new InMemoryAssertionReplayCache(100);
+    recordedExpiries = new ArrayList<>();
+    AssertionReplayCache recordingCache = (assertionId, expiresAt) -> {
+      recordedExpiries.add(expiresAt);
+      return cache.putIfAbsent(assertionId, expiresAt);
+    };
+    provider = new OpenSaml4AuthenticationProvider();
+    provider.setResponseAuthenticationConverter(new AssertionReplayValidator(
+        OpenSaml4AuthenticationProvider.createDefaultResponseAuthenticationConverter(),
+        recordingCache, AssertionReplayValidator.MAX_LIFETIME, Clock.systemUTC()));
+  }
+
+  @Test
+  public void signedResponseIsAcceptedOnceThenRejectedAsReplay() throws Exception {
+    String samlResponse = response(Instant.now().plus(Duration.ofMinutes(1)), true);
+
+    assertNotNull(provider.authenticate(new Saml2AuthenticationToken(registration, samlResponse)));
+    assertEquals(1, cache.size());
+
+    Saml2AuthenticationException e = assertThrows(Saml2AuthenticationException.class,
+        () -> provider.authenticate(new Saml2AuthenticationToken(registration, samlResponse)));
+    assertEquals(Saml2ErrorCodes.INVALID_ASSERTION, e.getSaml2Error().getErrorCode());
+    assertTrue(e.getSaml2Error().getDescription().contains("already been used"));
+  }
+
+  @Test
+  public void unsignedResponseIsNeverRecorded() throws Exception {
+    String forged = response(Instant.parse("2100-01-01T00:00:00Z"), false);
+
+    for (int i = 0; i < 3; i++) {
+      assertThrows(Saml2AuthenticationException.class,
+          () -> provider.authenticate(new Saml2AuthenticationToken(registration, forged)));
+    }
+    assertTrue(recordedExpiries.isEmpty());
+    assertEquals(0, cache.size());
+
+    String genuine = response(Instant.now().plus(Duration.ofMinutes(1)), true);
+    assertNotNull(provider.authenticate(new Saml2AuthenticationToken(registration, genuine)));
+  }
+
+  @Test
+  public void expiryIsCappedAtMaxLifetime() throws Exception {
+    String samlResponse = response(Instant.parse("2100-01-01T00:00:00Z"), true);
+
+    Instant before = Instant.now();
+    provider.authenticate(new Saml2AuthenticationToken(registration, samlResponse));
+    Instant after = Instant.now();
+
+    assertEquals(1, recordedExpiries.size());
+    Instant expiresAt = recordedExpiries.get(0);
+    Duration kept = AssertionReplayValidator.MAX_LIFETIME.plus(AssertionReplayValidator.CLOCK_SKEW);
+    assertFalse(expiresAt.isBefore(before.plus(kept)));
+    assertFalse(expiresAt.isAfter(after.plus(kept)));
+  }
+
+  @Test
+  public void expiryFollowsShorterNotOnOrAfter() throws Exception {
+    Instant notOnOrAfter = Instant.now().plus(Duration.ofMinutes(2));
+    String samlResponse = response(notOnOrAfter, true);
+
+    provider.authenticate(new Saml2AuthenticationToken(registration, samlResponse));
+
+    // The fixture serializes NotOnOrAfter with millisecond precision
+    Instant expected = notOnOrAfter.plus(AssertionReplayValidator.CLOCK_SKEW);
+    Instant expiresAt = recordedExpiries.get(0);
+    assertTrue(Duration.between(expiresAt, expected).abs().toMillis() < 1);
+  }
+
+  private static String response(Instant notOnOrAfter, boolean signed) throws Exception {
+    return SamlResponseFixture.response(keycloak, IDP_ENTITY_ID, CLIENT_ID, ACS_LOCATION,
+        "tester", notOnOrAfter, signed);
+  }
+
+}
@@ -0,0 +1,117 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.authentication;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests of {@link InMemoryAssertionReplayCache}: replays, expiry and a full cache.
+ */
+public class InMemoryAssertionReplayCacheTest {
+
+  MutableClock clock = new MutableClock(Instant.parse("2026-01-01T00:00:00Z"));
+
+  @Test
+  public void secondPutOfLiveIdIsReplay() {
+    InMemoryAssertionReplayCache cache = new InMemoryAssertionReplayCache(10, clock);
+    Instant expiresAt = clock.instant().plus(Duration.ofMinutes(5));
+
+    assertTrue(cache.putIfAbsent("ID_1", expiresAt));
+    assertFalse(cache.putIfAbsent("ID_1", expiresAt));
+    assertTrue(cache.putIfAbsent("ID_2", expiresAt));
+    assertEquals(2, cache.size());
+  }
+
+  @Test
+  public void expiredIdIsAcceptedAgain() {
+    InMemoryAssertionReplayCache cache = new InMemoryAssertionReplayCache(10, clock);
+    Instant expiresAt = clock.instant().plus(Duration.ofMinutes(5));
+    assertTrue(cache.putIfAbsent("ID_1", expiresAt));
+
+    clock.advance(Duration.ofMinutes(4));
+    assertFalse(cache.putIfAbsent("ID_1", expiresAt));
+
+    clock.advance(Duration.ofMinutes(1));
+    assertTrue(cache.putIfAbsent("ID_1", clock.instant().plus(Duration.ofMinutes(5))));
+    assertFalse(cache.putIfAbsent("ID_1", expiresAt));
+  }
+
+  @Test
+  public void fullCacheSweepsExpiredIdsFirst() {
+    InMemoryAssertionReplayCache cache = new InMemoryAssertionReplayCache(10, clock);
+    for (int i = 0; i < 10; i++) {
+      Duration lifetime = Duration.ofMinutes(i < 5 ? 1 : 10);
+      assertTrue(cache.putIfAbsent("ID_" + i, clock.instant().plus(lifetime)));
+    }
+
+    clock.advance(Duration.ofMinutes(2));
+    assertTrue(cache.putIfAbsent("ID_NEW", clock.instant().plus(Duration.ofMinutes(5))));
+    assertEquals(6, cache.size());
+    for (int i = 5; i < 10; i++) {
+      assertFalse(cache.putIfAbsent("ID_" + i, clock.instant().plus(Duration.ofMinutes(10))));
+    }
+  }
+
+  @Test
+  public void fullCacheOfLiveIdsEvictsClosestToExpiryInsteadOfRefusing() {
+    InMemoryAssertionReplayCache cache = new InMemoryAssertionReplayCache(20, clock);
+    for (int i = 0; i < 20; i++) {
+      assertTrue(cache.putIfAbsent("ID_" + i, clock.instant().plus(Duration.ofMinutes(i + 1))));
+    }
+
+    assertTrue(cache.putIfAbsent("ID_NEW", clock.instant().plus(Duration.ofMinutes(5))));
+    // A tenth of 20, the two closest to expiry, made room
+    assertEquals(19, cache.size());
+    assertTrue(cache.putIfAbsent("ID_0", clock.instant().plus(Duration.ofMinutes(5))));
+    assertFalse(cache.putIfAbsent("ID_2", clock.instant().plus(Duration.ofMinutes(5))));
+    assertFalse(cache.putIfAbsent("ID_19", clock.instant().plus(Duration.ofMinutes(5))));
+    assertFalse(cache.putIfAbsent("ID_NEW", clock.instant().plus(Duration.ofMinutes(5))));
+  }
+
+  @Test
+  public void farFutureExpiriesCannotLockOutLogins() {
+    InMemoryAssertionReplayCache cache = new InMemoryAssertionReplayCache(100, clock);
+    Instant year2100 = Instant.parse("2100-01-01T00:00:00Z");
+    for (int i = 0; i < 1000; i++) {
+      cache.putIfAbsent("FORGED_" + i, year2100);
+    }
+
+    assertTrue(cache.putIfAbsent("ID_REAL", clock.instant().plus(Duration.ofMinutes(5))));
+  }
+
+  static class MutableClock extends Clock {
+
+    private Instant now;
+
+    MutableClock(Instant now) {
+      this.now = now;
+    }
+
+    void advance(Duration duration) {
+      now = now.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+
+  }
+
+}
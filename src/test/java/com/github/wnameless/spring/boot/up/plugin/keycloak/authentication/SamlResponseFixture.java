@@ -0,0 +1,215 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.authentication;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import javax.xml.namespace.QName;
+import org.opensaml.core.xml.XMLObject;
+import org.opensaml.core.xml.config.XMLObjectProviderRegistrySupport;
+import org.opensaml.core.xml.schema.XSString;
+import org.opensaml.core.xml.util.XMLObjectSupport;
+import org.opensaml.saml.saml2.core.Assertion;
+import org.opensaml.saml.saml2.core.Attribute;
+import org.opensaml.saml.saml2.core.AttributeStatement;
+import org.opensaml.saml.saml2.core.AttributeValue;
+import org.opensaml.saml.saml2.core.Audience;
+import org.opensaml.saml.saml2.core.AudienceRestriction;
+import org.opensaml.saml.saml2.core.AuthnContext;
+import org.opensaml.saml.saml2.core.AuthnContextClassRef;
+import org.opensaml.saml.saml2.core.AuthnStatement;
+import org.opensaml.saml.saml2.core.Conditions;
+import org.opensaml.saml.saml2.core.Issuer;
+import org.opensaml.saml.saml2.core.NameID;
+import org.opensaml.saml.saml2.core.Response;
+import org.opensaml.saml.saml2.core.Status;
+import org.opensaml.saml.saml2.core.StatusCode;
+import org.opensaml.saml.saml2.core.Subject;
+import org.opensaml.saml.saml2.core.SubjectConfirmation;
+import org.opensaml.saml.saml2.core.SubjectConfirmationData;
+import org.opensaml.security.credential.CredentialSupport;
+import org.opensaml.xmlsec.SignatureSigningParameters;
+import org.opensaml.xmlsec.signature.support.SignatureConstants;
+import org.opensaml.xmlsec.signature.support.SignatureSupport;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.bootstrap.SelfSignedX509Certificate;
+import net.shibboleth.utilities.java.support.xml.SerializeSupport;
+
+/**
+ * Builds SAMLResponses shaped like the ones the bundled realm template makes Keycloak send.
+ *
+ * <p>The realm's SAML client sets {@code saml.server.signature} but neither
+ * {@code saml.assertion.signature} nor {@code saml.encrypt}, so the response document is signed
+ * with RSA_SHA256 and exclusive canonicalization while the assertion inside it is neither signed
+ * nor encrypted. Reproducing that shape matters: verifying one document signature is a different
+ * cost from verifying two, or from decrypting first.
+ *
+ * <p>Shared by the SAML login benchmarks and the tests of the plugin's authentication components.
+ *
+ * @author Wei-Ming Wu
+ * @since 26.7.3.1
+ */
+public final class SamlResponseFixture {
+
+  private SamlResponseFixture() {}
+
+  /**
+   * Builds, signs and Base64 encodes an unsolicited SAMLResponse for one user.
+   *
+   * @param idp the key pair standing in for the realm signing key
+   * @param idpEntityId the realm entity ID, used as issuer
+   * @param spEntityId the SAML client ID, used as audience
+   * @param acsLocation the assertion consumer service location, used as destination and recipient
+   * @param username the NameID value
+   * @return the Base64 encoded SAMLResponse, as posted to the assertion consumer service
+   * @throws Exception if the response cannot be signed or serialized
+   */
+  public static String signedResponse(SelfSignedX509Certificate idp, String idpEntityId,
+      String spEntityId, String acsLocation, String username) throws Exception {
+    // Far enough ahead that a long benchmark run never sees the assertion expire
+    return response(idp, idpEntityId, spEntityId, acsLocation, username,
+        Instant.now().plus(Duration.ofDays(1)), true);
+  }
+
+  /**
+   * Builds and Base64 encodes an unsolicited SAMLResponse for one user, signed or not.
+   *
+   * @param idp the key pair standing in for the realm signing key
+   * @param idpEntityId the realm entity ID, used as issuer
+   * @param spEntityId the SAML client ID, used as audience
+   * @param acsLocation the assertion consumer service location, used as destination and recipient
+   * @param username the NameID value
+   * @param notOnOrAfter the end of the validity of the assertion's conditions and confirmation
+   * @param signed whether the response document is signed
+   * @return the Base64 encoded SAMLResponse, as posted to the assertion consumer service
+   * @throws Exception if the response cannot be signed or serialized
+   */
+  public static String response(SelfSignedX509Certificate idp, String idpEntityId,
+      String spEntityId, String acsLocation, String username, Instant notOnOrAfter,
+      boolean signed) throws Exception {
+    return response(idp, idpEntityId, spEntityId, acsLocation, username, notOnOrAfter, signed,
+        Map.of());
+  }
+
+  /**
+   * Builds and Base64 encodes an unsolicited SAMLResponse for one user whose assertion carries
+   * attributes, as Keycloak's {@code role_list} mapper adds a {@code Role} attribute.
+   *
+   * @param idp the key pair standing in for the realm signing key
+   * @param idpEntityId the realm entity ID, used as issuer
+   * @param spEntityId the SAML client ID, used as audience
+   * @param acsLocation the assertion consumer service location, used as destination and recipient
+   * @param username the NameID value
+   * @param notOnOrAfter the end of the validity of the assertion's conditions and confirmation
+   * @param signed whether the response document is signed
+   * @param attributes the string values of each attribute; none adds no attribute statement
+   * @return the Base64 encoded SAMLResponse, as posted to the assertion consumer service
+   * @throws Exception if the response cannot be signed or serialized
+   */
+  public static String response(SelfSignedX509Certificate idp, String idpEntityId,
+      String spEntityId, String acsLocation, String username, Instant notOnOrAfter,
+      boolean signed, Map<String, List<String>> attributes) throws Exception {
+    Instant now = Instant.now();
+
+    NameID nameId = build(NameID.DEFAULT_ELEMENT_NAME);
+    nameId.setValue(username);
+    nameId.setFormat(NameID.UNSPECIFIED);
+    SubjectConfirmationData confirmationData =
+        build(SubjectConfirmationData.DEFAULT_ELEMENT_NAME);
+    confirmationData.setRecipient(acsLocation);
+    confirmationData.setNotOnOrAfter(notOnOrAfter);
+    SubjectConfirmation confirmation = build(SubjectConfirmation.DEFAULT_ELEMENT_NAME);
+    confirmation.setMethod(SubjectConfirmation.METHOD_BEARER);
+    confirmation.setSubjectConfirmationData(confirmationData);
+    Subject subject = build(Subject.DEFAULT_ELEMENT_NAME);
+    subject.setNameID(nameId);
+    subject.getSubjectConfirmations().add(confirmation);
+
+    Audience audience = build(Audience.DEFAULT_ELEMENT_NAME);
+    audience.setURI(spEntityId);
+    AudienceRestriction audienceRestriction = build(AudienceRestriction.DEFAULT_ELEMENT_NAME);
+    audienceRestriction.getAudiences().add(audience);
+    Conditions conditions = build(Conditions.DEFAULT_ELEMENT_NAME);
+    conditions.setNotBefore(now.minus(Duration.ofMinutes(1)));
+    conditions.setNotOnOrAfter(notOnOrAfter);
+    conditions.getAudienceRestrictions().add(audienceRestriction);
+
+    AuthnContextClassRef classRef = build(AuthnContextClassRef.DEFAULT_ELEMENT_NAME);
+    classRef.setURI(AuthnContext.UNSPECIFIED_AUTHN_CTX);
+    AuthnContext authnContext = build(AuthnContext.DEFAULT_ELEMENT_NAME);
+    authnContext.setAuthnContextClassRef(classRef);
+    AuthnStatement authnStatement = build(AuthnStatement.DEFAULT_ELEMENT_NAME);
+    authnStatement.setAuthnInstant(now);
+    authnStatement.setSessionIndex(UUID.randomUUID().toString());
+    authnStatement.setAuthnContext(authnContext);
+
+    Assertion assertion = build(Assertion.DEFAULT_ELEMENT_NAME);
+    assertion.setID("ID_" + UUID.randomUUID());
+    assertion.setIssueInstant(now);
+    assertion.setIssuer(issuer(idpEntityId));
+    assertion.setSubject(subject);
+    assertion.setConditions(conditions);
+    assertion.getAuthnStatements().add(authnStatement);
+    if (!attributes.isEmpty()) {
+      AttributeStatement attributeStatement = build(AttributeStatement.DEFAULT_ELEMENT_NAME);
+      attributes.forEach((name, values) -> {
+        Attribute attribute = build(Attribute.DEFAULT_ELEMENT_NAME);
+        attribute.setName(name);
+        values.forEach((value) -> attribute.getAttributeValues().add(stringValue(value)));
+        attributeStatement.getAttributes().add(attribute);
+      });
+      assertion.getAttributeStatements().add(attributeStatement);
+    }
+
+    StatusCode statusCode = build(StatusCode.DEFAULT_ELEMENT_NAME);
+    statusCode.setValue(StatusCode.SUCCESS);
+    Status status = build(Status.DEFAULT_ELEMENT_NAME);
+    status.setStatusCode(statusCode);
+
+    Response response = build(Response.DEFAULT_ELEMENT_NAME);
+    response.setID("ID_" + UUID.randomUUID());
+    response.setIssueInstant(now);
+    response.setDestination(acsLocation);
+    response.setIssuer(issuer(idpEntityId));
+    response.setStatus(status);
+    response.getAssertions().add(assertion);
+
+    if (signed) {
+      SignatureSigningParameters parameters = new SignatureSigningParameters();
+      parameters.setSigningCredential(CredentialSupport
+          .getSimpleCredential(idp.getCertificate(), idp.getKeyPair().getPrivate()));
+      parameters.setSignatureAlgorithm(SignatureConstants.ALGO_ID_SIGNATURE_RSA_SHA256);
+      parameters.setSignatureReferenceDigestMethod(SignatureConstants.ALGO_ID_DIGEST_SHA256);
+      parameters.setSignatureCanonicalizationAlgorithm(
+          SignatureConstants.ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
+      SignatureSupport.signObject(response, parameters);
+    } else {
+      XMLObjectSupport.marshall(response);
+    }
+
+    String xml = SerializeSupport.nodeToString(response.getDOM());
+    return Base64.getEncoder().encodeToString(xml.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static Issuer issuer(String entityId) {
+    Issuer issuer = build(Issuer.DEFAULT_ELEMENT_NAME);
+    issuer.setValue(entityId);
+    return issuer;
+  }
+
+  private static XSString stringValue(String value) {
+    XSString string = (XSString) XMLObjectProviderRegistrySupport.getBuilderFactory()
+        .getBuilderOrThrow(XSString.TYPE_NAME)
+        .buildObject(AttributeValue.DEFAULT_ELEMENT_NAME, XSString.TYPE_NAME);
+    string.setValue(value);
+    return string;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T extends XMLObject> T build(QName elementName) {
+    return (T) XMLObjectSupport.buildXMLObject(elementName);
+  }
+
+}
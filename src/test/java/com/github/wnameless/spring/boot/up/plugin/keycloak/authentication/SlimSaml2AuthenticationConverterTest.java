@@ -0,0 +1,122 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.authentication;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.saml2.core.Saml2X509Credential;
+import org.springframework.security.saml2.provider.service.authentication.OpenSaml4AuthenticationProvider;
+import org.springframework.security.saml2.provider.service.authentication.Saml2AuthenticatedPrincipal;
+import org.springframework.security.saml2.provider.service.authentication.Saml2Authentication;
+import org.springframework.security.saml2.provider.service.authentication.Saml2AuthenticationToken;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.bootstrap.SelfSignedX509Certificate;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Runs {@link SlimSaml2AuthenticationConverter} inside a real
+ * {@link OpenSaml4AuthenticationProvider} and compares its authentications with the ones of the
+ * default converter.
+ */
+public class SlimSaml2AuthenticationConverterTest {
+
+  static final String BASE_URL = "http://localhost:8080";
+  static final String REALM_NAME = "webmvc";
+  static final String CLIENT_ID = "webmvc-app";
+  static final String IDP_ENTITY_ID = BASE_URL + "/auth/realms/" + REALM_NAME;
+  static final String ACS_LOCATION = BASE_URL + "/login/saml2/sso/" + REALM_NAME;
+
+  static SelfSignedX509Certificate keycloak;
+  static RelyingPartyRegistration registration;
+
+  SimpleMeterRegistry registry;
+  OpenSaml4AuthenticationProvider defaultProvider;
+  OpenSaml4AuthenticationProvider slimProvider;
+
+  @BeforeAll
+  static void setUpRegistration() throws Exception {
+    OpenSamlParserPool.install(OpenSamlParserPool.DEFAULT_SIZE);
+    keycloak = new SelfSignedX509Certificate(REALM_NAME, 1);
+    registration = RelyingPartyRegistration //
+        .withRegistrationId(REALM_NAME) //
+        .entityId(CLIENT_ID) //
+        .assertionConsumerServiceLocation(ACS_LOCATION)
+        .assertingPartyMetadata((metadata) -> {
+          metadata.entityId(IDP_ENTITY_ID);
+          metadata.singleSignOnServiceLocation(IDP_ENTITY_ID + "/protocol/saml");
+          metadata.verificationX509Credentials(
+              (c) -> c.add(Saml2X509Credential.verification(keycloak.getCertificate())));
+        }).build();
+  }
+
+  @BeforeEach
+  void setUpProviders() {
+    registry = new SimpleMeterRegistry();
+    defaultProvider = new OpenSaml4AuthenticationProvider();
+    slimProvider = new OpenSaml4AuthenticationProvider();
+    slimProvider.setResponseAuthenticationConverter(new SlimSaml2AuthenticationConverter(
+        OpenSaml4AuthenticationProvider.createDefaultResponseAuthenticationConverter(),
+        registry));
+  }
+
+  @Test
+  public void responseIsOmittedWhilePrincipalAndAuthoritiesSurvive() throws Exception {
+    String samlResponse = response();
+
+    Saml2Authentication full = authenticate(defaultProvider, samlResponse);
+    Saml2Authentication slim = authenticate(slimProvider, samlResponse);
+
+    assertEquals(samlResponse, full.getSaml2Response());
+    assertEquals(SlimSaml2AuthenticationConverter.OMITTED_RESPONSE, slim.getSaml2Response());
+    assertEquals(full.getAuthorities(), slim.getAuthorities());
+
+    Saml2AuthenticatedPrincipal expected = (Saml2AuthenticatedPrincipal) full.getPrincipal();
+    Saml2AuthenticatedPrincipal principal =
+        assertInstanceOf(Saml2AuthenticatedPrincipal.class, slim.getPrincipal());
+    assertEquals("tester", principal.getName());
+    assertEquals(1, principal.getSessionIndexes().size());
+    assertEquals(expected.getSessionIndexes(), principal.getSessionIndexes());
+    assertEquals(List.of("admin", "user"), principal.getAttribute("Role"));
+    assertEquals(expected.getAttributes(), principal.getAttributes());
+    assertEquals(REALM_NAME, principal.getRelyingPartyRegistrationId());
+  }
+
+  @Test
+  public void bytesSavedAreRecordedPerRegistration() throws Exception {
+    String first = response();
+    String second = response();
+
+    authenticate(slimProvider, first);
+    authenticate(slimProvider, second);
+
+    DistributionSummary summary = registry.find(SlimSaml2AuthenticationConverter.BYTES_SAVED)
+        .tag("registration", REALM_NAME).summary();
+    assertNotNull(summary);
+    assertEquals(2, summary.count());
+    int omitted = SlimSaml2AuthenticationConverter.OMITTED_RESPONSE.length();
+    assertEquals(first.length() - omitted + second.length() - omitted, summary.totalAmount());
+    assertEquals(1, registry.find(SlimSaml2AuthenticationConverter.BYTES_SAVED).summaries().size());
+  }
+
+  private static Saml2Authentication authenticate(OpenSaml4AuthenticationProvider provider,
+      String samlResponse) {
+    Authentication authentication =
+        provider.authenticate(new Saml2AuthenticationToken(registration, samlResponse));
+    return assertInstanceOf(Saml2Authentication.class, authentication);
+  }
+
+  private static String response() throws Exception {
+    return SamlResponseFixture.response(keycloak, IDP_ENTITY_ID, CLIENT_ID, ACS_LOCATION,
+        "tester", Instant.now().plus(Duration.ofMinutes(1)), true,
+        Map.of("Role", List.of("admin", "user")));
+  }
+
+}
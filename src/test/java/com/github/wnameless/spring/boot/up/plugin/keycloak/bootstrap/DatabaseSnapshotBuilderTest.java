@@ -0,0 +1,68 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.bootstrap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.system.CapturedOutput;
+import org.springframework.boot.test.system.OutputCaptureExtension;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import com.github.wnameless.spring.boot.up.keycloakannotation.SpringKeycloakPluginAnnotationTestApp;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.realm.H2Files;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.realm.RealmFingerprint;
+
+/**
+ * Builds a Keycloak database snapshot from the test realm the build generates, then starts the
+ * test application on a fresh file-based database seeded from it by
+ * {@code KeycloakDatabaseSnapshot}.
+ */
+@ExtendWith(OutputCaptureExtension.class)
+public class DatabaseSnapshotBuilderTest {
+
+  static final String BASE = "http://localhost:18084";
+
+  @TempDir
+  Path dir;
+
+  @Test
+  public void snapshotIsBuiltThenSeedsFreshDatabase(CapturedOutput output) throws Exception {
+    File realmDir = new ClassPathResource("keycloak-realm.json").getFile().getParentFile();
+    Path snapshot = dir.resolve("keycloak-snapshot" + H2Files.DATABASE_SUFFIX);
+
+    DatabaseSnapshotBuilder.build(snapshot, realmDir);
+
+    assertTrue(Files.isRegularFile(snapshot), "Snapshot not written: " + snapshot);
+    Path fingerprint = dir.resolve("keycloak-snapshot" + RealmFingerprint.FILE_SUFFIX);
+    assertEquals(RealmFingerprint.fingerprint(List.of("keycloak-realm.json",
+        "keycloak_certificate.pem", "app_certificate.pem", "app_private_key.pem")),
+        Files.readString(fingerprint).trim());
+
+    Path database = dir.resolve("keycloak-db");
+    try (ConfigurableApplicationContext context =
+        new SpringApplicationBuilder(SpringKeycloakPluginAnnotationTestApp.class).run(
+            "--server.port=18084", "--keycloak.plugin.baseUrl=" + BASE,
+            "--keycloak.plugin.databaseSnapshot=" + snapshot.toUri(),
+            "--keycloak.connections-jpa.url=jdbc:h2:file:" + database)) {
+      assertTrue(output.getOut().contains("Seeded Keycloak database"),
+          "The database was not seeded from the snapshot");
+      HttpResponse<String> res = HttpClient.newHttpClient().send(
+          HttpRequest.newBuilder(URI.create(BASE + "/auth/realms/webmvc/protocol/saml/descriptor"))
+              .build(),
+          BodyHandlers.ofString());
+      assertEquals(200, res.statusCode());
+    }
+  }
+
+}
@@ -0,0 +1,144 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.health;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.services.resources.KeycloakApplication;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import com.github.wnameless.spring.boot.up.keycloakannotation.SpringKeycloakPluginAnnotationTestApp;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.bootstrap.SelfSignedX509Certificate;
+
+/**
+ * Checks {@link KeycloakRealmHealthIndicator} against the test application's embedded Keycloak:
+ * the configured realm is up, and a missing realm, a missing client, a mismatched certificate and
+ * a Keycloak that has not started are down. The cache is driven by a clock the test moves.
+ */
+@DirtiesContext
+@SpringBootTest(classes = SpringKeycloakPluginAnnotationTestApp.class,
+    webEnvironment = SpringBootTest.WebEnvironment.DEFINED_PORT,
+    properties = {"server.port=18089", "keycloak.plugin.baseUrl=http://localhost:18089",
+        "keycloak.connectionsJpa.url=jdbc:h2:mem:pluginHealthTest;DB_CLOSE_DELAY=-1"})
+public class KeycloakRealmHealthIndicatorTest {
+
+  static final Duration TTL = Duration.ofSeconds(10);
+
+  @Autowired
+  KeycloakRealmHealthIndicator configured;
+
+  MutableClock clock = new MutableClock();
+
+  static class MutableClock extends Clock {
+
+    Instant now = Instant.parse("2026-01-01T00:00:00Z");
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+  }
+
+  @Test
+  public void configuredRealmIsUp() {
+    Health health = configured.health();
+
+    assertEquals(Status.UP, health.getStatus(), health.getDetails().toString());
+    assertEquals(List.of("webmvc"), health.getDetails().get("realms"));
+  }
+
+  @Test
+  public void missingRealmIsDown() throws Exception {
+    Health health = indicator("missing", (realm) -> "webmvc-app", otherCertificate()).health();
+
+    assertEquals(Status.DOWN, health.getStatus());
+    assertEquals(Map.of("missing", "realm not found"), health.getDetails().get("problems"));
+  }
+
+  @Test
+  public void missingClientIsDown() throws Exception {
+    Health health = indicator("webmvc", (realm) -> "missing-app", otherCertificate()).health();
+
+    assertEquals(Status.DOWN, health.getStatus());
+    assertEquals(Map.of("webmvc", "SAML client 'missing-app' not found"),
+        health.getDetails().get("problems"));
+  }
+
+  @Test
+  public void mismatchedCertificateIsDown() throws Exception {
+    Health health = indicator("webmvc", (realm) -> "webmvc-app", otherCertificate()).health();
+
+    assertEquals(Status.DOWN, health.getStatus());
+    assertEquals(Map.of("webmvc",
+        "active signing certificate does not match the configured Keycloak certificate"),
+        health.getDetails().get("problems"));
+  }
+
+  @Test
+  public void keycloakNotStartedIsDown() throws Exception {
+    Health health = new KeycloakRealmHealthIndicator(List.of("webmvc"), (realm) -> "webmvc-app",
+        otherCertificate(), TTL, clock, () -> null).health();
+
+    assertEquals(Status.DOWN, health.getStatus());
+    assertEquals("not started", health.getDetails().get("keycloak"));
+  }
+
+  @Test
+  public void resultIsReusedUntilTtlExpires() throws Exception {
+    AtomicInteger checks = new AtomicInteger();
+    KeycloakSessionFactory[] started = {null};
+    KeycloakRealmHealthIndicator indicator = new KeycloakRealmHealthIndicator(List.of("webmvc"),
+        (realm) -> "webmvc-app", otherCertificate(), TTL, clock, () -> {
+          checks.incrementAndGet();
+          return started[0];
+        });
+
+    Health first = indicator.health();
+    started[0] = KeycloakApplication.getSessionFactory();
+    clock.now = clock.now.plus(TTL.minusMillis(1));
+    assertSame(first, indicator.health());
+    assertEquals(1, checks.get());
+
+    clock.now = clock.now.plusMillis(1);
+    Health second = indicator.health();
+    assertEquals(2, checks.get());
+    assertEquals("not started", first.getDetails().get("keycloak"));
+    assertEquals(List.of("webmvc"), second.getDetails().get("realms"));
+  }
+
+  private KeycloakRealmHealthIndicator indicator(String realm,
+      Function<String, String> clientIds, Function<String, X509Certificate> certificates) {
+    return new KeycloakRealmHealthIndicator(List.of(realm), clientIds, certificates, TTL, clock,
+        KeycloakApplication::getSessionFactory);
+  }
+
+  private static Function<String, X509Certificate> otherCertificate() throws Exception {
+    X509Certificate certificate = new SelfSignedX509Certificate("other", 1).getCertificate();
+    return (realm) -> certificate;
+  }
+
+}
@@ -0,0 +1,58 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.saml2.provider.service.metadata.Saml2MetadataResolver;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Unit tests of {@link SamlLoginMetrics}: one timer per stage, registration and outcome, reused
+ * across recordings.
+ */
+public class SamlLoginMetricsTest {
+
+  SimpleMeterRegistry registry = new SimpleMeterRegistry();
+  SamlLoginMetrics metrics = new SamlLoginMetrics(registry);
+
+  @Test
+  public void timersAreKeptPerNameAndTags() {
+    RelyingPartyRegistration registration = RelyingPartyRegistration.withRegistrationId("webmvc")
+        .entityId("webmvc-app")
+        .assertingPartyMetadata((metadata) -> metadata.entityId("idp")
+            .singleSignOnServiceLocation("http://localhost:8080/auth/realms/webmvc/protocol/saml"))
+        .build();
+    Saml2MetadataResolver failing = new Saml2MetadataResolver() {
+      @Override
+      public String resolve(RelyingPartyRegistration registration) {
+        throw new IllegalStateException();
+      }
+    };
+    Saml2MetadataResolver resolver = metrics.metadataResolver(new Saml2MetadataResolver() {
+      @Override
+      public String resolve(RelyingPartyRegistration registration) {
+        return "<EntityDescriptor/>";
+      }
+    });
+
+    for (int i = 0; i < 3; i++) {
+      resolver.resolve(registration);
+    }
+    assertThrows(IllegalStateException.class,
+        () -> metrics.metadataResolver(failing).resolve(registration));
+
+    Timer success = registry.find(SamlLoginMetrics.METADATA).tag("registration", "webmvc")
+        .tag("outcome", SamlLoginMetrics.SUCCESS).timer();
+    assertNotNull(success);
+    assertEquals(3, success.count());
+    Timer error = registry.find(SamlLoginMetrics.METADATA).tag("registration", "webmvc")
+        .tag("outcome", SamlLoginMetrics.ERROR).timer();
+    assertNotNull(error);
+    assertEquals(1, error.count());
+    assertEquals(2, registry.find(SamlLoginMetrics.METADATA).timers().size());
+  }
+
+}
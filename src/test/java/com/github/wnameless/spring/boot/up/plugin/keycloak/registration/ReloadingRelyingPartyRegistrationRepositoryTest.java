@@ -0,0 +1,142 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.registration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.security.saml2.core.Saml2X509Credential;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.bootstrap.SelfSignedX509Certificate;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.utils.PemUtils;
+
+/**
+ * Rotates {@code file:} PEMs under a {@link ReloadingRelyingPartyRegistrationRepository}: a
+ * complete pair is swapped in, a key that does not match its certificate is not.
+ */
+public class ReloadingRelyingPartyRegistrationRepositoryTest {
+
+  static final String REGISTRATION_ID = "webmvc";
+
+  @TempDir
+  Path dir;
+
+  Path certFile;
+  Path keyFile;
+  AtomicInteger builds = new AtomicInteger();
+  ReloadingRelyingPartyRegistrationRepository repository;
+
+  @BeforeEach
+  void writeCredentials() throws Exception {
+    certFile = dir.resolve("app_certificate.pem");
+    keyFile = dir.resolve("app_private_key.pem");
+    SelfSignedX509Certificate app = new SelfSignedX509Certificate("app", 1);
+    Files.writeString(certFile, app.getCertificatePem());
+    Files.writeString(keyFile, app.getPrivateKeyPem());
+  }
+
+  @AfterEach
+  void closeRepository() {
+    if (repository != null) repository.close();
+  }
+
+  @Test
+  public void rotatedPairIsSwappedIn() throws Exception {
+    repository = repository(Duration.ofMillis(50));
+    X509Certificate original = signingCertificate();
+
+    SelfSignedX509Certificate rotated = new SelfSignedX509Certificate("app", 1);
+    write(keyFile, rotated.getPrivateKeyPem());
+    write(certFile, rotated.getCertificatePem());
+
+    long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+    while (signingCertificate().equals(original) && System.nanoTime() < deadline) {
+      Thread.sleep(20);
+    }
+    assertEquals(rotated.getCertificate(), signingCertificate());
+    RelyingPartyRegistration swapped = repository.findByRegistrationId(REGISTRATION_ID);
+    assertEquals(rotated.getKeyPair().getPrivate(),
+        swapped.getSigningX509Credentials().iterator().next().getPrivateKey());
+  }
+
+  @Test
+  public void mismatchedPairIsRejectedAndCurrentRegistrationKept() throws Exception {
+    // Polled by hand: the scheduled poll never comes within the test
+    repository = repository(Duration.ofHours(1));
+    RelyingPartyRegistration current = repository.findByRegistrationId(REGISTRATION_ID);
+
+    write(keyFile, new SelfSignedX509Certificate("app", 1).getPrivateKeyPem());
+    repository.poll();
+    assertEquals(1, builds.get(), "Rebuilt before the change was stable for an interval");
+    repository.poll();
+
+    assertEquals(2, builds.get());
+    assertSame(current, repository.findByRegistrationId(REGISTRATION_ID));
+    assertSame(current, repository.iterator().next());
+
+    // Rotating the certificate as well completes the pair, which is then taken
+    SelfSignedX509Certificate rotated = new SelfSignedX509Certificate("app", 1);
+    write(keyFile, rotated.getPrivateKeyPem());
+    write(certFile, rotated.getCertificatePem());
+    repository.poll();
+    repository.poll();
+
+    assertEquals(3, builds.get());
+    assertNotSame(current, repository.findByRegistrationId(REGISTRATION_ID));
+    assertEquals(rotated.getCertificate(), signingCertificate());
+  }
+
+  @Test
+  public void unknownRegistrationIdIsNull() {
+    repository = repository(Duration.ofHours(1));
+
+    assertNull(repository.findByRegistrationId("other"));
+  }
+
+  private ReloadingRelyingPartyRegistrationRepository repository(Duration interval) {
+    String certLocation = certFile.toUri().toString();
+    String keyLocation = keyFile.toUri().toString();
+    return new ReloadingRelyingPartyRegistrationRepository(() -> {
+      builds.incrementAndGet();
+      X509Certificate certificate = PemUtils.loadCertificate(certLocation);
+      return RelyingPartyRegistration //
+          .withRegistrationId(REGISTRATION_ID) //
+          .entityId("webmvc-app") //
+          .signingX509Credentials((c) -> c.add(Saml2X509Credential
+              .signing(PemUtils.loadPrivateKey(keyLocation), certificate)))
+          .assertingPartyMetadata((metadata) -> {
+            metadata.entityId("http://localhost:8080/auth/realms/" + REGISTRATION_ID);
+            metadata.singleSignOnServiceLocation(
+                "http://localhost:8080/auth/realms/" + REGISTRATION_ID + "/protocol/saml");
+          }).build();
+    }, List.of(certLocation, keyLocation), interval);
+  }
+
+  private X509Certificate signingCertificate() {
+    return repository.findByRegistrationId(REGISTRATION_ID).getSigningX509Credentials().iterator()
+        .next().getCertificate();
+  }
+
+  /**
+   * Rewrites a file and moves its modification time on, as a rewrite within the file system's
+   * timestamp granularity and of the same size would otherwise go unnoticed.
+   */
+  private static void write(Path file, String content) throws Exception {
+    FileTime before = Files.getLastModifiedTime(file);
+    Files.writeString(file, content);
+    Instant later = before.toInstant().plusSeconds(2);
+    Files.setLastModifiedTime(file, FileTime.from(later));
+  }
+
+}
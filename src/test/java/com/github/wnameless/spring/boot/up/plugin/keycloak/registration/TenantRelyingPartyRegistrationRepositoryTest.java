@@ -0,0 +1,157 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.registration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+
+/**
+ * Unit tests of {@link TenantRelyingPartyRegistrationRepository}: what is built, how often, and
+ * what is kept.
+ */
+public class TenantRelyingPartyRegistrationRepositoryTest {
+
+  static final Set<String> TENANTS = Set.of("tenant1", "tenant2");
+
+  AtomicInteger builds = new AtomicInteger();
+  TenantRelyingPartyRegistrationRepository repository;
+
+  @AfterEach
+  void closeRepository() {
+    if (repository != null) repository.close();
+  }
+
+  @Test
+  public void unknownIdIsNullWithoutBuilding() {
+    repository = repository(this::build, Duration.ZERO);
+
+    assertNull(repository.findByRegistrationId("other"));
+    assertNull(repository.findByRegistrationId(null));
+    assertEquals(0, builds.get());
+    assertEquals(0, repository.loadedCount());
+  }
+
+  @Test
+  public void registrationIsBuiltOnFirstUseAndKept() {
+    repository = repository(this::build, Duration.ZERO);
+
+    RelyingPartyRegistration first = repository.findByRegistrationId("tenant1");
+    assertNotNull(first);
+    assertEquals("tenant1", first.getRegistrationId());
+    assertSame(first, repository.findByRegistrationId("tenant1"));
+    assertEquals(1, builds.get());
+    assertEquals(1, repository.loadedCount());
+  }
+
+  @Test
+  public void concurrentLookupsBuildOnce() throws Exception {
+    repository = repository((id) -> {
+      try {
+        // Slow enough that every thread asks before the first build is done
+        Thread.sleep(100);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return build(id);
+    }, Duration.ZERO);
+
+    int threads = 16;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<RelyingPartyRegistration>> lookups = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        lookups.add(executor.submit(() -> {
+          start.await();
+          return repository.findByRegistrationId("tenant1");
+        }));
+      }
+      start.countDown();
+
+      RelyingPartyRegistration first = lookups.get(0).get();
+      assertNotNull(first);
+      for (Future<RelyingPartyRegistration> lookup : lookups) {
+        assertSame(first, lookup.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(1, builds.get());
+  }
+
+  @Test
+  public void idleRegistrationIsEvictedAndRebuilt() throws Exception {
+    repository = repository(this::build, Duration.ofMillis(50));
+
+    RelyingPartyRegistration first = repository.findByRegistrationId("tenant1");
+    Thread.sleep(100);
+    repository.evictIdle();
+
+    assertEquals(0, repository.loadedCount());
+    RelyingPartyRegistration rebuilt = repository.findByRegistrationId("tenant1");
+    assertNotNull(rebuilt);
+    assertNotSame(first, rebuilt);
+    assertEquals(2, builds.get());
+  }
+
+  @Test
+  public void recentlyUsedRegistrationIsNotEvicted() {
+    repository = repository(this::build, Duration.ofMinutes(10));
+
+    RelyingPartyRegistration first = repository.findByRegistrationId("tenant1");
+    repository.evictIdle();
+
+    assertEquals(1, repository.loadedCount());
+    assertSame(first, repository.findByRegistrationId("tenant1"));
+  }
+
+  @Test
+  public void failingFactoryIsNotCached() {
+    repository = repository((id) -> {
+      if (builds.get() == 0) {
+        builds.incrementAndGet();
+        throw new IllegalStateException("PEM file not found");
+      }
+      return build(id);
+    }, Duration.ZERO);
+
+    assertNull(repository.findByRegistrationId("tenant1"));
+    assertEquals(0, repository.loadedCount());
+
+    assertNotNull(repository.findByRegistrationId("tenant1"));
+    assertEquals(2, builds.get());
+    assertEquals(1, repository.loadedCount());
+  }
+
+  private static TenantRelyingPartyRegistrationRepository repository(
+      Function<String, RelyingPartyRegistration> factory, Duration idleTimeout) {
+    return new TenantRelyingPartyRegistrationRepository(TENANTS, factory, idleTimeout);
+  }
+
+  private RelyingPartyRegistration build(String registrationId) {
+    builds.incrementAndGet();
+    String idpEntityId = "http://localhost:8080/auth/realms/" + registrationId;
+    return RelyingPartyRegistration //
+        .withRegistrationId(registrationId) //
+        .entityId(registrationId + "-app") //
+        .assertingPartyMetadata((metadata) -> {
+          metadata.entityId(idpEntityId);
+          metadata.singleSignOnServiceLocation(idpEntityId + "/protocol/saml");
+        }).build();
+  }
+
+}
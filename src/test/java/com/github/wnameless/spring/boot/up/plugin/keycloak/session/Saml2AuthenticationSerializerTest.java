@@ -0,0 +1,195 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.session;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.serializer.DefaultSerializer;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.saml2.provider.service.authentication.DefaultSaml2AuthenticatedPrincipal;
+import org.springframework.security.saml2.provider.service.authentication.Saml2Authentication;
+import org.springframework.security.web.authentication.WebAuthenticationDetails;
+
+/**
+ * Unit tests of {@link Saml2AuthenticationSerializer}: round trips of the compact encoding, the
+ * Java serialization fallback and the rejection of unknown formats.
+ */
+public class Saml2AuthenticationSerializerTest {
+
+  Saml2AuthenticationSerializer serializer = new Saml2AuthenticationSerializer();
+
+  @Test
+  public void securityContextSurvivesRoundTrip() throws IOException {
+    Saml2Authentication authentication = authentication(attributes());
+    authentication.setDetails(new WebAuthenticationDetails("192.0.2.10", "SESSION_1"));
+
+    byte[] bytes = serializer.serializeToByteArray(new SecurityContextImpl(authentication));
+
+    assertCompact(bytes);
+    SecurityContext context =
+        assertInstanceOf(SecurityContextImpl.class, serializer.deserializeFromByteArray(bytes));
+    assertSameAuthentication(authentication, context.getAuthentication());
+  }
+
+  @Test
+  public void authenticationSurvivesRoundTripWithoutDetails() throws IOException {
+    Saml2Authentication authentication = authentication(Map.of());
+
+    byte[] bytes = serializer.serializeToByteArray(authentication);
+
+    assertCompact(bytes);
+    Object read = serializer.deserializeFromByteArray(bytes);
+    assertSameAuthentication(authentication, read);
+    assertNull(((Saml2Authentication) read).getDetails());
+  }
+
+  @Test
+  public void compactEncodingIsSmallerThanJavaSerialization() throws IOException {
+    SecurityContextImpl context = new SecurityContextImpl(authentication(attributes()));
+
+    assertTrue(serializer.serializeToByteArray(context).length
+        < new DefaultSerializer().serializeToByteArray(context).length);
+  }
+
+  @Test
+  public void otherObjectsFallBackToJavaSerialization() throws IOException {
+    Map<String, Object> value = new LinkedHashMap<>(Map.of("key", List.of("value")));
+
+    byte[] bytes = serializer.serializeToByteArray(value);
+
+    assertJava(bytes);
+    assertEquals(value, serializer.deserializeFromByteArray(bytes));
+  }
+
+  @Test
+  public void uncoveredAttributeValueFallsBackToJavaSerialization() throws IOException {
+    Saml2Authentication authentication = authentication(Map.of("score", List.of(1.5d)));
+
+    byte[] bytes = serializer.serializeToByteArray(new SecurityContextImpl(authentication));
+
+    assertJava(bytes);
+    SecurityContext context = (SecurityContext) serializer.deserializeFromByteArray(bytes);
+    assertSameAuthentication(authentication, context.getAuthentication());
+  }
+
+  @Test
+  public void uncoveredAuthorityFallsBackToJavaSerialization() throws IOException {
+    DefaultSaml2AuthenticatedPrincipal principal =
+        new DefaultSaml2AuthenticatedPrincipal("tester", Map.of());
+    Saml2Authentication authentication = new Saml2Authentication(principal, "<Response/>",
+        List.of(new CustomAuthority()));
+
+    byte[] bytes = serializer.serializeToByteArray(authentication);
+
+    assertJava(bytes);
+    Saml2Authentication read = (Saml2Authentication) serializer.deserializeFromByteArray(bytes);
+    assertInstanceOf(CustomAuthority.class, read.getAuthorities().iterator().next());
+  }
+
+  @Test
+  public void javaSerializedSessionsRemainReadable() throws IOException {
+    Saml2Authentication authentication = authentication(attributes());
+    byte[] bytes =
+        new DefaultSerializer().serializeToByteArray(new SecurityContextImpl(authentication));
+
+    SecurityContext context = (SecurityContext) serializer.deserializeFromByteArray(bytes);
+    assertSameAuthentication(authentication, context.getAuthentication());
+  }
+
+  @Test
+  public void newerVersionIsRejected() throws IOException {
+    byte[] bytes = serializer.serializeToByteArray(authentication(Map.of()));
+    bytes[2] = (byte) (Saml2AuthenticationSerializer.VERSION + 1);
+
+    IOException e =
+        assertThrows(IOException.class, () -> serializer.deserializeFromByteArray(bytes));
+    assertTrue(e.getMessage().contains("Unsupported Saml2Authentication format"),
+        e.getMessage());
+
+    bytes[2] = 0;
+    assertThrows(IOException.class, () -> serializer.deserializeFromByteArray(bytes));
+  }
+
+  @Test
+  public void truncatedEncodingIsRejected() throws IOException {
+    byte[] bytes = serializer.serializeToByteArray(authentication(attributes()));
+
+    assertThrows(IOException.class,
+        () -> serializer.deserializeFromByteArray(Arrays.copyOf(bytes, bytes.length / 2)));
+  }
+
+  private static Map<String, List<Object>> attributes() {
+    Map<String, List<Object>> attributes = new LinkedHashMap<>();
+    attributes.put("email", List.of("tester@example.com"));
+    attributes.put("Role", List.of("user", "admin"));
+    attributes.put("verified", List.of(true));
+    attributes.put("level", List.of(3));
+    attributes.put("quota", List.of(5_000_000_000L));
+    attributes.put("lastLogin", List.of(Instant.parse("2026-01-01T00:00:00.123456789Z")));
+    attributes.put("nickname", new ArrayList<>(Arrays.asList((Object) null)));
+    return attributes;
+  }
+
+  private static Saml2Authentication authentication(Map<String, List<Object>> attributes) {
+    DefaultSaml2AuthenticatedPrincipal principal =
+        new DefaultSaml2AuthenticatedPrincipal("tester", attributes, List.of("SESSION_INDEX_1"));
+    principal.setRelyingPartyRegistrationId("webmvc");
+    return new Saml2Authentication(principal, "<samlp:Response/>",
+        List.of(new SimpleGrantedAuthority("ROLE_USER"), new SimpleGrantedAuthority("admin")));
+  }
+
+  private static void assertCompact(byte[] bytes) {
+    assertEquals(Saml2AuthenticationSerializer.MAGIC_0, bytes[0]);
+    assertEquals(Saml2AuthenticationSerializer.MAGIC_1, bytes[1]);
+    assertEquals(Saml2AuthenticationSerializer.VERSION, bytes[2]);
+  }
+
+  private static void assertJava(byte[] bytes) {
+    // The Java serialization stream magic
+    assertEquals((byte) 0xAC, bytes[0]);
+    assertEquals((byte) 0xED, bytes[1]);
+  }
+
+  private static void assertSameAuthentication(Saml2Authentication want, Object actual) {
+    Saml2Authentication got = assertInstanceOf(Saml2Authentication.class, actual);
+    DefaultSaml2AuthenticatedPrincipal wantPrincipal =
+        (DefaultSaml2AuthenticatedPrincipal) want.getPrincipal();
+    DefaultSaml2AuthenticatedPrincipal gotPrincipal =
+        assertInstanceOf(DefaultSaml2AuthenticatedPrincipal.class, got.getPrincipal());
+    assertEquals(wantPrincipal.getName(), gotPrincipal.getName());
+    assertEquals(wantPrincipal.getRelyingPartyRegistrationId(),
+        gotPrincipal.getRelyingPartyRegistrationId());
+    assertEquals(wantPrincipal.getSessionIndexes(), gotPrincipal.getSessionIndexes());
+    assertEquals(wantPrincipal.getAttributes(), gotPrincipal.getAttributes());
+    assertEquals(List.copyOf(wantPrincipal.getAttributes().keySet()),
+        List.copyOf(gotPrincipal.getAttributes().keySet()));
+    assertEquals(want.getSaml2Response(), got.getSaml2Response());
+    assertEquals(List.copyOf(want.getAuthorities()), List.copyOf(got.getAuthorities()));
+    assertEquals(want.getDetails(), got.getDetails());
+    assertTrue(got.isAuthenticated());
+  }
+
+  static class CustomAuthority implements GrantedAuthority {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public String getAuthority() {
+      return "custom";
+    }
+
+  }
+
+}
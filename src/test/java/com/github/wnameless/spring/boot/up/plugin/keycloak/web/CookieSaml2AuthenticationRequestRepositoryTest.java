@@ -0,0 +1,214 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.web;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.saml2.core.Saml2X509Credential;
+import org.springframework.security.saml2.provider.service.authentication.AbstractSaml2AuthenticationRequest;
+import org.springframework.security.saml2.provider.service.authentication.Saml2PostAuthenticationRequest;
+import org.springframework.security.saml2.provider.service.authentication.Saml2RedirectAuthenticationRequest;
+import org.springframework.security.saml2.provider.service.registration.InMemoryRelyingPartyRegistrationRepository;
+import org.springframework.security.saml2.provider.service.registration.RelyingPartyRegistration;
+import org.springframework.security.saml2.provider.service.registration.Saml2MessageBinding;
+import com.github.wnameless.spring.boot.up.plugin.keycloak.bootstrap.SelfSignedX509Certificate;
+import jakarta.servlet.http.Cookie;
+
+/**
+ * Unit tests of {@link CookieSaml2AuthenticationRequestRepository}: round trips through the
+ * cookie, cookies that must not open, and the HTTP session fallback for oversized requests.
+ */
+public class CookieSaml2AuthenticationRequestRepositoryTest {
+
+  static final String SSO_LOCATION = "http://localhost:8080/auth/realms/webmvc/protocol/saml";
+
+  static RelyingPartyRegistration webmvc;
+  static RelyingPartyRegistration other;
+  static InMemoryRelyingPartyRegistrationRepository registrations;
+
+  CookieSaml2AuthenticationRequestRepository repository;
+
+  @BeforeAll
+  static void setUpRegistrations() throws Exception {
+    webmvc = registration("webmvc");
+    other = registration("other");
+    registrations = new InMemoryRelyingPartyRegistrationRepository(webmvc, other);
+  }
+
+  @BeforeEach
+  void setUpRepository() {
+    repository = new CookieSaml2AuthenticationRequestRepository(registrations);
+  }
+
+  @Test
+  public void redirectRequestSurvivesRoundTrip() {
+    Saml2RedirectAuthenticationRequest saved = Saml2RedirectAuthenticationRequest
+        .withRelyingPartyRegistration(webmvc).id("ID_1").relayState("relay")
+        .authenticationRequestUri(SSO_LOCATION).samlRequest("c2FtbFJlcXVlc3Q")
+        .sigAlg("http://www.w3.org/2001/04/xmldsig-more#rsa-sha256").signature("c2lnbmF0dXJl")
+        .build();
+
+    String value = save(saved);
+
+    AbstractSaml2AuthenticationRequest loaded =
+        repository.loadAuthenticationRequest(requestWithCookie(value));
+    Saml2RedirectAuthenticationRequest redirect =
+        assertInstanceOf(Saml2RedirectAuthenticationRequest.class, loaded);
+    assertEquals(Saml2MessageBinding.REDIRECT, redirect.getBinding());
+    assertEquals("webmvc", redirect.getRelyingPartyRegistrationId());
+    assertEquals("ID_1", redirect.getId());
+    assertEquals("relay", redirect.getRelayState());
+    assertEquals(SSO_LOCATION, redirect.getAuthenticationRequestUri());
+    assertEquals("c2FtbFJlcXVlc3Q", redirect.getSamlRequest());
+    assertEquals(saved.getSigAlg(), redirect.getSigAlg());
+    assertEquals("c2lnbmF0dXJl", redirect.getSignature());
+  }
+
+  @Test
+  public void postRequestSurvivesRoundTripWithoutRelayState() {
+    Saml2PostAuthenticationRequest saved =
+        Saml2PostAuthenticationRequest.withRelyingPartyRegistration(webmvc).id("ID_2")
+            .authenticationRequestUri(SSO_LOCATION).samlRequest("c2FtbFJlcXVlc3Q").build();
+
+    AbstractSaml2AuthenticationRequest loaded =
+        repository.loadAuthenticationRequest(requestWithCookie(save(saved)));
+    assertInstanceOf(Saml2PostAuthenticationRequest.class, loaded);
+    assertEquals(Saml2MessageBinding.POST, loaded.getBinding());
+    assertEquals("ID_2", loaded.getId());
+    assertNull(loaded.getRelayState());
+    assertEquals("c2FtbFJlcXVlc3Q", loaded.getSamlRequest());
+  }
+
+  @Test
+  public void removeReturnsRequestAndExpiresCookie() {
+    String value = save(redirectRequest(webmvc));
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    AbstractSaml2AuthenticationRequest removed =
+        repository.removeAuthenticationRequest(requestWithCookie(value), response);
+
+    assertNotNull(removed);
+    assertEquals("ID_1", removed.getId());
+    String setCookie = response.getHeader(HttpHeaders.SET_COOKIE);
+    assertTrue(setCookie.startsWith(CookieSaml2AuthenticationRequestRepository.COOKIE_NAME + "=;"),
+        setCookie);
+    assertTrue(setCookie.contains("Max-Age=0"), setCookie);
+  }
+
+  @Test
+  public void savingNullRemovesCookie() {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    repository.saveAuthenticationRequest(null,
+        requestWithCookie(save(redirectRequest(webmvc))), response);
+
+    assertTrue(response.getHeader(HttpHeaders.SET_COOKIE).contains("Max-Age=0"));
+  }
+
+  @Test
+  public void tamperedCookieIsTreatedAsAbsent() {
+    String value = save(redirectRequest(webmvc));
+    int i = value.indexOf('.') + 20;
+    char tampered = value.charAt(i) == 'A' ? 'B' : 'A';
+    value = value.substring(0, i) + tampered + value.substring(i + 1);
+
+    assertNull(repository.loadAuthenticationRequest(requestWithCookie(value)));
+    assertNull(repository.loadAuthenticationRequest(requestWithCookie("not-a-cookie")));
+  }
+
+  @Test
+  public void cookieSealedForAnotherRegistrationDoesNotOpen() {
+    String value = save(redirectRequest(webmvc));
+    String otherId = Base64.getUrlEncoder().withoutPadding()
+        .encodeToString("other".getBytes(StandardCharsets.UTF_8));
+    String relabelled = otherId + value.substring(value.indexOf('.'));
+
+    assertNull(repository.loadAuthenticationRequest(requestWithCookie(relabelled)));
+  }
+
+  @Test
+  public void expiredCookieIsTreatedAsAbsent() throws Exception {
+    String value = save(redirectRequest(webmvc));
+    CookieSaml2AuthenticationRequestRepository shortLived =
+        new CookieSaml2AuthenticationRequestRepository(registrations, Duration.ofMillis(1));
+
+    Thread.sleep(20);
+
+    assertNull(shortLived.loadAuthenticationRequest(requestWithCookie(value)));
+    assertNotNull(repository.loadAuthenticationRequest(requestWithCookie(value)));
+  }
+
+  @Test
+  public void oversizedRequestFallsBackToHttpSession() {
+    byte[] noise = new byte[4096];
+    new SecureRandom().nextBytes(noise);
+    // Random bytes do not deflate, so the sealed value is well over the limit
+    Saml2PostAuthenticationRequest saved =
+        Saml2PostAuthenticationRequest.withRelyingPartyRegistration(webmvc).id("ID_BIG")
+            .authenticationRequestUri(SSO_LOCATION)
+            .samlRequest(Base64.getEncoder().encodeToString(noise)).build();
+    assertTrue(repository.seal(saved).length()
+        > CookieSaml2AuthenticationRequestRepository.MAX_VALUE_LENGTH);
+
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    repository.saveAuthenticationRequest(saved, request, response);
+
+    assertNull(response.getHeader(HttpHeaders.SET_COOKIE));
+    assertNotNull(request.getSession(false));
+    AbstractSaml2AuthenticationRequest loaded = repository.loadAuthenticationRequest(request);
+    assertNotNull(loaded);
+    assertEquals("ID_BIG", loaded.getId());
+    assertEquals("ID_BIG", repository.removeAuthenticationRequest(request, response).getId());
+    assertNull(repository.loadAuthenticationRequest(request));
+  }
+
+  private String save(AbstractSaml2AuthenticationRequest authenticationRequest) {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    repository.saveAuthenticationRequest(authenticationRequest, new MockHttpServletRequest(),
+        response);
+    String setCookie = response.getHeader(HttpHeaders.SET_COOKIE);
+    assertNotNull(setCookie, "AuthnRequest was not kept in a cookie");
+    String prefix = CookieSaml2AuthenticationRequestRepository.COOKIE_NAME + "=";
+    assertTrue(setCookie.startsWith(prefix), setCookie);
+    String value = setCookie.substring(prefix.length(), setCookie.indexOf(';'));
+    assertTrue(value.length() <= CookieSaml2AuthenticationRequestRepository.MAX_VALUE_LENGTH);
+    return value;
+  }
+
+  private static MockHttpServletRequest requestWithCookie(String value) {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.setCookies(new Cookie(CookieSaml2AuthenticationRequestRepository.COOKIE_NAME, value));
+    return request;
+  }
+
+  private static Saml2RedirectAuthenticationRequest redirectRequest(
+      RelyingPartyRegistration registration) {
+    return Saml2RedirectAuthenticationRequest.withRelyingPartyRegistration(registration)
+        .id("ID_1").authenticationRequestUri(SSO_LOCATION).samlRequest("c2FtbFJlcXVlc3Q").build();
+  }
+
+  private static RelyingPartyRegistration registration(String registrationId) throws Exception {
+    SelfSignedX509Certificate app = new SelfSignedX509Certificate(registrationId + "-app", 1);
+    return RelyingPartyRegistration //
+        .withRegistrationId(registrationId) //
+        .entityId(registrationId + "-app") //
+        .signingX509Credentials((c) -> c.add(Saml2X509Credential
+            .signing(app.getKeyPair().getPrivate(), app.getCertificate())))
+        .assertingPartyMetadata((metadata) -> {
+          metadata.entityId("http://localhost:8080/auth/realms/" + registrationId);
+          metadata.singleSignOnServiceLocation(SSO_LOCATION);
+        }).build();
+  }
+
+}
@@ -0,0 +1,108 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.web;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+/**
+ * Unit tests of {@link PathPrefixRequestMatcher}: segment boundaries, prefix normalization and the
+ * path taken from a request.
+ */
+public class PathPrefixRequestMatcherTest {
+
+  @Test
+  public void prefixesMatchWholeSegmentsOnly() {
+    PathPrefixRequestMatcher matcher = new PathPrefixRequestMatcher(List.of("/auth"));
+
+    assertTrue(matcher.matches("/auth"));
+    assertTrue(matcher.matches("/auth/"));
+    assertTrue(matcher.matches("/auth/realms/webmvc"));
+    assertFalse(matcher.matches("/authors"));
+    assertFalse(matcher.matches("/aut"));
+    assertFalse(matcher.matches("/"));
+    assertFalse(matcher.matches("/css/auth"));
+    assertFalse(matcher.matches(null));
+  }
+
+  @Test
+  public void nestedPrefixMatchesBelowItselfOnly() {
+    PathPrefixRequestMatcher matcher = new PathPrefixRequestMatcher(List.of("/static/css"));
+
+    assertTrue(matcher.matches("/static/css/site.css"));
+    assertFalse(matcher.matches("/static"));
+    assertFalse(matcher.matches("/static/js/app.js"));
+    assertFalse(matcher.matches("/static/cssx"));
+  }
+
+  @Test
+  public void trailingWildcardsAndSlashesAreIgnored() {
+    PathPrefixRequestMatcher matcher = new PathPrefixRequestMatcher(
+        Arrays.asList("/css/**", "/js/*", "/img/", "fonts", " ", null, "/css"));
+
+    assertEquals(List.of("/css", "/js", "/img", "/fonts"), matcher.getPrefixes());
+    assertTrue(matcher.matches("/css/site.css"));
+    assertTrue(matcher.matches("/js/deep/app.js"));
+    assertTrue(matcher.matches("/img"));
+    assertTrue(matcher.matches("/fonts/a.woff2"));
+    assertFalse(matcher.matches("/cssx/site.css"));
+  }
+
+  @Test
+  public void rootPrefixIsRejected() {
+    for (String prefix : List.of("/", "/**", "/*", "//")) {
+      assertThrows(IllegalStateException.class,
+          () -> new PathPrefixRequestMatcher(List.of("/css", prefix)), prefix);
+    }
+  }
+
+  @Test
+  public void noPrefixesMatchNothing() {
+    PathPrefixRequestMatcher matcher = new PathPrefixRequestMatcher(List.of());
+
+    assertFalse(matcher.matches("/auth"));
+    assertFalse(matcher.matches(new MockHttpServletRequest("GET", "/auth")));
+  }
+
+  @Test
+  public void requestPathIsServletPathPlusPathInfo() {
+    PathPrefixRequestMatcher matcher = new PathPrefixRequestMatcher(List.of("/auth"));
+
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/app/auth/realms");
+    request.setContextPath("/app");
+    request.setServletPath("/auth");
+    request.setPathInfo("/realms");
+    assertTrue(matcher.matches(request));
+
+    // The servlet path wins over the request URI
+    request = new MockHttpServletRequest("GET", "/auth/realms");
+    request.setServletPath("/api");
+    request.setPathInfo("/auth");
+    assertFalse(matcher.matches(request));
+
+    request = new MockHttpServletRequest("GET", "/api/auth");
+    request.setServletPath("");
+    request.setPathInfo("/auth/realms");
+    assertTrue(matcher.matches(request));
+  }
+
+  @Test
+  public void requestUriIsUsedWithoutServletPathOrPathInfo() {
+    PathPrefixRequestMatcher matcher = new PathPrefixRequestMatcher(List.of("/auth"));
+
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/app/auth/realms");
+    request.setContextPath("/app");
+    assertTrue(matcher.matches(request));
+
+    request = new MockHttpServletRequest("GET", "/app/authors");
+    request.setContextPath("/app");
+    assertFalse(matcher.matches(request));
+
+    assertTrue(matcher.matches(new MockHttpServletRequest("GET", "/auth")));
+  }
+
+}
@@ -0,0 +1,226 @@
+package com.github.wnameless.spring.boot.up.plugin.keycloak.web;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.common.Version;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Unit tests of {@link ThemeResourceCacheFilter} over a mock filter chain standing in for Keycloak:
+ * misses and hits, conditional and gzip requests, responses that must pass through, and the byte
+ * bound.
+ */
+public class ThemeResourceCacheFilterTest {
+
+  static final String RESOURCES = "/auth/resources/" + Version.RESOURCES_VERSION;
+  static final String CSS_PATH = RESOURCES + "/login/keycloak.v2/css/styles.css";
+  static final String CSS = ".login { color: #333; }\n".repeat(100);
+
+  ThemeResourceCacheFilter filter;
+  Keycloak keycloak;
+
+  /**
+   * Answers like Keycloak would, and counts the requests that reached it.
+   */
+  static class Keycloak implements FilterChain {
+
+    int status = HttpServletResponse.SC_OK;
+    String contentType = "text/css";
+    String body = CSS;
+    String setCookie;
+    int requests;
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+      requests++;
+      HttpServletResponse http = (HttpServletResponse) response;
+      http.setStatus(status);
+      http.setContentType(contentType);
+      if (setCookie != null) http.setHeader(HttpHeaders.SET_COOKIE, setCookie);
+      http.getOutputStream().write(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+  }
+
+  @BeforeEach
+  void setUpFilter() {
+    filter = new ThemeResourceCacheFilter("/auth", ThemeResourceCacheFilter.DEFAULT_MAX_BYTES);
+    keycloak = new Keycloak();
+  }
+
+  @Test
+  public void firstRequestMissesAndSecondHits() throws Exception {
+    MockHttpServletResponse first = get(CSS_PATH);
+    MockHttpServletResponse second = get(CSS_PATH);
+
+    assertEquals(1, keycloak.requests);
+    for (MockHttpServletResponse response : new MockHttpServletResponse[] {first, second}) {
+      assertEquals(200, response.getStatus());
+      assertEquals(CSS, response.getContentAsString());
+      assertEquals(ThemeResourceCacheFilter.CACHE_CONTROL,
+          response.getHeader(HttpHeaders.CACHE_CONTROL));
+      assertNotNull(response.getHeader(HttpHeaders.ETAG));
+    }
+    assertEquals(first.getHeader(HttpHeaders.ETAG), second.getHeader(HttpHeaders.ETAG));
+    long gzipped = gzip(CSS_PATH).getContentAsByteArray().length;
+    assertEquals(CSS.length() + gzipped, filter.getCachedBytes());
+  }
+
+  @Test
+  public void matchingIfNoneMatchGetsNotModified() throws Exception {
+    String etag = get(CSS_PATH).getHeader(HttpHeaders.ETAG);
+
+    MockHttpServletRequest request = request(CSS_PATH);
+    request.addHeader(HttpHeaders.IF_NONE_MATCH, etag);
+    MockHttpServletResponse response = filter(request);
+
+    assertEquals(304, response.getStatus());
+    assertEquals(0, response.getContentLength());
+    assertEquals(0, response.getContentAsByteArray().length);
+    assertEquals(etag, response.getHeader(HttpHeaders.ETAG));
+    assertEquals(1, keycloak.requests);
+  }
+
+  @Test
+  public void gzipIsServedOnlyToClientsAcceptingIt() throws Exception {
+    MockHttpServletResponse gzipped = gzip(CSS_PATH);
+    assertEquals("gzip", gzipped.getHeader(HttpHeaders.CONTENT_ENCODING));
+    assertEquals(HttpHeaders.ACCEPT_ENCODING, gzipped.getHeader(HttpHeaders.VARY));
+    try (GZIPInputStream in =
+        new GZIPInputStream(new ByteArrayInputStream(gzipped.getContentAsByteArray()))) {
+      assertEquals(CSS, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    MockHttpServletRequest refusing = request(CSS_PATH);
+    refusing.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0");
+    MockHttpServletResponse plain = filter(refusing);
+    assertNull(plain.getHeader(HttpHeaders.CONTENT_ENCODING));
+    assertEquals(CSS, plain.getContentAsString());
+
+    keycloak.contentType = "image/png";
+    MockHttpServletResponse image = gzip(RESOURCES + "/login/keycloak.v2/img/logo.png");
+    assertNull(image.getHeader(HttpHeaders.CONTENT_ENCODING));
+  }
+
+  @Test
+  public void errorResponsePassesThroughUncached() throws Exception {
+    keycloak.status = HttpServletResponse.SC_NOT_FOUND;
+    keycloak.body = "not found";
+
+    MockHttpServletResponse response = get(CSS_PATH);
+    get(CSS_PATH);
+
+    assertEquals(404, response.getStatus());
+    assertEquals("not found", response.getContentAsString());
+    assertNull(response.getHeader(HttpHeaders.CACHE_CONTROL));
+    assertEquals(2, keycloak.requests);
+    assertEquals(0, filter.getCachedBytes());
+  }
+
+  @Test
+  public void responseSettingCookiePassesThroughUncached() throws Exception {
+    keycloak.setCookie = "KC_RESTART=abc; Path=/auth";
+
+    MockHttpServletResponse response = get(CSS_PATH);
+    get(CSS_PATH);
+
+    assertEquals(keycloak.setCookie, response.getHeader(HttpHeaders.SET_COOKIE));
+    assertEquals(CSS, response.getContentAsString());
+    assertNull(response.getHeader(HttpHeaders.CACHE_CONTROL));
+    assertEquals(2, keycloak.requests);
+  }
+
+  @Test
+  public void rangeRequestPassesThrough() throws Exception {
+    get(CSS_PATH);
+
+    MockHttpServletRequest request = request(CSS_PATH);
+    request.addHeader(HttpHeaders.RANGE, "bytes=0-9");
+    MockHttpServletResponse response = filter(request);
+
+    assertEquals(2, keycloak.requests);
+    assertNull(response.getHeader(HttpHeaders.CACHE_CONTROL));
+  }
+
+  @Test
+  public void queryStringBypassesTheCache() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      MockHttpServletRequest request = request(CSS_PATH);
+      request.setQueryString("v=" + i);
+      MockHttpServletResponse response = filter(request);
+      assertEquals(CSS, response.getContentAsString());
+      assertNull(response.getHeader(HttpHeaders.CACHE_CONTROL));
+    }
+
+    assertEquals(3, keycloak.requests);
+    assertEquals(0, filter.getCachedBytes());
+  }
+
+  @Test
+  public void otherResourceVersionsAreNotCached() throws Exception {
+    get("/auth/resources/0000/login/keycloak.v2/css/styles.css");
+    get("/auth/resources/0000/login/keycloak.v2/css/styles.css");
+
+    assertEquals(2, keycloak.requests);
+  }
+
+  @Test
+  public void cacheStaysWithinItsByteBound() throws Exception {
+    keycloak.contentType = "image/png";
+    filter = new ThemeResourceCacheFilter("/auth", 800);
+
+    // Above an eighth of the bound: never cached
+    keycloak.body = "x".repeat(101);
+    get(RESOURCES + "/big.png");
+    get(RESOURCES + "/big.png");
+    assertEquals(2, keycloak.requests);
+    assertEquals(0, filter.getCachedBytes());
+
+    keycloak.body = "x".repeat(100);
+    for (int i = 0; i < 8; i++) {
+      get(RESOURCES + "/" + i + ".png");
+    }
+    assertEquals(800, filter.getCachedBytes());
+
+    // The ninth does not fit, so the cache starts over with it
+    get(RESOURCES + "/8.png");
+    assertEquals(100, filter.getCachedBytes());
+    int requests = keycloak.requests;
+    get(RESOURCES + "/0.png");
+    assertEquals(requests + 1, keycloak.requests);
+  }
+
+  private MockHttpServletResponse get(String uri) throws Exception {
+    return filter(request(uri));
+  }
+
+  private MockHttpServletResponse gzip(String uri) throws Exception {
+    MockHttpServletRequest request = request(uri);
+    request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+    return filter(request);
+  }
+
+  private MockHttpServletResponse filter(MockHttpServletRequest request) throws Exception {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    filter.doFilter(request, response, keycloak);
+    return response;
+  }
+
+  private static MockHttpServletRequest request(String uri) {
+    return new MockHttpServletRequest("GET", uri);
+  }
+
+}